@@ -96,7 +96,7 @@ public class BbnNeParser {
 		// move to the next BBN file if necessary
 		// this will be efficient if the documents are passed in WSJ order as it avoids reloading the same file
 		if (!fileName.equals(currentBbnFile)) {
-			File xmlFile = new File(StaticConfig.bbnPath + fileName);
+			File xmlFile = new File(StaticConfig.current().bbnPath + fileName);
 			xmlReader.parse(new InputSource(xmlFile.getPath()));
 			currentBbnFile = fileName;
 		}
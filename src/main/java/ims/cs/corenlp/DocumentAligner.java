@@ -96,14 +96,14 @@ public class DocumentAligner {
 				Sentence combinedSentence = ta.getCombinedSentence();
 
 				if (combinedSentence == null) {
-					if (StaticConfig.verbose)
+					if (StaticConfig.current().verbose)
 						System.out.println("Discarding empty combined sentence: " +
 								cSentence.toString() + currentSentencePTokens.toString());
 				} else {
 					pcSentenceList.add(combinedSentence);
 				}
 			} else {   /* sentence may be empty if CoreNLP produced spurious tokens */
-				if (StaticConfig.verbose)
+				if (StaticConfig.current().verbose)
 					System.out.println("Discarding empty PARC sentence: " +
 						cSentence.toString() + currentSentencePTokens.toString());
 			}
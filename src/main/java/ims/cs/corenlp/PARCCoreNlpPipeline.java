@@ -73,74 +73,83 @@ public class PARCCoreNlpPipeline implements Iterable<Document>{
 		}
 
 		public Document next() {
-			Document pDocument = documentIterator.next();
-			
-			// check if this document has been processed before
-			if (pDocument.isCoreNlpProcessed)
-				return pDocument;
-			
-			DocumentId id = pDocument.docId;
-			File processedFile = getParsedFileName(id);
-
-			Annotation annotation = null;
-			boolean failedToLoad = false;
-
-			// try to load the cached file
-			if (processedFile.exists()) {
-				try {
-					annotation = deserializeAnnotation(processedFile);
-				} catch (IOException e) {
-					// in case of failure, trigger parser in the next step
-					System.err.println("Failed to load " + processedFile + ", falling back to parser");
-					failedToLoad = true;
-				}
-			} 
-			
-			// Parse the document in case no serialized file was available or readable
-			if (!processedFile.exists() || failedToLoad) {
-				annotation = parseDocumentFromRaw(pDocument);
-				try {
-					serializeAnnotation(annotation, processedFile);
-				} catch (IOException e) {
-					e.printStackTrace();
-					System.err.println("Unable to store annotation in file");
-				}
-			}		    
-			
-			// go through all tokens and flatten the quotes
-			List<CoreMap> sentences = annotation.get(SentencesAnnotation.class);
-
-			if (StaticConfig.flattenQuotes) {
-				for (CoreMap sentence : sentences) {
-					List<CoreLabel> tokens = sentence.get(TokensAnnotation.class);
-
-					if (tokens == null)
-						throw new Error("Document does not have TokensAnnotation");
-
-					for (CoreLabel cl : tokens)
-						Helper.flattenQuotes(cl);
-				}
-			}
+			return process(documentIterator.next());
+		}
+
+		public void remove() { throw new UnsupportedOperationException("Not implemented"); }
+	}
 
-			// align gold and predicted tokens
-			DocumentAligner da = new DocumentAligner(pDocument, annotation);
-			Document document = da.getDocument();
-			document.isCoreNlpProcessed = true;
 
-			// post-processing
-			ParcUtils.sanitizeQuotationMarks(document);
-			ParcUtils.anonymizeNamedEntities(document);
-			ParcUtils.doParagraphAnnotation(document);
-			ParcUtils.markParagraphQuotes(document);
+	/**
+	 * Runs CoreNLP on a document (or loads the cached parse) and aligns the result with the gold tokens.
+	 * Documents can be processed concurrently.
+	 * @param pDocument
+	 * @return
+	 */
+	public Document process(Document pDocument) {
+		// check if this document has been processed before
+		if (pDocument.isCoreNlpProcessed)
+			return pDocument;
+		
+		DocumentId id = pDocument.docId;
+		File processedFile = getParsedFileName(id);
+
+		Annotation annotation = null;
+		boolean failedToLoad = false;
+
+		// try to load the cached file
+		if (processedFile.exists()) {
+			try {
+				annotation = deserializeAnnotation(processedFile);
+			} catch (IOException e) {
+				// in case of failure, trigger parser in the next step
+				System.err.println("Failed to load " + processedFile + ", falling back to parser");
+				failedToLoad = true;
+			}
+		} 
+		
+		// Parse the document in case no serialized file was available or readable
+		if (!processedFile.exists() || failedToLoad) {
+			annotation = parseDocumentFromRaw(pDocument);
+			try {
+				serializeAnnotation(annotation, processedFile);
+			} catch (IOException e) {
+				e.printStackTrace();
+				System.err.println("Unable to store annotation in file");
+			}
+		}		    
+		
+		// go through all tokens and flatten the quotes
+		List<CoreMap> sentences = annotation.get(SentencesAnnotation.class);
+
+		if (StaticConfig.current().flattenQuotes) {
+			for (CoreMap sentence : sentences) {
+				List<CoreLabel> tokens = sentence.get(TokensAnnotation.class);
 
-			// find head verbs
-			for (Sentence sentence : document.sentenceList)
-				ParcUtils.markHeadVerbs(sentence);
+				if (tokens == null)
+					throw new Error("Document does not have TokensAnnotation");
 
-			return document;
+				for (CoreLabel cl : tokens)
+					Helper.flattenQuotes(cl);
+			}
 		}
 
-		public void remove() { throw new UnsupportedOperationException("Not implemented"); }
+		// align gold and predicted tokens
+		DocumentAligner da = new DocumentAligner(pDocument, annotation);
+		Document document = da.getDocument();
+		document.isCoreNlpProcessed = true;
+
+		// post-processing
+		ParcUtils.sanitizeQuotationMarks(document);
+		ParcUtils.anonymizeNamedEntities(document);
+		ParcUtils.doParagraphAnnotation(document);
+		ParcUtils.markParagraphQuotes(document);
+
+		// find head verbs
+		for (Sentence sentence : document.sentenceList)
+			ParcUtils.markHeadVerbs(sentence);
+
+		return document;
 	}
 
 
@@ -161,7 +170,7 @@ public class PARCCoreNlpPipeline implements Iterable<Document>{
 	 * @return
 	 */
 	public static File getParsedFileName(DocumentId id) {
-		File dirFile = new File(StaticConfig.coreNlpOutputDirectory, id.getSectionStr());
+		File dirFile = new File(StaticConfig.current().coreNlpOutputDirectory, id.getSectionStr());
 		File sentenceFile = new File(dirFile, id + ".cSer.gz");
 		
 		return sentenceFile;
@@ -177,13 +186,13 @@ public class PARCCoreNlpPipeline implements Iterable<Document>{
 		File parentFile = file.getParentFile();
 		if (!parentFile.exists()) parentFile.mkdirs();
 
-		if (StaticConfig.verbose) System.out.println("(CAS) Writing to file " + file);
+		if (StaticConfig.current().verbose) System.out.println("(CAS) Writing to file " + file);
 
 		// remove these to try to save memory
 		a.remove(CollapsedDependenciesAnnotation.class);
 		a.remove(BasicDependenciesAnnotation.class);
 
-		if (StaticConfig.cacheParses) {
+		if (StaticConfig.current().cacheParses) {
 			OutputStream ret = ser.write(a, new FileOutputStream(file));
 			ret.close();
 		}
@@ -196,7 +205,7 @@ public class PARCCoreNlpPipeline implements Iterable<Document>{
 	 * @throws IOException
 	 */
 	public static Annotation deserializeAnnotation(File file) throws IOException {
-		if (StaticConfig.verbose) System.out.println("(CAS) Reading from file " + file);
+		if (StaticConfig.current().verbose) System.out.println("(CAS) Reading from file " + file);
 		Pair<Annotation, InputStream> ret = ser.read(new FileInputStream(file));
 		ret.second.close();
 		Annotation annotation = ret.first();
@@ -208,7 +217,9 @@ public class PARCCoreNlpPipeline implements Iterable<Document>{
 	/**
 	 * Initializes the local pipeline dynamically
 	 */
-	private void setUpPipeline() {
+	private synchronized void setUpPipeline() {
+		if (pipeline != null) return;
+
 		System.out.println("Need CoreNLP pipeline, initializing ...\n");
 		Properties props = new Properties();
 		props.put("annotators", "tokenize,ssplit,pos,lemma,parse,ner");
@@ -225,7 +236,7 @@ public class PARCCoreNlpPipeline implements Iterable<Document>{
 		// dynamically set up the parsing pipeline if needed
 		// (this could be done in the constructor, but it actually takes some time
 		// and is unnecessary once the parses are cached)
-		if (pipeline == null) setUpPipeline();
+		setUpPipeline();
 
 		Annotation coreNlpDocument = new Annotation(document.text);
 		pipeline.annotate(coreNlpDocument);
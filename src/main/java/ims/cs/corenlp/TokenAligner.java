@@ -32,7 +32,6 @@ import edu.stanford.nlp.trees.TreeCoreAnnotations.TreeAnnotation;
 import edu.stanford.nlp.trees.TreeGraphNode;
 import edu.stanford.nlp.trees.TypedDependency;
 import edu.stanford.nlp.util.CoreMap;
-import ims.cs.parc.ParcUtils;
 import ims.cs.util.StaticConfig;
 
 /**
@@ -88,9 +87,6 @@ public class TokenAligner {
 		combinedSentence.tree = originalSentence.get(TreeAnnotation.class);
 		combinedSentence.dependencyGraph = originalSentence.get(CollapsedCCProcessedDependenciesAnnotation.class);
 
-		// compute all shortest paths between nodes in the sentence
-		combinedSentence.fw = ParcUtils.computeFloydWarshallSGE(combinedSentence.dependencyGraph.edgeListSorted());
-
 		return combinedSentence;
 	}
 
@@ -109,7 +105,7 @@ public class TokenAligner {
 		// recovery for badly tokenized punctuation
 		if (combinedToken.predText.length() == 0) {
 			// this happens when the split is so messed up that a token becomes empty. happens with ellipsis.
-			if (StaticConfig.verbose) System.out.println("Missing text, inserting lemma");
+			if (StaticConfig.current().verbose) System.out.println("Missing text, inserting lemma");
 			combinedToken.predText = combinedToken.predLemma;
 		}
 
@@ -179,7 +175,7 @@ public class TokenAligner {
 	 */
 	public Token combineTokens(Token tok, CoreLabel cl, int currentCoreNlpSentenceIndex) {
 		// check whether we use gold information or CoreNLP information
-		if (StaticConfig.useGoldPreprocessing) {
+		if (StaticConfig.current().useGoldPreprocessing) {
 			return combineTokensGold(tok, cl, currentCoreNlpSentenceIndex);
 		} else {
 			return combineTokensPred(tok, cl, currentCoreNlpSentenceIndex);
@@ -330,7 +326,7 @@ public class TokenAligner {
 
 					addNewWord(combinedToken, prevCombinedToken);
 				} else {
-					if (StaticConfig.verbose) System.out.println(pSentenceId +
+					if (StaticConfig.current().verbose) System.out.println(pSentenceId +
 							" Dropping unmatched " + cToken + " " + "(PARC tokens: " + pTokens + " )");
 				}
 
@@ -340,7 +336,7 @@ public class TokenAligner {
 
 			//   2. No CoreNLP tokens left
 			if (cToken == null) {
-				if (StaticConfig.verbose)
+				if (StaticConfig.current().verbose)
 					System.out.println("Unaligned Token(s) in "  + pSentenceId + " " + pToken);
 
 				break;
@@ -357,7 +353,7 @@ public class TokenAligner {
 			// ... if they don't, try to recover by syncing up
 			if (cBegin > pEnd) {
 				if (usedPToken) {
-					if (StaticConfig.verbose) System.out.println(pSentenceId + " out of sync "  +
+					if (StaticConfig.current().verbose) System.out.println(pSentenceId + " out of sync "  +
 							pToken + " " + cToken + " -- trying to fix");
 					
 					if (pTokenIter.hasNext()) {
@@ -365,12 +361,12 @@ public class TokenAligner {
 						pToken = pTokenIter.next();
 						continue; // restart the iteration
 					} else {
-						if (StaticConfig.verbose) System.out.println(pSentenceId +
+						if (StaticConfig.current().verbose) System.out.println(pSentenceId +
 								" Dropping unmatched " + cToken + " " + "(PARC tokens: " + pTokens + " )");
 						break;
 					}
 				} else {   /* this may happen when tokens from previous iterations have a wrong byte count -- skip */
-					if (StaticConfig.verbose) System.out.println(pSentenceId + " Dropping unmatched "
+					if (StaticConfig.current().verbose) System.out.println(pSentenceId + " Dropping unmatched "
 							+ cToken + " " + "(PARC tokens: " + pTokens + " )");
 					break;
 				}
@@ -0,0 +1,85 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.lingdata;
+
+import edu.stanford.nlp.trees.Constituent;
+import edu.stanford.nlp.trees.Tree;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Constituent boundaries of a sentence, extracted from the parse tree once.
+ * Only constituents that cover more than two tokens are considered (constituent ends are inclusive), as in the
+ * original features.
+ */
+public class ConstituentIndex {
+
+	final BitSet starts = new BitSet();
+	final BitSet ends = new BitSet();
+
+	// (start, end) pairs packed into longs
+	final Set<Long> spans = new HashSet<>();
+
+	public ConstituentIndex(Tree tree) {
+		for (Constituent constituent : tree.constituents()) {
+			int start = constituent.start();
+			int end = constituent.end();
+
+			// TODO POST-ACL: end - start > 0 would be correct. change later.
+			if (end - start > 1) {
+				starts.set(start);
+				ends.set(end);
+				spans.add(pack(start, end));
+			}
+		}
+	}
+
+	static long pack(int start, int end) {
+		return ((long) start << 32) | (end & 0xffffffffL);
+	}
+
+	/**
+	 * Determines whether a constituent starts at a sentence position
+	 * @param position
+	 * @return
+	 */
+	public boolean hasStartingConstituent(int position) {
+		return position >= 0 && starts.get(position);
+	}
+
+	/**
+	 * Determines whether a constituent ends at a sentence position
+	 * @param position
+	 * @return
+	 */
+	public boolean hasEndingConstituent(int position) {
+		return position >= 0 && ends.get(position);
+	}
+
+	/**
+	 * Determines whether a constituent spans exactly from start to end (inclusive)
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public boolean matchesConstituent(int start, int end) {
+		return spans.contains(pack(start, end));
+	}
+}
@@ -0,0 +1,304 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.lingdata;
+
+import edu.stanford.nlp.ling.IndexedWord;
+import edu.stanford.nlp.semgraph.SemanticGraphEdge;
+import edu.stanford.nlp.trees.GrammaticalRelation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Directed shortest paths in the dependency graph of a sentence, computed on demand.
+ * A query runs a breadth-first search from one end of the path, which yields the paths between that word and all
+ * other words at once; the search trees are cached per word, so that the queries of one cue against all words of
+ * its sentence cost a single search in each direction.
+ */
+public class DependencyPaths {
+
+	static final int UNREACHABLE = -1;
+
+	final Map<IndexedWord, Integer> nodeIds = new HashMap<>();
+	final int numNodes;
+
+	// adjacency lists of outgoing and incoming edges, with the relation of each edge
+	final int[][] outNodes;
+	final GrammaticalRelation[][] outRelations;
+	final int[][] inNodes;
+	final GrammaticalRelation[][] inRelations;
+
+	// search trees, by root
+	final SearchTree[] forwardTrees;
+	final SearchTree[] backwardTrees;
+
+	/**
+	 * Breadth-first search tree, either along the edges (paths from the root) or against them (paths to the root)
+	 */
+	static class SearchTree {
+		final int[] distance;
+		final int[] parent;
+		final GrammaticalRelation[] parentRelation;
+
+		SearchTree(int[] distance, int[] parent, GrammaticalRelation[] parentRelation) {
+			this.distance = distance;
+			this.parent = parent;
+			this.parentRelation = parentRelation;
+		}
+	}
+
+	/**
+	 * A shortest path, read off a search tree by following parent pointers from one end to the root
+	 */
+	public static class Path {
+		final SearchTree tree;
+		final int node;
+
+		Path(SearchTree tree, int node) {
+			this.tree = tree;
+			this.node = node;
+		}
+
+		/**
+		 * Number of edges on the path
+		 * @return
+		 */
+		public int length() {
+			return tree.distance[node];
+		}
+
+		/**
+		 * Checks whether the path contains a given relation
+		 * @param relation short name of the relation
+		 * @return
+		 */
+		public boolean containsRelation(String relation) {
+			for (int current = node; tree.parent[current] != UNREACHABLE; current = tree.parent[current])
+				if (tree.parentRelation[current].getShortName().equals(relation))
+					return true;
+
+			return false;
+		}
+	}
+
+	/**
+	 * Index the edges of a dependency graph. As in a simple graph, only the first of several edges between the same
+	 * pair of words is kept, and loops are dropped.
+	 * @param dependencies
+	 */
+	public DependencyPaths(List<SemanticGraphEdge> dependencies) {
+		List<int[]> edges = new ArrayList<>();
+		List<GrammaticalRelation> relations = new ArrayList<>();
+		Set<Long> seenPairs = new HashSet<>();
+
+		for (SemanticGraphEdge dep : dependencies) {
+			int governor = nodeId(dep.getGovernor());
+			int dependent = nodeId(dep.getDependent());
+			if (governor == dependent) continue;
+			if (!seenPairs.add(((long) governor << 32) | dependent)) continue;
+
+			edges.add(new int[]{governor, dependent});
+			relations.add(dep.getRelation());
+		}
+
+		numNodes = nodeIds.size();
+
+		int[] outDegree = new int[numNodes];
+		int[] inDegree = new int[numNodes];
+		for (int[] edge : edges) {
+			outDegree[edge[0]]++;
+			inDegree[edge[1]]++;
+		}
+
+		outNodes = new int[numNodes][];
+		outRelations = new GrammaticalRelation[numNodes][];
+		inNodes = new int[numNodes][];
+		inRelations = new GrammaticalRelation[numNodes][];
+		for (int node = 0; node < numNodes; node++) {
+			outNodes[node] = new int[outDegree[node]];
+			outRelations[node] = new GrammaticalRelation[outDegree[node]];
+			inNodes[node] = new int[inDegree[node]];
+			inRelations[node] = new GrammaticalRelation[inDegree[node]];
+		}
+
+		// fill in edge order, so that searches visit neighbors in the order of the dependencies
+		Arrays.fill(outDegree, 0);
+		Arrays.fill(inDegree, 0);
+		for (int i = 0; i < edges.size(); i++) {
+			int governor = edges.get(i)[0];
+			int dependent = edges.get(i)[1];
+			GrammaticalRelation relation = relations.get(i);
+
+			outNodes[governor][outDegree[governor]] = dependent;
+			outRelations[governor][outDegree[governor]++] = relation;
+			inNodes[dependent][inDegree[dependent]] = governor;
+			inRelations[dependent][inDegree[dependent]++] = relation;
+		}
+
+		forwardTrees = new SearchTree[numNodes];
+		backwardTrees = new SearchTree[numNodes];
+	}
+
+	/**
+	 * Id of a word, assigning a new one if necessary
+	 * @param word
+	 * @return
+	 */
+	int nodeId(IndexedWord word) {
+		Integer id = nodeIds.get(word);
+		if (id == null) {
+			id = nodeIds.size();
+			nodeIds.put(word, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Checks whether a word is part of the graph (i.e., has at least one dependency)
+	 * @param word
+	 * @return
+	 */
+	public boolean contains(IndexedWord word) {
+		return word != null && nodeIds.containsKey(word);
+	}
+
+	/**
+	 * Checks whether there is an edge from governor to dependent
+	 * @param governor
+	 * @param dependent
+	 * @return
+	 */
+	public boolean hasEdge(IndexedWord governor, IndexedWord dependent) {
+		if (!contains(governor) || !contains(dependent)) return false;
+
+		int dependentId = nodeIds.get(dependent);
+		for (int node : outNodes[nodeIds.get(governor)])
+			if (node == dependentId) return true;
+
+		return false;
+	}
+
+	/**
+	 * Shortest path from source to target, found by searching from the source. Null if either word is not in the
+	 * graph, if the target cannot be reached, or if source and target are the same word.
+	 * @param source
+	 * @param target
+	 * @return
+	 */
+	public Path pathFrom(IndexedWord source, IndexedWord target) {
+		if (!contains(source) || !contains(target)) return null;
+
+		int sourceId = nodeIds.get(source);
+		int targetId = nodeIds.get(target);
+		if (sourceId == targetId) return null;
+
+		SearchTree tree = forwardTree(sourceId);
+		if (tree.distance[targetId] == UNREACHABLE) return null;
+		return new Path(tree, targetId);
+	}
+
+	/**
+	 * Shortest path from source to target, found by searching backwards from the target. Null if either word is not
+	 * in the graph, if the target cannot be reached, or if source and target are the same word.
+	 * @param source
+	 * @param target
+	 * @return
+	 */
+	public Path pathTo(IndexedWord source, IndexedWord target) {
+		if (!contains(source) || !contains(target)) return null;
+
+		int sourceId = nodeIds.get(source);
+		int targetId = nodeIds.get(target);
+		if (sourceId == targetId) return null;
+
+		SearchTree tree = backwardTree(targetId);
+		if (tree.distance[sourceId] == UNREACHABLE) return null;
+		return new Path(tree, sourceId);
+	}
+
+	/**
+	 * Shortest path from source to target, reusing a cached search from the target if there is one
+	 * @param source
+	 * @param target
+	 * @return
+	 */
+	public Path path(IndexedWord source, IndexedWord target) {
+		if (contains(target) && backwardTrees[nodeIds.get(target)] != null) return pathTo(source, target);
+		else return pathFrom(source, target);
+	}
+
+	SearchTree forwardTree(int root) {
+		SearchTree tree = forwardTrees[root];
+		if (tree == null) {
+			tree = search(root, outNodes, outRelations);
+			forwardTrees[root] = tree;
+		}
+		return tree;
+	}
+
+	SearchTree backwardTree(int root) {
+		SearchTree tree = backwardTrees[root];
+		if (tree == null) {
+			tree = search(root, inNodes, inRelations);
+			backwardTrees[root] = tree;
+		}
+		return tree;
+	}
+
+	/**
+	 * Breadth-first search from a root. Search trees are immutable, so a tree that is computed twice by concurrent
+	 * queries is merely redundant.
+	 * @param root
+	 * @param adjacentNodes
+	 * @param adjacentRelations
+	 * @return
+	 */
+	SearchTree search(int root, int[][] adjacentNodes, GrammaticalRelation[][] adjacentRelations) {
+		int[] distance = new int[numNodes];
+		int[] parent = new int[numNodes];
+		GrammaticalRelation[] parentRelation = new GrammaticalRelation[numNodes];
+		Arrays.fill(distance, UNREACHABLE);
+		Arrays.fill(parent, UNREACHABLE);
+
+		int[] queue = new int[numNodes];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = root;
+		distance[root] = 0;
+
+		while (head < tail) {
+			int node = queue[head++];
+			int[] neighbors = adjacentNodes[node];
+			for (int i = 0; i < neighbors.length; i++) {
+				int neighbor = neighbors[i];
+				if (distance[neighbor] != UNREACHABLE) continue;
+				distance[neighbor] = distance[node] + 1;
+				parent[neighbor] = node;
+				parentRelation[neighbor] = adjacentRelations[node][i];
+				queue[tail++] = neighbor;
+			}
+		}
+
+		return new SearchTree(distance, parent, parentRelation);
+	}
+}
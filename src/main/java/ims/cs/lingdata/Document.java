@@ -22,6 +22,9 @@ import java.util.List;
 import java.util.Set;
 
 import ims.cs.lingdata.Types.Genre;
+import ims.cs.qsample.features.SpanFeatureCache;
+import ims.cs.qsample.features.SpanIndex;
+import ims.cs.qsample.models.TokenScores;
 import ims.cs.qsample.spans.Span;
 
 /**
@@ -41,6 +44,16 @@ public class Document  {
 	public Set<Span> predictedSpanSet;
 	public Set<Span> goldSpanSet;
 
+	// span features of sampled spans, and token counts for computing them
+	public SpanFeatureCache spanFeatureCache;
+	public SpanIndex spanIndex;
+
+	// incremented whenever token features or predicted cues change, so that models can tell when scores are stale
+	public int tokenFeatureVersion;
+
+	// begin and end scores of the tokens under the span model
+	public TokenScores tokenScores;
+
 
 	// CoreNLP flag to avoid multiple processing
 	public boolean isCoreNlpProcessed;
@@ -18,13 +18,13 @@
 package ims.cs.lingdata;
 
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
 import edu.stanford.nlp.ling.IndexedWord;
 import edu.stanford.nlp.semgraph.SemanticGraph;
 import edu.stanford.nlp.trees.Tree;
-import org.jgrapht.alg.FloydWarshallShortestPaths;
 
 /**
  * Representation of a sentence.
@@ -45,7 +45,10 @@ public class Sentence  {
 	// CoreNLP output
 	public Tree tree;
 	public SemanticGraph dependencyGraph;
-	public FloydWarshallShortestPaths fw;
+
+	// dependency paths and constituent boundaries, indexed on first use
+	DependencyPaths dependencyPaths;
+	ConstituentIndex constituentIndex;
 
 
 	public Sentence () {}
@@ -53,10 +56,76 @@ public class Sentence  {
 		document = d;
 	}
 
+	/**
+	 * Copy of a sentence for another copy of its document. The new tokens correspond to the tokens of the sentence by
+	 * position. Parses and their indices are shared; the lookups from parses to tokens refer to the new tokens.
+	 * @param other
+	 * @param d
+	 * @param tokens
+	 */
+	public Sentence (Sentence other, Document d, List<Token> tokens) {
+		document = d;
+		tokenList = tokens;
+		gorn = other.gorn;
+		sentenceId = other.sentenceId;
+		positionInDocument = other.positionInDocument;
+		tree = other.tree;
+		dependencyGraph = other.dependencyGraph;
+
+		synchronized (other) {
+			dependencyPaths = other.dependencyPaths;
+			constituentIndex = other.constituentIndex;
+		}
+
+		Map<Token, Token> tokenMap = new IdentityHashMap<>();
+		for (int i = 0; i < tokens.size(); i++) tokenMap.put(other.tokenList.get(i), tokens.get(i));
+
+		if (other.indexedWordLookup != null) {
+			indexedWordLookup = new HashMap<>();
+			for (Map.Entry<IndexedWord, Token> entry : other.indexedWordLookup.entrySet())
+				indexedWordLookup.put(entry.getKey(), copyOf(entry.getValue(), tokenMap));
+		}
+
+		if (other.treeLookup != null) {
+			treeLookup = new HashMap<>();
+			for (Map.Entry<Tree, Token> entry : other.treeLookup.entrySet())
+				treeLookup.put(entry.getKey(), copyOf(entry.getValue(), tokenMap));
+		}
+	}
+
+	/**
+	 * The copy of a token, or the token itself if it is not part of the sentence
+	 * @param token
+	 * @param tokenMap
+	 * @return
+	 */
+	static Token copyOf(Token token, Map<Token, Token> tokenMap) {
+		Token copy = tokenMap.get(token);
+		return copy == null ? token : copy;
+	}
+
 	public List<Token> getTokenList() {
 		return tokenList;
 	}
 
+	/**
+	 * Shortest path service for the dependency graph of this sentence
+	 * @return
+	 */
+	public synchronized DependencyPaths getDependencyPaths() {
+		if (dependencyPaths == null) dependencyPaths = new DependencyPaths(dependencyGraph.edgeListSorted());
+		return dependencyPaths;
+	}
+
+	/**
+	 * Constituent boundaries of the parse tree of this sentence
+	 * @return
+	 */
+	public synchronized ConstituentIndex getConstituentIndex() {
+		if (constituentIndex == null) constituentIndex = new ConstituentIndex(tree);
+		return constituentIndex;
+	}
+
 	public Token first() { return tokenList.get(0); }
 	public Token last() { return tokenList.get(tokenList.size()-1); }
 
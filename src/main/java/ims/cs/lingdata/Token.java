@@ -20,13 +20,11 @@ package ims.cs.lingdata;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import ims.cs.parc.PARCAttribution;
 import ims.cs.corenlp.Helper;
 import ims.cs.qsample.features.FeatureSet;
 import edu.stanford.nlp.ling.IndexedWord;
-import edu.stanford.nlp.trees.Constituent;
 import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.trees.TreeGraphNode;
 import ims.cs.qsample.spans.Span;
@@ -63,6 +61,7 @@ public class Token {
 	// features
 	public FeatureSet featureSet;
 	public FeatureSet boundaryFeatureSet;
+	public boolean boundaryFeatureSetShared;  // copy before adding features (see BoundaryFeatures)
 
 	
 	// structural properties
@@ -219,16 +218,7 @@ public class Token {
 	 * @return
 	 */
 	public boolean hasStartingConstituents() {
-		Tree tree = sentence.tree;
-		Set<Constituent> constituents = tree.constituents();
-
-		for (Constituent c : constituents) {
-			if (c.end() - c.start() > 1 &&
-					c.start() == predSentencePosition)
-				return true;
-		}
-
-		return false;
+		return sentence.getConstituentIndex().hasStartingConstituent(predSentencePosition);
 	}
 
 	/**
@@ -236,17 +226,7 @@ public class Token {
 	 * @return
 	 */
 	public boolean hasEndingConstituents() {
-		Tree tree = sentence.tree;
-		Set<Constituent> constituents = tree.constituents();
-
-
-		for (Constituent c : constituents) {
-			if (c.end() - c.start() > 1 &&
-					c.end() == predSentencePosition)
-				return true;
-		}
-
-		return false;
+		return sentence.getConstituentIndex().hasEndingConstituent(predSentencePosition);
 	}
 
 
@@ -23,6 +23,8 @@ import cc.mallet.pipe.Pipe;
 import cc.mallet.types.Instance;
 import cc.mallet.types.Token;
 import cc.mallet.types.TokenSequence;
+import ims.cs.qsample.features.FeatureIndexMap;
+import ims.cs.qsample.features.FeatureIntSet;
 import ims.cs.qsample.features.FeatureSet;
 
 /**
@@ -51,8 +53,16 @@ public class DocumentFeatureSet2TokenSequence extends Pipe {
 			Token mToken = new Token(cToken.predText);
 
 			// copy each feature
-			for (Object entry : fs) {
-				mToken.setFeatureValue(entry.toString(), 1);
+			if (fs instanceof FeatureIntSet) {
+				FeatureIntSet fis = (FeatureIntSet) fs;
+				FeatureIndexMap featureIndexMap = FeatureIntSet.getFeatureIndexMap();
+				for (int i = 0; i < fis.size(); i++) {
+					mToken.setFeatureValue(featureIndexMap.getFeature(fis.indexAt(i)), 1);
+				}
+			} else {
+				for (Object entry : fs) {
+					mToken.setFeatureValue(entry.toString(), 1);
+				}
 			}
 			
 			ts.add(mToken);
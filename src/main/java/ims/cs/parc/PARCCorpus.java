@@ -52,7 +52,7 @@ public class PARCCorpus extends Corpus {
 	private static PARCCorpus instance;
 	
 	public PARCCorpus () throws ParserConfigurationException, SAXException, IOException {
-		this(StaticConfig.parcRoot);
+		this(StaticConfig.current().parcRoot);
 	}
 
 	public void readNewsIds() throws IOException {
@@ -131,7 +131,7 @@ public class PARCCorpus extends Corpus {
 		String sectionId = wsjId.getSectionStr();
 		String fileId = wsjId.getFileStr();
 		
-		return new File(new File(StaticConfig.pdtbWsjRawDirectory, sectionId), String.format("wsj_%s%s", sectionId, fileId));
+		return new File(new File(StaticConfig.current().pdtbWsjRawDirectory, sectionId), String.format("wsj_%s%s", sectionId, fileId));
 	}
 
 	/**
@@ -187,7 +187,7 @@ public class PARCCorpus extends Corpus {
 			// load each file in the current section
 			for (File f: fileList) {
 				String fileId = f.getName().substring(6, 8);
-				if (StaticConfig.verbose) System.out.println("Reading " + f);
+				if (StaticConfig.current().verbose) System.out.println("Reading " + f);
 
 				// make document ID
 				WSJId fileWsjId = new WSJId(sectionId, fileId);
@@ -195,7 +195,7 @@ public class PARCCorpus extends Corpus {
 
 				// check if we have a news document, skip otherwise
 				if (!newsIdSet.contains("wsj_" + idString)) {
-					if (StaticConfig.verbose) System.out.println("Skipping " + idString + " because it's not news.");
+					if (StaticConfig.current().verbose) System.out.println("Skipping " + idString + " because it's not news.");
 					continue;
 				}
 
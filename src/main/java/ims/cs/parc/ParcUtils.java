@@ -17,20 +17,14 @@
 
 package ims.cs.parc;
 
-import edu.stanford.nlp.ling.IndexedWord;
-import edu.stanford.nlp.semgraph.SemanticGraphEdge;
-import edu.stanford.nlp.trees.GrammaticalRelation;
 import ims.cs.corenlp.Helper;
 import ims.cs.lingdata.ByteCount;
 import ims.cs.lingdata.Document;
 import ims.cs.lingdata.Sentence;
 import ims.cs.lingdata.Token;
 import edu.stanford.nlp.trees.Tree;
-import org.jgrapht.alg.FloydWarshallShortestPaths;
-import org.jgrapht.graph.SimpleDirectedGraph;
 
 import java.util.Iterator;
-import java.util.List;
 
 /**
  * Collection of Utility functions
@@ -170,34 +164,4 @@ public abstract class ParcUtils {
 		}
 	}
 
-	/**
-	 * The FW implementation needs distinct objects as edges, which this class accomplishes.
-	 * CoreNLP seems to optimize storage by caching strings, so different edges have identical label strings.
-	 */
-	public static class IndexedEdge {
-		public GrammaticalRelation rel;
-		public int index;
-
-		public IndexedEdge(GrammaticalRelation rel, int index) {
-			this.rel = rel;
-			this.index = index;
-		}
-	}
-
-	/**
-	 * Compute cached dependency paths using Floyd Warshall
-	 * @param dependencies
-	 * @return
-	 */
-	public static FloydWarshallShortestPaths computeFloydWarshallSGE(List<SemanticGraphEdge> dependencies) {
-		SimpleDirectedGraph<IndexedWord, IndexedEdge> graph = new SimpleDirectedGraph<IndexedWord, IndexedEdge>(IndexedEdge.class);
-		int edgeId = 0;
-		for (SemanticGraphEdge dep : dependencies) {
-			graph.addVertex(dep.getGovernor());
-			graph.addVertex(dep.getDependent());
-			graph.addEdge(dep.getGovernor(), dep.getDependent(), new IndexedEdge(dep.getRelation(), edgeId));
-		}
-		return new FloydWarshallShortestPaths(graph);
-	}
-
 }
@@ -31,6 +31,11 @@ import org.xml.sax.SAXException;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -58,6 +63,9 @@ public class ProcessedCorpus {
      * @return new list of documents after processing
      */
     public List<Document> transformDocumentList(List<Document> originalDocs) {
+        if (StaticConfig.current().numProcessingThreads > 1)
+            return transformDocumentListParallel(originalDocs, StaticConfig.current().numProcessingThreads);
+
         PARCCoreNlpPipeline coreNlpPipeline = new PARCCoreNlpPipeline(originalDocs);
         List<Document> processedDocuments = new ArrayList<Document>(originalDocs.size());
 
@@ -74,6 +82,50 @@ public class ProcessedCorpus {
         return processedDocuments;
     }
 
+    /**
+     * Runs the same steps as transformDocumentList on a fixed number of threads. Documents are processed
+     * independently: the extractors only read their word lists, and features are interned in the thread-safe feature
+     * index map. The output keeps the order of the input.
+     * @param originalDocs list of documents to be processed
+     * @param numThreads
+     * @return new list of documents after processing
+     */
+    public List<Document> transformDocumentListParallel(List<Document> originalDocs, int numThreads) {
+        final PARCCoreNlpPipeline coreNlpPipeline = new PARCCoreNlpPipeline(originalDocs);
+        List<Document> processedDocuments = new ArrayList<Document>(originalDocs.size());
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<Document>> futures = new ArrayList<>(originalDocs.size());
+
+        try {
+            for (final Document originalDoc : originalDocs) {
+                futures.add(executor.submit(new Callable<Document>() {
+                    @Override
+                    public Document call() {
+                        Document doc = coreNlpPipeline.process(originalDoc);
+                        featureExtractor.extractAllFeatures(doc);
+                        labelExtractor.label(doc);
+                        bioToSpan(doc, null, true);
+                        return doc;
+                    }
+                }));
+            }
+
+            // collect in input order
+            for (Future<Document> future : futures) {
+                try {
+                    processedDocuments.add(future.get());
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new Error(e);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        return processedDocuments;
+    }
+
 
     public List<Document> getTrain() {
         return transformDocumentList(corpus.getTrain().docList);
@@ -124,11 +176,11 @@ public class ProcessedCorpus {
      * @throws IOException
      */
     public static void savePredictionsToFile(List<Document> documents, String experimentId, boolean newLineAtSentenceEnd, boolean writeCues) throws IOException {
-        String fileName = NewStaticPrinter.fileRoot + ".predictions-" + experimentId + ".txt.gz";
+        String fileName = NewStaticPrinter.getFileRoot() + ".predictions-" + experimentId + ".txt.gz";
 
         // initialize writer if necessary
         PrintWriter writer = null;
-        if (!StaticConfig.oneFilePerInput)
+        if (!StaticConfig.current().oneFilePerInput)
             writer = new PrintWriter(new GZIPOutputStream(new FileOutputStream(fileName)));
 
 
@@ -136,9 +188,9 @@ public class ProcessedCorpus {
             boolean inSpan = false;
 
             // set up a new writer if requested
-            if (StaticConfig.oneFilePerInput) {
+            if (StaticConfig.current().oneFilePerInput) {
                 if (writer != null) writer.close();
-                writer = new PrintWriter(new GZIPOutputStream(new FileOutputStream(new File(StaticConfig.outputDirectory, document.docId.toString() + ".quotations.gz"))));
+                writer = new PrintWriter(new GZIPOutputStream(new FileOutputStream(new File(StaticConfig.current().outputDirectory, document.docId.toString() + ".quotations.gz"))));
             }
 
             for (Token token : document.tokenList) {
@@ -167,8 +219,8 @@ public class ProcessedCorpus {
         }
         writer.close();
 
-        if (StaticConfig.oneFilePerInput) {
-            System.out.println("Wrote predictions to " + StaticConfig.outputDirectory);
+        if (StaticConfig.current().oneFilePerInput) {
+            System.out.println("Wrote predictions to " + StaticConfig.current().outputDirectory);
         } else {
             System.out.println("Wrote predictions to " + fileName);
         }
@@ -106,8 +106,8 @@ public class SpanLabelExtractor implements Serializable {
 	 * Set up extractor
 	 */
 	public SpanLabelExtractor() {
-		boolean useEnd = StaticConfig.useBioeTags;
-		Set<Type> typeSet = getTypeSet(StaticConfig.quotationTypes);
+		boolean useEnd = StaticConfig.current().useBioeTags;
+		Set<Type> typeSet = getTypeSet(StaticConfig.current().quotationTypes);
 
 		setUp(useBegin, useEnd, typeSet);
 	}
@@ -119,7 +119,7 @@ public class SpanLabelExtractor implements Serializable {
 	 * @param typeSet
 	 */
 	private void setUp (boolean useBegin, boolean useEnd, Set<PARCAttribution.Type> typeSet) {
-		if (StaticConfig.verbose && useBTagForce)
+		if (StaticConfig.current().verbose && useBTagForce)
 			System.out.println("NOTE: separating adjacent spans");
 
 		this.useBegin = useBegin;
@@ -114,7 +114,7 @@ public class EvaluateSpan {
     }
 
 
-    private static void printResults(String prefix, String sep, SpanResults trainingEval, SpanResults testEval, SpanResults valEval, SpanResults resEval) {
+    public static void printResults(String prefix, String sep, SpanResults trainingEval, SpanResults testEval, SpanResults valEval, SpanResults resEval) {
         printHeader(sep, prefix.length() + 1);
 
         if (trainingEval != null) System.out.println(prefix + " TRAIN  " + trainingEval.toString(sep));
@@ -17,112 +17,97 @@
 
 package ims.cs.qsample.features;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Binning for distances
  * Created by scheibcn on 3/4/16.
  */
 public class Binning {
+
+    // thresholds of the stacked bins
+    static final int[] STACK_THRESHOLDS = {1, 2, 3, 4, 5, 6, 7, 8, 11, 16, 21, 26, 31, 41, 51, 61, 71, 81, 91, 101};
+
+    // interval bins: distances in [INTERVAL_LOWER[i], INTERVAL_UPPER[i]) go to INTERVAL_LABELS[i]
+    static final int[] INTERVAL_LOWER = {1, 5, 10, 20, 40, 60, 80};
+    static final int[] INTERVAL_UPPER = {5, 10, 20, 40, 60, 80, 101};
+    static final String[] INTERVAL_LABELS = {"[0,5)", "[5,10)", "[10,20)", "[20,40)", "[40,60)", "[60,80)", "[60,100]"};
+
+    static final Map<String, Bins> binsByPrefix = new HashMap<>();
+
     /**
-     * Bins that stack up from 0 to 100
-     * @param distance
-     * @param prefix
-     * @return
+     * Compiled templates of the bins of one prefix
      */
-    public static List<String> distanceBinsStackUp (int distance, String prefix) {
-        List<String> features = new ArrayList<>();
-        
-        if (distance > 0) features.add(prefix + ">=1");
-        if (distance > 1) features.add(prefix + ">=2");
-        if (distance > 2) features.add(prefix + ">=3");
-        if (distance > 3) features.add(prefix + ">=4");
-        if (distance > 4) features.add(prefix + ">=5");
-        if (distance > 5) features.add(prefix + ">=6");
-        if (distance > 6) features.add(prefix + ">=7");
-        if (distance > 7) features.add(prefix + ">=8");
-        if (distance > 10) features.add(prefix + ">=11");
-        if (distance > 15) features.add(prefix + ">=16");
-        if (distance > 20) features.add(prefix + ">=21");
-        if (distance > 25) features.add(prefix + ">=26");
-        if (distance > 30) features.add(prefix + ">=31");
-        if (distance > 40) features.add(prefix + ">=41");
-        if (distance > 50) features.add(prefix + ">=51");
-        if (distance > 60) features.add(prefix + ">=61");
-        if (distance > 70) features.add(prefix + ">=71");
-        if (distance > 80) features.add(prefix + ">=81");
-        if (distance > 90) features.add(prefix + ">=91");
-        if (distance > 100) features.add(prefix + ">=101");
+    public static class Bins {
+        final FeatureTemplate interval;
+        final FeatureTemplate stackUp;
+        final FeatureTemplate stackDown;
 
-        return features;
+        Bins(String prefix) {
+            interval = FeatureTemplate.unary(prefix + "_in_", FeatureTemplate.Kind.STRING);
+            stackUp = FeatureTemplate.unary(prefix + ">=", FeatureTemplate.Kind.INT);
+            stackDown = FeatureTemplate.unary(prefix + "<=", FeatureTemplate.Kind.INT);
+        }
     }
 
     /**
-     * Bins that stack down from 0 to 100
-     * @param distance
+     * Bins for a feature prefix
      * @param prefix
      * @return
      */
-    public static List<String> distanceBinsStackDown (int distance, String prefix) {
-        List<String> features = new ArrayList<>();
+    public static synchronized Bins bins(String prefix) {
+        Bins bins = binsByPrefix.get(prefix);
+        if (bins == null) {
+            bins = new Bins(prefix);
+            binsByPrefix.put(prefix, bins);
+        }
+        return bins;
+    }
 
-        if (distance < 2) features.add(prefix + "<=1");
-        if (distance < 3) features.add(prefix + "<=2");
-        if (distance < 4) features.add(prefix + "<=3");
-        if (distance < 5) features.add(prefix + "<=4");
-        if (distance < 6) features.add(prefix + "<=5");
-        if (distance < 7) features.add(prefix + "<=6");
-        if (distance < 8) features.add(prefix + "<=7");
-        if (distance < 9) features.add(prefix + "<=8");
-        if (distance < 12) features.add(prefix + "<=11");
-        if (distance < 17) features.add(prefix + "<=16");
-        if (distance < 22) features.add(prefix + "<=21");
-        if (distance < 27) features.add(prefix + "<=26");
-        if (distance < 32) features.add(prefix + "<=31");
-        if (distance < 42) features.add(prefix + "<=41");
-        if (distance < 52) features.add(prefix + "<=51");
-        if (distance < 62) features.add(prefix + "<=61");
-        if (distance < 72) features.add(prefix + "<=71");
-        if (distance < 82) features.add(prefix + "<=81");
-        if (distance < 92) features.add(prefix + "<=91");
-        if (distance < 102) features.add(prefix + "<=101");
+    /**
+     * Bins that stack up from 0 to 100
+     * @param distance
+     * @param bins
+     * @param fs
+     */
+    public static void distanceBinsStackUp (int distance, Bins bins, FeatureSet fs) {
+        for (int threshold : STACK_THRESHOLDS)
+            if (distance >= threshold) bins.stackUp.add(fs, threshold);
+    }
 
-        return features;
+    /**
+     * Bins that stack down from 0 to 100
+     * @param distance
+     * @param bins
+     * @param fs
+     */
+    public static void distanceBinsStackDown (int distance, Bins bins, FeatureSet fs) {
+        for (int threshold : STACK_THRESHOLDS)
+            if (distance <= threshold) bins.stackDown.add(fs, threshold);
     }
 
     /**
      * Interval bins from 0 to 100
      * @param distance
-     * @param prefix
-     * @return
+     * @param bins
+     * @param fs
      */
-    public static List<String> distanceBins1to100(int distance, String prefix) {
-        List<String> features = new ArrayList<>();
-
-        if (distance > 0 && distance < 5) features.add(prefix + "_in_[0,5)");
-        if (distance >= 5 && distance < 10) features.add(prefix + "_in_[5,10)");
-        if (distance >= 10 && distance < 20) features.add(prefix + "_in_[10,20)");
-        if (distance >= 20 && distance < 40) features.add(prefix + "_in_[20,40)");
-        if (distance >= 40 && distance < 60) features.add(prefix + "_in_[40,60)");
-        if (distance >= 60 && distance < 80) features.add(prefix + "_in_[60,80)");
-        if (distance >= 80 && distance <= 100) features.add(prefix + "_in_[60,100]");
-
-        return features;
+    public static void distanceBins1to100(int distance, Bins bins, FeatureSet fs) {
+        for (int i = 0; i < INTERVAL_LABELS.length; i++)
+            if (distance >= INTERVAL_LOWER[i] && distance < INTERVAL_UPPER[i]) bins.interval.add(fs, INTERVAL_LABELS[i]);
     }
 
 
     /**
      * Bins from 0 to 100, intervals and stacking up & down
      * @param distance
-     * @param prefix
-     * @return
+     * @param bins
+     * @param fs
      */
-    public static List<String> distanceBinsAll (int distance, String prefix) {
-        List<String> features = new ArrayList<>();
-        features.addAll(distanceBins1to100(distance, prefix));
-        features.addAll(distanceBinsStackDown(distance,prefix));
-        features.addAll(distanceBinsStackUp(distance,prefix));
-        return features;
+    public static void distanceBinsAll (int distance, Bins bins, FeatureSet fs) {
+        distanceBins1to100(distance, bins, fs);
+        distanceBinsStackDown(distance, bins, fs);
+        distanceBinsStackUp(distance, bins, fs);
     }
 }
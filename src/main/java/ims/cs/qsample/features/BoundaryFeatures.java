@@ -17,15 +17,17 @@
 
 package ims.cs.qsample.features;
 
+import ims.cs.lingdata.DependencyPaths;
 import ims.cs.lingdata.Document;
 import ims.cs.lingdata.Sentence;
 import ims.cs.lingdata.Token;
-import edu.stanford.nlp.ling.IndexedWord;
-import ims.cs.parc.ParcUtils;
-import org.jgrapht.Graph;
-import org.jgrapht.GraphPath;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import static ims.cs.qsample.features.FeatureTemplate.Kind.INT;
+import static ims.cs.qsample.features.FeatureTemplate.Kind.STRING;
 
 /**
  * A collection of static features for recognizing span boundaries
@@ -33,6 +35,56 @@ import java.util.*;
  */
 public class BoundaryFeatures {
 
+    static final String[] SENTENCE_MODIFIERS = {"SAME-SENTENCE", "DIFFERENT-SENTENCE"};
+    static final int WINDOW_SIZE = 5;
+    static final Pattern PUNCTUATION = Pattern.compile("\\{Punct}");
+
+    // compiled feature templates
+    static final FeatureTemplate TOKEN = FeatureTemplate.unary("TOKEN=", STRING);
+    static final FeatureTemplate LEMMA = FeatureTemplate.unary("LEMMA=", STRING);
+    static final FeatureTemplate POS = FeatureTemplate.unary("POS=", STRING);
+    static final FeatureTemplate SHAPE = FeatureTemplate.unary("SHAPE=", STRING);
+
+    static final FeatureTemplate BIGRAM_WORD_L = FeatureTemplate.binary("BIGRAM-WORD-L=", "_", STRING, STRING);
+    static final FeatureTemplate BIGRAM_WORD_R = FeatureTemplate.binary("BIGRAM-WORD-R=", "_", STRING, STRING);
+    static final FeatureTemplate BIGRAM_LEMMA_L = FeatureTemplate.binary("BIGRAM-LEMMA-L=", "_", STRING, STRING);
+    static final FeatureTemplate BIGRAM_LEMMA_R = FeatureTemplate.binary("BIGRAM-LEMMA-R=", "_", STRING, STRING);
+    static final FeatureTemplate BIGRAM_POS_L = FeatureTemplate.binary("BIGRAM-POS-L=", "_", STRING, STRING);
+    static final FeatureTemplate BIGRAM_POS_R = FeatureTemplate.binary("BIGRAM-POS-R=", "_", STRING, STRING);
+
+    // window templates by sentence modifier and distance
+    static final FeatureTemplate[][] PREV_WORD = windowTemplates("PREV-WORD-");
+    static final FeatureTemplate[][] PREV_LEMMA = windowTemplates("PREV-LEMMA-");
+    static final FeatureTemplate[][] PREV_POS = windowTemplates("PREV-POS-");
+    static final FeatureTemplate[][] NEXT_WORD = windowTemplates("NEXT-WORD+");
+    static final FeatureTemplate[][] NEXT_LEMMA = windowTemplates("NEXT-LEMMA+");
+    static final FeatureTemplate[][] NEXT_POS = windowTemplates("NEXT-POS+");
+
+    static final FeatureTemplate CUE_COMES_RIGHT = FeatureTemplate.unary("CUE-COMES-RIGHT-WIN-", STRING);
+    static final FeatureTemplate CUE_COMES_RIGHT_AT = FeatureTemplate.binary("CUE-COMES-RIGHT-WIN-", "-", STRING, INT);
+    static final FeatureTemplate CUE_COMES_LEFT = FeatureTemplate.unary("CUE-COMES-LEFT-WIN-", STRING);
+    static final FeatureTemplate CUE_COMES_LEFT_AT = FeatureTemplate.binary("CUE-COMES-LEFT-WIN-", "-", STRING, INT);
+    static final FeatureTemplate PATH_RIGHT_LENGTH = FeatureTemplate.unary("BOUND:CUE:PATH->,LEN=", INT);
+    static final FeatureTemplate PATH_LEFT_LENGTH = FeatureTemplate.unary("BOUND:CUE:PATH<-,LEN=", INT);
+
+    static final Binning.Bins DISTANCE_TO_NEXT_CUE = Binning.bins("DISTANCE-TO-NEXT-CUE-");
+    static final Binning.Bins DISTANCE_TO_PREV_CUE = Binning.bins("DISTANCE-TO-PREV-CUE-");
+    static final Binning.Bins DISTANCE_TO_SENTENCE_BEGIN = Binning.bins("DISTANCE-TO-SENTENCE-BEGIN");
+    static final Binning.Bins DISTANCE_TO_SENTENCE_END = Binning.bins("DISTANCE-TO-SENTENCE-END");
+
+    /**
+     * Templates prefix + modifier + "-" + distance + "=" + value for all sentence modifiers and window distances
+     * @param prefix
+     * @return
+     */
+    static FeatureTemplate[][] windowTemplates(String prefix) {
+        FeatureTemplate[][] templates = new FeatureTemplate[SENTENCE_MODIFIERS.length][WINDOW_SIZE + 1];
+        for (int modifier = 0; modifier < SENTENCE_MODIFIERS.length; modifier++)
+            for (int i = 1; i <= WINDOW_SIZE; i++)
+                templates[modifier][i] = FeatureTemplate.unary(prefix + SENTENCE_MODIFIERS[modifier] + "-" + i + "=", STRING);
+        return templates;
+    }
+
     /**
      * Returns the previous word safely
      * @param token
@@ -162,67 +214,66 @@ public class BoundaryFeatures {
      * Some information about the current tokens and its neighbors
      * @param token
      * @param doLexical
-     * @return
+     * @param fs receives the features
      */
-    public static List<String> tokenFeatures(Token token, boolean doLexical) {
-        List<String> fs = new ArrayList<>();
+    public static void tokenFeatures(Token token, boolean doLexical, FeatureSet fs) {
         if (doLexical) {
-            fs.add("TOKEN=" + token.predText);
-            fs.add("LEMMA=" + token.predLemma);
-            fs.add("POS=" + token.predPosTag);
+            TOKEN.add(fs, token.predText);
+            LEMMA.add(fs, token.predLemma);
+            POS.add(fs, token.predPosTag);
 
             // LEMMA BIGRAM
-            fs.add("BIGRAM-WORD-L=" + prevWord(token) + "_" + token.predText);
-            fs.add("BIGRAM-WORD-R=" + token.predText + "_" + nextWord(token));
+            BIGRAM_WORD_L.add(fs, prevWord(token), token.predText);
+            BIGRAM_WORD_R.add(fs, token.predText, nextWord(token));
 
             // LEMMA BIGRAM
-            fs.add("BIGRAM-LEMMA-L=" + prevLemma(token) + "_" + token.predLemma);
-            fs.add("BIGRAM-LEMMA-R=" + token.predLemma + "_" + nextLemma(token));
+            BIGRAM_LEMMA_L.add(fs, prevLemma(token), token.predLemma);
+            BIGRAM_LEMMA_R.add(fs, token.predLemma, nextLemma(token));
 
             // POS BIGRAM
-            fs.add("BIGRAM-POS-L=" + prevPosTag(token) + "_" + token.predPosTag);
-            fs.add("BIGRAM-POS-R=" + token.predPosTag + "_" + nextPosTag(token));
+            BIGRAM_POS_L.add(fs, prevPosTag(token), token.predPosTag);
+            BIGRAM_POS_R.add(fs, token.predPosTag, nextPosTag(token));
 
             // WINDOW
-            for (int i = 1; i <= 5; i++) {
+            for (int i = 1; i <= WINDOW_SIZE; i++) {
                 Token prevToken = token.sentence.document.getPrevToken(token, i);
-                String modifierPrev = sameSentenceModifier(token, prevToken);
+                int modifierPrev = sameSentenceModifierIndex(token, prevToken);
 
 
                 if (prevToken == null) {
-                    fs.add("PREV-WORD-" + modifierPrev + "-" + i + "=NONE");
-                    fs.add("PREV-LEMMA-"+ modifierPrev + "-" + i + "=NONE");
-                    fs.add("PREV-POS-"+ modifierPrev + "-" + i + "=NONE");
+                    PREV_WORD[modifierPrev][i].add(fs, "NONE");
+                    PREV_LEMMA[modifierPrev][i].add(fs, "NONE");
+                    PREV_POS[modifierPrev][i].add(fs, "NONE");
                 } else {
-                    fs.add("PREV-WORD-"+ modifierPrev + "-" + i + "=" + prevToken.predText);
-                    fs.add("PREV-LEMMA-"+ modifierPrev + "-" + i + "=" + prevToken.predLemma);
-                    fs.add("PREV-POS-"+ modifierPrev + "-" + i + "=" + prevToken.predPosTag);
+                    PREV_WORD[modifierPrev][i].add(fs, prevToken.predText);
+                    PREV_LEMMA[modifierPrev][i].add(fs, prevToken.predLemma);
+                    PREV_POS[modifierPrev][i].add(fs, prevToken.predPosTag);
                 }
 
                 Token nextToken = token.sentence.document.getNextToken(token, i);
-                String modifierNext = sameSentenceModifier(token, nextToken);
+                int modifierNext = sameSentenceModifierIndex(token, nextToken);
 
                 if (nextToken == null) {
-                    fs.add("NEXT-WORD+" + modifierNext + "-"  + i + "=NONE");
-                    fs.add("NEXT-LEMMA+" + modifierNext + "-"   + i + "=NONE");
-                    fs.add("NEXT-POS+" + modifierNext + "-"   + i + "=NONE");
+                    NEXT_WORD[modifierNext][i].add(fs, "NONE");
+                    NEXT_LEMMA[modifierNext][i].add(fs, "NONE");
+                    NEXT_POS[modifierNext][i].add(fs, "NONE");
                 } else {
-                    fs.add("NEXT-WORD+" + modifierNext + "-"   + i + "=" + nextToken.predText);
-                    fs.add("NEXT-LEMMA+" + modifierNext + "-"   + i + "=" + nextToken.predLemma);
-                    fs.add("NEXT-POS+" + modifierNext + "-"   + i + "=" + nextToken.predPosTag);
+                    NEXT_WORD[modifierNext][i].add(fs, nextToken.predText);
+                    NEXT_LEMMA[modifierNext][i].add(fs, nextToken.predLemma);
+                    NEXT_POS[modifierNext][i].add(fs, nextToken.predPosTag);
                 }
             }
         }
 
             // SHAPE
-            fs.add("SHAPE=" + shape(token.predText));
+            SHAPE.add(fs, shape(token.predText));
 
             // CAPITALIZATION
             if (!token.predTextIsLower()) fs.add("CAPITALIZED");
 
             // NUMBERS AND PUNCTUATION
             if (containsDigit(token.predText)) fs.add("NUMERIC");
-            if (token.predText.matches("\\{Punct}")) fs.add("IS-PUNCTUATION");
+            if (PUNCTUATION.matcher(token.predText).matches()) fs.add("IS-PUNCTUATION");
 
             // POSITION IN DOCUMENT
             if (token.predPosition == token.sentence.document.tokenList.size() - 1)
@@ -242,9 +293,6 @@ public class BoundaryFeatures {
             // CASE OF IMMEDIATE NEIGHBORS
             if (token.previousToken != null && token.previousToken.predTextIsLower()) fs.add("PREV-IS-LOWER");
             if (token.nextToken != null && token.nextToken.predTextIsLower()) fs.add("NEXT-IS-LOWER");
-
-
-        return fs;
     }
 
 
@@ -255,29 +303,13 @@ public class BoundaryFeatures {
     public static void additionalBoundaryFeatures(Document document) {
         // features that are (roughly) about single tokens
         for (Token token : document.getTokenList()) {
-            List<String> tokenFeatures = tokenFeatures(token, true);
-            token.boundaryFeatureSet.addAll(tokenFeatures);
-
+            tokenFeatures(token, true, token.boundaryFeatureSet);
         }
 
         // features on the sentence or document level
         addSentenceAndDocumentFeatures(document);
     }
 
-    /**
-     * Checks whether a path contains a given relation
-     * @param path
-     * @param relation
-     * @return
-     */
-    public static boolean pathContainsRelation(GraphPath<IndexedWord, ParcUtils.IndexedEdge> path, String relation) {
-        for (ParcUtils.IndexedEdge edge : path.getEdgeList())
-            if (edge.rel.getShortName().equals(relation))
-                return true;
-
-        return false;
-    }
-
     /**
      * Performs additional conjunctions with pre-existing ones.
      * This is needed after cues have been detected.
@@ -285,6 +317,11 @@ public class BoundaryFeatures {
      * @param feature
      */
     public static void addConjunction(Token token, String feature) {
+        if (token.boundaryFeatureSet instanceof FeatureIntSet) {
+            addConjunction((FeatureIntSet) token.boundaryFeatureSet, conjunctionList(token), feature);
+            return;
+        }
+
         List<String> newFeatures = new ArrayList<>();
         Iterator<String> iter = token.boundaryFeatureSet.iterator();
 
@@ -297,6 +334,155 @@ public class BoundaryFeatures {
         token.boundaryFeatureSet.addAll(newFeatures);
     }
 
+    /**
+     * Indices of the conjunction features (see FeatureIndexMap.isConjunction) of a token, so that
+     * repeated conjunctions only need to go through these instead of all features of the token
+     */
+    static class ConjunctionList {
+        int[] indices = new int[8];
+        int size = 0;
+
+        void add(int index) {
+            if (size == indices.length) indices = Arrays.copyOf(indices, 2 * size);
+            indices[size++] = index;
+        }
+    }
+
+    /**
+     * Collect the conjunction features of a token with an int feature set
+     * @param token
+     * @return
+     */
+    static ConjunctionList conjunctionList(Token token) {
+        ConjunctionList list = new ConjunctionList();
+        FeatureIntSet fs = (FeatureIntSet) token.boundaryFeatureSet;
+        FeatureIndexMap featureIndexMap = FeatureIntSet.getFeatureIndexMap();
+
+        for (int i = 0; i < fs.size(); i++) {
+            int index = fs.indexAt(i);
+            if (featureIndexMap.isConjunction(index)) list.add(index);
+        }
+
+        return list;
+    }
+
+    /**
+     * Conjoin all conjunction features of a token with a feature. The new features are conjunction features
+     * themselves and are added to the list.
+     * @param fs
+     * @param list conjunction features of the token
+     * @param feature
+     */
+    static void addConjunction(FeatureIntSet fs, ConjunctionList list, String feature) {
+        ConjunctionCache cache = conjunctionCache();
+        long featureId = cache.featureId(feature);
+
+        // collect first, so that the set stays sealed while checking for existing features
+        int numOld = list.size;
+        int[] newIndices = new int[numOld];
+        int numNew = 0;
+        for (int i = 0; i < numOld; i++) {
+            int index = cache.conjoin(list.indices[i], feature, featureId);
+            if (index != FeatureIndexMap.ABSENT && !fs.containsIndex(index)) newIndices[numNew++] = index;
+        }
+
+        for (int i = 0; i < numNew; i++) {
+            fs.addIndex(newIndices[i]);
+            list.add(newIndices[i]);
+        }
+    }
+
+    /**
+     * Indices of conjoined features by (conjunction feature index, feature) in one feature index map
+     */
+    static class ConjunctionCache {
+        final FeatureIndexMap featureIndexMap;
+        final ConcurrentHashMap<Long, Integer> conjoinedIndices = new ConcurrentHashMap<>();
+
+        // ids of the features that are conjoined (a handful of cue features)
+        final ConcurrentHashMap<String, Integer> featureIds = new ConcurrentHashMap<>();
+
+        ConjunctionCache(FeatureIndexMap featureIndexMap) {
+            this.featureIndexMap = featureIndexMap;
+        }
+
+        /**
+         * Id of a feature that conjunction features are conjoined with
+         * @param feature
+         * @return
+         */
+        long featureId(String feature) {
+            Integer id = featureIds.get(feature);
+            if (id != null) return id;
+
+            synchronized (featureIds) {
+                id = featureIds.get(feature);
+                if (id == null) {
+                    id = featureIds.size();
+                    featureIds.put(feature, id);
+                }
+                return id;
+            }
+        }
+
+        /**
+         * Index of "BOUND:CUE:" + conjunction + ":" + feature
+         * @param conjunctionIndex
+         * @param feature
+         * @param featureId id of the feature (see featureId())
+         * @return
+         */
+        int conjoin(int conjunctionIndex, String feature, long featureId) {
+            long key = ((long) conjunctionIndex << 32) | featureId;
+            Integer index = conjoinedIndices.get(key);
+            if (index != null) return index;
+
+            int newIndex = featureIndexMap.getConjunctionIndex("BOUND:CUE:" + featureIndexMap.getFeature(conjunctionIndex) + ":" + feature);
+            conjoinedIndices.put(key, newIndex);
+            return newIndex;
+        }
+    }
+
+    static volatile ConjunctionCache conjunctionCache;
+
+    /**
+     * Conjunction cache for the current feature index map, which may have been replaced since the last call
+     * @return
+     */
+    static ConjunctionCache conjunctionCache() {
+        FeatureIndexMap featureIndexMap = FeatureIntSet.getFeatureIndexMap();
+        ConjunctionCache cache = conjunctionCache;
+
+        if (cache == null || cache.featureIndexMap != featureIndexMap) {
+            cache = new ConjunctionCache(featureIndexMap);
+            conjunctionCache = cache;
+        }
+
+        return cache;
+    }
+
+    /**
+     * Conjoin the conjunction features of a token with a feature, using the conjunction lists of the document
+     * (created on first use)
+     * @param token
+     * @param feature
+     * @param conjunctionLists conjunction lists of the document by token position
+     */
+    static void addConjunction(Token token, String feature, ConjunctionList[] conjunctionLists) {
+        if (!(token.boundaryFeatureSet instanceof FeatureIntSet)) {
+            addConjunction(token, feature);
+            return;
+        }
+
+        ConjunctionList list = conjunctionLists[token.predPosition];
+        if (list == null) {
+            list = conjunctionList(token);
+            conjunctionLists[token.predPosition] = list;
+        }
+
+        addConjunction((FeatureIntSet) token.boundaryFeatureSet, list, feature);
+    }
+
     /**
      * Add cue-dependent features to all documents
      * @param documents
@@ -312,8 +498,18 @@ public class BoundaryFeatures {
      * @return
      */
     public static String sameSentenceModifier(Token t1, Token t2) {
-        if (t1 != null && t2 != null && t1.sentence == t2.sentence) return "SAME-SENTENCE";
-        else return "DIFFERENT-SENTENCE";
+        return SENTENCE_MODIFIERS[sameSentenceModifierIndex(t1, t2)];
+    }
+
+    /**
+     * Index of the modifier in SENTENCE_MODIFIERS: 0 if two tokens are in the same sentence, 1 otherwise
+     * @param t1
+     * @param t2
+     * @return
+     */
+    static int sameSentenceModifierIndex(Token t1, Token t2) {
+        if (t1 != null && t2 != null && t1.sentence == t2.sentence) return 0;
+        else return 1;
     }
 
     /**
@@ -322,16 +518,27 @@ public class BoundaryFeatures {
      * @param endToken
      * @return
      */
-    public static GraphPath pathFromTo(Token startToken, Token endToken) {
+    public static DependencyPaths.Path pathFromTo(Token startToken, Token endToken) {
         Sentence sentence = startToken.sentence;
         if (sentence != endToken.sentence) return null;
 
-        Graph graph = sentence.fw.getGraph();
+        return sentence.getDependencyPaths().path(startToken.dependencyBackpointer, endToken.dependencyBackpointer);
+    }
 
-        if (graph.containsVertex(startToken.dependencyBackpointer) && graph.containsVertex(endToken.dependencyBackpointer)) {
-            return sentence.fw.getShortestPath(startToken.dependencyBackpointer, endToken.dependencyBackpointer);
-        } else {
-            return null;
+    /**
+     * Give tokens that share their boundary feature set with copies of their document (see CorpusSnapshot) a copy of
+     * their own, as cue features are added to all tokens
+     * @param document
+     */
+    public static void unshareBoundaryFeatures(Document document) {
+        for (Token token : document.tokenList) {
+            if (!token.boundaryFeatureSetShared) continue;
+
+            FeatureSet fs = token.boundaryFeatureSet;
+            if (fs instanceof FeatureIntSet) token.boundaryFeatureSet = new FeatureIntSet((FeatureIntSet) fs);
+            else if (fs instanceof FeatureStringSet) token.boundaryFeatureSet = new FeatureStringSet((FeatureStringSet) fs);
+            else throw new Error("Unknown feature set type " + fs.getClass());
+            token.boundaryFeatureSetShared = false;
         }
     }
 
@@ -340,6 +547,11 @@ public class BoundaryFeatures {
      * @param document
      */
     public static void additionalBoundaryFeaturesFromCue(Document document) {
+        unshareBoundaryFeatures(document);
+
+        // span features include token features, which are about to change
+        SpanFeatures.invalidateCache(document);
+
         // keep note of whether a token depends on a cue
         boolean[] isCueDep = new boolean[document.tokenList.size()];
         boolean[] singleEdgeL = new boolean[document.tokenList.size()];
@@ -347,6 +559,9 @@ public class BoundaryFeatures {
         boolean[] pathL = new boolean[document.tokenList.size()];
         boolean[] pathR = new boolean[document.tokenList.size()];
 
+        // conjunction features of each token, collected once per token and extended by each conjunction
+        ConjunctionList[] conjunctionLists = new ConjunctionList[document.tokenList.size()];
+
 
         for (Token potentialCue : document.tokenList) {
             if (!potentialCue.isPredictedCue) continue;
@@ -361,8 +576,8 @@ public class BoundaryFeatures {
                     FeatureSet fs = adjacentToken.boundaryFeatureSet;
                     String modifier = sameSentenceModifier(potentialCue, adjacentToken);
 
-                    fs.add("CUE-COMES-RIGHT-WIN-" + modifier);
-                    fs.add("CUE-COMES-RIGHT-WIN-" + modifier + "-" + i);
+                    CUE_COMES_RIGHT.add(fs, modifier);
+                    CUE_COMES_RIGHT_AT.add(fs, modifier, i);
                 }
 
                 // RIGHT
@@ -373,8 +588,8 @@ public class BoundaryFeatures {
 
                     String modifier = sameSentenceModifier(potentialCue, adjacentToken);
 
-                    fs.add("CUE-COMES-LEFT-WIN-" + modifier);
-                    fs.add("CUE-COMES-LEFT-WIN-" + modifier + "-" + i);
+                    CUE_COMES_LEFT.add(fs, modifier);
+                    CUE_COMES_LEFT_AT.add(fs, modifier, i);
                 }
             }
 
@@ -382,14 +597,12 @@ public class BoundaryFeatures {
             for (int i = 1; i < 50; i++) {
                 Token prevToken = potentialCue.sentence.document.getNextToken(potentialCue, i);
                 if (prevToken != null) {
-                    List<String> featuresPrev = Binning.distanceBinsAll(i, "DISTANCE-TO-NEXT-CUE-");
-                    prevToken.boundaryFeatureSet.addAll(featuresPrev);
+                    Binning.distanceBinsAll(i, DISTANCE_TO_NEXT_CUE, prevToken.boundaryFeatureSet);
                 }
 
                 Token nextToken = potentialCue.sentence.document.getNextToken(potentialCue, i);
                 if (nextToken != null) {
-                    List<String> featuresNext = Binning.distanceBinsAll(i, "DISTANCE-TO-PREV-CUE-");
-                    nextToken.boundaryFeatureSet.addAll(featuresNext);
+                    Binning.distanceBinsAll(i, DISTANCE_TO_PREV_CUE, nextToken.boundaryFeatureSet);
                 }
             }
 
@@ -398,17 +611,17 @@ public class BoundaryFeatures {
             for (Token token : sentence.tokenList) {
                 if (token == potentialCue) continue;
                 FeatureSet fs = token.boundaryFeatureSet;
-                Graph graph = sentence.fw.getGraph();
+                DependencyPaths paths = sentence.getDependencyPaths();
 
                 // SINGLE EDGE
-                if (graph.containsEdge(potentialCue.dependencyBackpointer, token.dependencyBackpointer)) {
+                if (paths.hasEdge(potentialCue.dependencyBackpointer, token.dependencyBackpointer)) {
                     fs.add("BOUND:CUE:SINGLE-EDGE->");
                     singleEdgeR[token.predPosition] = true;
                 }
                 else {
                     fs.add("BOUND:CUE:SINGLE-EDGE-NOT-LOC->");
                 }
-                if (graph.containsEdge(token.dependencyBackpointer, potentialCue.dependencyBackpointer)) {
+                if (paths.hasEdge(token.dependencyBackpointer, potentialCue.dependencyBackpointer)) {
                     fs.add("BOUND:CUE:SINGLE-EDGE<-");
                     singleEdgeL[token.predPosition] = true;
                 }
@@ -417,13 +630,14 @@ public class BoundaryFeatures {
                 }
 
                 // PATHS
-                if (graph.containsVertex(token.dependencyBackpointer) && graph.containsVertex(potentialCue.dependencyBackpointer)) {
+                // both searches start at the cue, so they are shared by all tokens of the sentence
+                if (paths.contains(token.dependencyBackpointer) && paths.contains(potentialCue.dependencyBackpointer)) {
 
-                    GraphPath spRight = pathFromTo(potentialCue, token);
+                    DependencyPaths.Path spRight = paths.pathFrom(potentialCue.dependencyBackpointer, token.dependencyBackpointer);
                     if (spRight != null) {
                         fs.add("BOUND:CUE:PATH->");
-                        fs.add("BOUND:CUE:PATH->,LEN=" + spRight.getEdgeList().size());
-                        if (pathContainsRelation(spRight, "ccomp")) {
+                        PATH_RIGHT_LENGTH.add(fs, spRight.length());
+                        if (spRight.containsRelation("ccomp")) {
                             fs.add("BOUND:CUE:PATH-HAS-CCOMP->");
                         }
                         isCueDep[token.predPosition] = true;
@@ -432,11 +646,11 @@ public class BoundaryFeatures {
                         fs.add("BOUND:CUE:PATH-NOT-LOC->");
                     }
 
-                    GraphPath spLeft = pathFromTo(token, potentialCue);
+                    DependencyPaths.Path spLeft = paths.pathTo(token.dependencyBackpointer, potentialCue.dependencyBackpointer);
                     if (spLeft != null) {
                         fs.add("BOUND:CUE:PATH<-");
-                        fs.add("BOUND:CUE:PATH<-,LEN=" + spLeft.getEdgeList().size());
-                        if (pathContainsRelation(spLeft, "ccomp")) {
+                        PATH_LEFT_LENGTH.add(fs, spLeft.length());
+                        if (spLeft.containsRelation("ccomp")) {
                             fs.add("BOUND:CUE:PATH-HAS-CCOMP<-");
                         }
                         pathL[token.predPosition] = true;
@@ -448,7 +662,7 @@ public class BoundaryFeatures {
 
                 // SENTENCE: HAS CUE
                 token.boundaryFeatureSet.add("SENT:HASCUE");
-                addConjunction(token, "SENT-HASCUE");
+                addConjunction(token, "SENT-HASCUE", conjunctionLists);
             }
         }
 
@@ -457,10 +671,10 @@ public class BoundaryFeatures {
             FeatureSet fs = token.boundaryFeatureSet;
             if (isCueDep[token.predPosition]) {
                 fs.add("BOUND:CUE:IS-CUE-DEP");
-                addConjunction(token, "CUE-DEP");
+                addConjunction(token, "CUE-DEP", conjunctionLists);
             } else {
                 fs.add("BOUND:CUE:IS-CUE-DEP-NOT");
-                addConjunction(token, "CUE-DEP-NOT");
+                addConjunction(token, "CUE-DEP-NOT", conjunctionLists);
             }
         }
     }
@@ -496,8 +710,8 @@ public class BoundaryFeatures {
             if (documentHasCue) fs.add("DOCUMENT-HAS-CUE");
 
             // SENTENCE BEGIN/END DISTANCE
-            fs.addAll(Binning.distanceBins1to100(token.predSentencePosition, "DISTANCE-TO-SENTENCE-BEGIN"));
-            fs.addAll(Binning.distanceBins1to100(token.sentence.tokenList.size() - token.predSentencePosition - 1, "DISTANCE-TO-SENTENCE-END"));
+            Binning.distanceBins1to100(token.predSentencePosition, DISTANCE_TO_SENTENCE_BEGIN, fs);
+            Binning.distanceBins1to100(token.sentence.tokenList.size() - token.predSentencePosition - 1, DISTANCE_TO_SENTENCE_END, fs);
 
             // SENTENCE BEGIN
             int sentenceLength = token.sentence.tokenList.size();
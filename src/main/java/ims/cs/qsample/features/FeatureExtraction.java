@@ -92,8 +92,8 @@ public class FeatureExtraction {
 	public void extractSentenceFeatures (Document document) {
 		for (Sentence sentence : document.sentenceList) {
 			SentenceIndicatorFeatures.extract(sentence);
-			if (StaticConfig.dependencyFeatures) SentenceDependencyFeatures.extract(sentence);
-			if (StaticConfig.constituentFeatures) SentenceConstituentFeatures.extract(sentence);
+			if (StaticConfig.current().dependencyFeatures) SentenceDependencyFeatures.extract(sentence);
+			if (StaticConfig.current().constituentFeatures) SentenceConstituentFeatures.extract(sentence);
 			SentenceFeaturesDerivedFromListCue.extract(sentence);
 		}
 	}
@@ -119,11 +119,11 @@ public class FeatureExtraction {
 		extractSentenceFeatures(document);
 
 		// quotation mark features
-		if (StaticConfig.documentQuotationFeature)
+		if (StaticConfig.current().documentQuotationFeature)
 			DocumentQuotationFeature.extract(document);
 
 		// offset conjunction
-		if (StaticConfig.documentOffsetConjunction)
+		if (StaticConfig.current().documentOffsetConjunction)
 			documentOffsetConjunction.extract(document);
 
 		// additional features
@@ -17,24 +17,63 @@
 
 package ims.cs.qsample.features;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import ims.cs.util.StaticConfig;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Automatically counting string to int mapping for feature sets.
+ * The map is safe for concurrent use, as features may be extracted by several threads at once. Lookups of known
+ * features and reverse lookups do not lock. New features are assigned the next dense index under a lock, which is
+ * only taken for features that have not been seen yet.
  * Created by scheibcn on 6/1/16.
  */
 public class FeatureIndexMap {
-    Map<String, Integer> f2i;
-    List<String> i2f;
+    // index of features that are unknown to a frozen dictionary
+    public static final int ABSENT = Integer.MIN_VALUE;
+
+    // reverse lookup table: fixed-size chunks, so that growing never moves entries that readers may be accessing
+    static final int CHUNK_BITS = 12;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    ConcurrentHashMap<String, Integer> f2i;
+    volatile String[][] i2f;
 
-    int maxIndex = -1;
+    // template features (see FeatureTemplate): ids of their string values, and their indices by template key, so that
+    // their names are built only once; both belong to this dictionary and are released with it
+    ConcurrentHashMap<String, Integer> templateValues;
+    ConcurrentHashMap<Long, Integer> templateIndices;
+
+    // number of assigned indices; written after the reverse entry, so that readers never see an index without it
+    volatile int numFeatures = 0;
 
     FeatureIndexMap () {
-        f2i = new HashMap<>();
-        i2f = new ArrayList<>();
+        this(true);
+    }
+
+    /**
+     * Constructor for subclasses that do not keep a dictionary
+     * @param allocateMaps whether to set up the string/index maps
+     */
+    protected FeatureIndexMap (boolean allocateMaps) {
+        if (allocateMaps) {
+            f2i = new ConcurrentHashMap<>();
+            i2f = new String[1][CHUNK_SIZE];
+            templateValues = new ConcurrentHashMap<>();
+            templateIndices = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * Set up the map selected by the configuration: a feature dictionary by default, or a hashed map if
+     * StaticConfig.featureHashBits is set
+     * @return
+     */
+    public static FeatureIndexMap fromConfig() {
+        if (StaticConfig.current().featureHashBits > 0) return new HashedFeatureIndexMap(StaticConfig.current().featureHashBits);
+        else return new FeatureIndexMap();
     }
 
     /**
@@ -43,14 +82,125 @@ public class FeatureIndexMap {
      * @return
      */
     public int getIndex(String feature) {
-        if (f2i.containsKey(feature)) {
-            return f2i.get(feature);
-        } else {
-            maxIndex++;
-            f2i.put(feature, maxIndex);
-            i2f.add(feature);
-            return maxIndex;
+        Integer index = f2i.get(feature);
+        if (index != null) return index;
+        else return addFeature(feature);
+    }
+
+    /**
+     * Translate a feature of a template to its index (see FeatureTemplate.add for the values). The first time a key is
+     * seen, it is resolved through its feature string, so that template features and string features share one index
+     * space.
+     * @param template
+     * @param string1
+     * @param number1
+     * @param string2
+     * @param number2
+     * @return
+     */
+    public int getIndex(FeatureTemplate template, String string1, int number1, String string2, int number2) {
+        long value1 = valueId(template.kind1, string1, number1);
+        long value2 = template.kind2 == null ? 0 : valueId(template.kind2, string2, number2);
+
+        // values that do not fit into a key are resolved through the name every time
+        if (value1 < 0 || value2 < 0) return getIndex(template.name(string1, number1, string2, number2));
+
+        long key = template.pack(value1, value2);
+        Integer index = templateIndices.get(key);
+        if (index != null) return index;
+
+        int newIndex = getIndex(template.name(string1, number1, string2, number2));
+        templateIndices.put(key, newIndex);
+        return newIndex;
+    }
+
+    /**
+     * Id of a template value in a key: numbers are stored as they are, strings get the next id when they are first
+     * seen
+     * @param kind
+     * @param string
+     * @param number
+     * @return the id, or -1 if the value does not fit into a key
+     */
+    long valueId(FeatureTemplate.Kind kind, String string, int number) {
+        if (kind == FeatureTemplate.Kind.INT) {
+            if (number < 0 || number > FeatureTemplate.VALUE_MASK) return -1;
+            else return number;
         }
+
+        Integer id = templateValues.get(string);
+        if (id != null) return id;
+        else return addTemplateValue(string);
+    }
+
+    /**
+     * Assign the next id to a template value, unless another thread did so in the meantime
+     * @param value
+     * @return the id, or -1 if all ids are taken
+     */
+    synchronized int addTemplateValue(String value) {
+        Integer id = templateValues.get(value);
+        if (id != null) return id;
+
+        int newId = templateValues.size();
+        if (newId > FeatureTemplate.VALUE_MASK) return -1;
+
+        templateValues.put(value, newId);
+        return newId;
+    }
+
+    /**
+     * Assign the next index to a feature, unless another thread did so in the meantime
+     * @param feature
+     * @return
+     */
+    synchronized int addFeature(String feature) {
+        Integer index = f2i.get(feature);
+        if (index != null) return index;
+
+        int newIndex = numFeatures;
+        int chunk = newIndex >>> CHUNK_BITS;
+        String[][] chunks = i2f;
+        if (chunk == chunks.length) {
+            // only the outer array is copied; chunks are shared with the previous table
+            chunks = Arrays.copyOf(chunks, 2 * chunks.length);
+            for (int i = chunk; i < chunks.length; i++) chunks[i] = new String[CHUNK_SIZE];
+            i2f = chunks;
+        }
+
+        chunks[chunk][newIndex & CHUNK_MASK] = feature;
+        numFeatures = newIndex + 1;
+        f2i.put(feature, newIndex);
+        return newIndex;
+    }
+
+    /**
+     * Translate a conjunction feature to its index. Conjunction features are the features that other features are
+     * conjoined with after cue detection (see BoundaryFeatures.addConjunction); in a dictionary, they are recognized
+     * by their name, so this is the same as getIndex().
+     * @param feature
+     * @return
+     */
+    public int getConjunctionIndex(String feature) {
+        return getIndex(feature);
+    }
+
+    /**
+     * Whether a feature index belongs to a conjunction feature
+     * @param index
+     * @return
+     */
+    public boolean isConjunction(int index) {
+        return isConjunctionName(getFeature(index));
+    }
+
+    /**
+     * Whether a feature name marks a conjunction feature
+     * @param feature
+     * @return
+     */
+    static boolean isConjunctionName(String feature) {
+        return feature.contains("CONJUNCTION");
     }
 
     /**
@@ -59,10 +209,50 @@ public class FeatureIndexMap {
      * @return
      */
     public String getFeature(int index) {
-        if (index <= maxIndex) {
-            return i2f.get(index);
+        if (index >= 0 && index < numFeatures) {
+            return i2f[index >>> CHUNK_BITS][index & CHUNK_MASK];
         } else {
             throw new Error("Lookup error");
         }
     }
+
+    /**
+     * Number of features known to the map. Indices are always in [0, size()).
+     * @return
+     */
+    public int size() {
+        return numFeatures;
+    }
+
+    /**
+     * Number of hash bits if features are hashed, 0 if the map keeps a dictionary
+     * @return
+     */
+    public int getHashBits() {
+        return 0;
+    }
+
+    /**
+     * Whether unknown features resolve to ABSENT instead of being added
+     * @return
+     */
+    public boolean isFrozen() {
+        return false;
+    }
+
+    /**
+     * Read-only version of this map for prediction: known features keep their indices, unknown features are absent
+     * @return
+     */
+    public FeatureIndexMap freeze() {
+        return new FrozenFeatureIndexMap(this);
+    }
+
+    /**
+     * Map that adds unknown features again, with the same indices as this one
+     * @return
+     */
+    public FeatureIndexMap thaw() {
+        return this;
+    }
 }
@@ -17,29 +17,128 @@
 
 package ims.cs.qsample.features;
 
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Set;
+import java.util.NoSuchElementException;
 
 /**
  * A feature set storing features as integers.
+ * Indices are appended to a growable int array, which is sorted, deduplicated and trimmed when the set is sealed.
+ * Sealing happens automatically before the set is read, so that adding after reading is fine (e.g., features about
+ * cues are added after prediction), but cheapest when all features are added first.
+ * Consumers that work with indices should iterate with size() and indexAt() instead of mapping back to strings.
  * Created by scheibcn on 6/1/16.
  */
 public class FeatureIntSet implements FeatureSet {
 
+    static final int INITIAL_CAPACITY = 8;
+    static final int[] EMPTY = new int[0];
+
     // internal mapping from feature strings to integers
-    static FeatureIndexMap featureIndexMap = new FeatureIndexMap(); // a static map across all feature sets
-    Set<Integer> featureIndices =  new HashSet<>();
+    static FeatureIndexMap featureIndexMap = FeatureIndexMap.fromConfig(); // a static map across all feature sets
+
+    int[] featureIndices = EMPTY;
+    int numIndices = 0;
+
+    // whether featureIndices is sorted and free of duplicates; sets may be read by several threads at once
+    volatile boolean sealed = true;
+
+    public FeatureIntSet() { }
+
+    /**
+     * Copy the indices of another set
+     * @param other
+     */
+    public FeatureIntSet(FeatureIntSet other) {
+        other.seal();
+        featureIndices = Arrays.copyOf(other.featureIndices, other.numIndices);
+        numIndices = other.numIndices;
+    }
+
+    /**
+     * Returns the map that translates between feature strings and indices for all int feature sets
+     * @return
+     */
+    public static FeatureIndexMap getFeatureIndexMap() {
+        return featureIndexMap;
+    }
+
+    /**
+     * Replace the map by a new one as selected by the current configuration (e.g., after loading a configuration
+     * file that enables feature hashing). Feature sets created before become invalid.
+     */
+    public static void resetFeatureIndexMap() {
+        featureIndexMap = FeatureIndexMap.fromConfig();
+    }
+
+    /**
+     * Freeze the map for prediction: features not seen so far are no longer added to the map or to feature sets
+     */
+    public static void freezeFeatureIndexMap() {
+        featureIndexMap = featureIndexMap.freeze();
+    }
+
+    /**
+     * Let the map add unknown features again, keeping all indices
+     */
+    public static void thawFeatureIndexMap() {
+        featureIndexMap = featureIndexMap.thaw();
+    }
+
+    /**
+     * Sort and deduplicate the indices and release unused capacity. Does nothing if the set is sealed already.
+     */
+    public void seal() {
+        if (sealed) return;
+
+        synchronized (this) {
+            if (sealed) return;
+
+            Arrays.sort(featureIndices, 0, numIndices);
+
+            int distinct = 0;
+            for (int i = 0; i < numIndices; i++)
+                if (distinct == 0 || featureIndices[i] != featureIndices[distinct - 1])
+                    featureIndices[distinct++] = featureIndices[i];
+
+            numIndices = distinct;
+            if (featureIndices.length != numIndices) featureIndices = Arrays.copyOf(featureIndices, numIndices);
+            sealed = true;
+        }
+    }
+
+    /**
+     * Feature index at a position of the sorted indices, for 0 <= position < size()
+     * @param position
+     * @return
+     */
+    public int indexAt(int position) {
+        seal();
+        return featureIndices[position];
+    }
+
+    /**
+     * Add a feature index
+     * @param index
+     */
+    public void addIndex(int index) {
+        if (numIndices == featureIndices.length)
+            featureIndices = Arrays.copyOf(featureIndices, Math.max(INITIAL_CAPACITY, 2 * numIndices));
+
+        featureIndices[numIndices++] = index;
+        sealed = false;
+    }
 
     @Override
     public int size() {
-        return featureIndices.size();
+        seal();
+        return numIndices;
     }
 
     @Override
     public boolean isEmpty() {
-        return featureIndices.isEmpty();
+        return numIndices == 0;
     }
 
 
@@ -47,18 +146,37 @@ public class FeatureIntSet implements FeatureSet {
     @Override
     public boolean add(String s) {
         int index = featureIndexMap.getIndex(s);
-        featureIndices.add(index);
+
+        // features unknown to a frozen map cannot have a weight
+        if (index == FeatureIndexMap.ABSENT) return false;
+
+        addIndex(index);
         return true;
     }
 
+    /**
+     * Add a feature of a template (see FeatureTemplate.add) without building its string
+     * @param template
+     * @param string1
+     * @param number1
+     * @param string2
+     * @param number2
+     */
+    void addTemplateFeature(FeatureTemplate template, String string1, int number1, String string2, int number2) {
+        int index = featureIndexMap.getIndex(template, string1, number1, string2, number2);
+        if (index != FeatureIndexMap.ABSENT) addIndex(index);
+    }
+
     @Override
     public Iterator<String> iterator() { return new StringIterator(); }
 
     @Override
     public boolean addAll(Collection<? extends String> c) {
         if (c instanceof FeatureIntSet) {
-            // just call addAll on the index sets
-            featureIndices.addAll(((FeatureIntSet) c).featureIndices);
+            // just copy the indices
+            FeatureIntSet other = (FeatureIntSet) c;
+            int otherSize = other.size();
+            for (int i = 0; i < otherSize; i++) addIndex(other.featureIndices[i]);
         } else if (c instanceof Collection) {
             for (String s : c) this.add(s);
         } else {
@@ -71,12 +189,26 @@ public class FeatureIntSet implements FeatureSet {
 
     @Override
     public boolean contains(Object o) {
-        int targetIndex = featureIndexMap.getIndex((String) o);
-        return featureIndices.contains(targetIndex);
+        return containsIndex(featureIndexMap.getIndex((String) o));
+    }
+
+    /**
+     * Whether the set contains a feature index. ABSENT is never contained.
+     * @param index
+     * @return
+     */
+    public boolean containsIndex(int index) {
+        if (index == FeatureIndexMap.ABSENT) return false;
+        seal();
+        return Arrays.binarySearch(featureIndices, 0, numIndices, index) >= 0;
     }
 
     @Override
-    public void clear() { featureIndices.clear(); }
+    public void clear() {
+        featureIndices = EMPTY;
+        numIndices = 0;
+        sealed = true;
+    }
 
 
     /**
@@ -84,24 +216,36 @@ public class FeatureIntSet implements FeatureSet {
      */
     class StringIterator implements Iterator<String> {
 
-        Iterator<Integer> featureIndexIter;
+        int position = 0;
+
+        // whether the feature returned last may be removed
+        boolean canRemove = false;
 
-        StringIterator () { featureIndexIter = featureIndices.iterator(); }
+        StringIterator () { seal(); }
 
         @Override
         public boolean hasNext() {
-            return featureIndexIter.hasNext();
+            return position < numIndices;
         }
 
         @Override
         public String next() {
-            int index = featureIndexIter.next();
-            return featureIndexMap.getFeature(index);
+            if (!hasNext()) throw new NoSuchElementException();
+            canRemove = true;
+            return featureIndexMap.getFeature(featureIndices[position++]);
         }
 
+        /**
+         * Remove the feature returned last by shifting the following indices down, which keeps them sorted
+         */
         @Override
         public void remove() {
-            featureIndexIter.remove();
+            if (!canRemove) throw new IllegalStateException();
+
+            System.arraycopy(featureIndices, position, featureIndices, position - 1, numIndices - position);
+            numIndices--;
+            position--;
+            canRemove = false;
         }
     }
 
@@ -0,0 +1,315 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ims.cs.qsample.features;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A compiled feature template, such as "PREV-WORD-SAME-SENTENCE-1=" + word or "BE-CONJUNCTION-POS-POS=" + pos + "_" + pos.
+ * A feature of a template is given by one or two values, strings (words, lemmas, tags) or numbers according to the
+ * kinds of the template. The feature index map resolves it to an index without building the feature string:
+ * a dictionary packs the template id and the ids of the values into a long key (value ids belong to the dictionary,
+ * see FeatureIndexMap.getIndex(FeatureTemplate, ...)), a frozen dictionary probes its table with the string hash of
+ * the name, and a hashed map hashes the name. The name of a feature (prefix + value, or prefix + value + separator +
+ * value) is only built when a dictionary sees a key for the first time.
+ * In string feature sets, features of a template are simply added as strings.
+ */
+public class FeatureTemplate {
+
+    public enum Kind {STRING, INT}
+
+    // key layout: template id (16 bits), first value (24 bits), second value (24 bits)
+    static final int VALUE_BITS = 24;
+    static final int VALUE_MASK = (1 << VALUE_BITS) - 1;
+    static final int MAX_TEMPLATES = 1 << 16;
+
+    // registry of templates by name
+    static final Map<String, FeatureTemplate> templatesByName = new HashMap<>();
+    static int numTemplates = 0;
+
+    final int id;
+    final String prefix;
+    final String separator;
+    final Kind kind1;
+    final Kind kind2;
+
+    // whether the fixed parts of the name mark all features of the template as conjunction features
+    final boolean conjunction;
+
+    FeatureTemplate(int id, String prefix, String separator, Kind kind1, Kind kind2) {
+        this.id = id;
+        this.prefix = prefix;
+        this.separator = separator;
+        this.kind1 = kind1;
+        this.kind2 = kind2;
+        this.conjunction = FeatureIndexMap.isConjunctionName(prefix) ||
+                (separator != null && FeatureIndexMap.isConjunctionName(separator));
+    }
+
+    /**
+     * Template for features prefix + value
+     * @param prefix
+     * @param kind
+     * @return
+     */
+    public static FeatureTemplate unary(String prefix, Kind kind) {
+        return register(prefix, null, kind, null);
+    }
+
+    /**
+     * Template for features prefix + value1 + separator + value2
+     * @param prefix
+     * @param separator
+     * @param kind1
+     * @param kind2
+     * @return
+     */
+    public static FeatureTemplate binary(String prefix, String separator, Kind kind1, Kind kind2) {
+        return register(prefix, separator, kind1, kind2);
+    }
+
+    /**
+     * Look up a template or create it. Templates with the same definition share their id.
+     * @param prefix
+     * @param separator
+     * @param kind1
+     * @param kind2
+     * @return
+     */
+    static synchronized FeatureTemplate register(String prefix, String separator, Kind kind1, Kind kind2) {
+        String name = prefix + "|" + separator + "|" + kind1 + "|" + kind2;
+        FeatureTemplate template = templatesByName.get(name);
+        if (template != null) return template;
+
+        if (numTemplates >= MAX_TEMPLATES) throw new Error("Too many feature templates");
+
+        template = new FeatureTemplate(numTemplates++, prefix, separator, kind1, kind2);
+        templatesByName.put(name, template);
+        return template;
+    }
+
+    /**
+     * Pack the template id and the ids of its values (each in [0, VALUE_MASK]) into a key
+     * @param value1
+     * @param value2
+     * @return
+     */
+    long pack(long value1, long value2) {
+        return ((long) id << (2 * VALUE_BITS)) | (value1 << VALUE_BITS) | value2;
+    }
+
+    public void add(FeatureSet fs, String value) { add(fs, value, 0, null, 0); }
+
+    public void add(FeatureSet fs, int value) { add(fs, null, value, null, 0); }
+
+    public void add(FeatureSet fs, String value1, String value2) { add(fs, value1, 0, value2, 0); }
+
+    public void add(FeatureSet fs, int value1, String value2) { add(fs, null, value1, value2, 0); }
+
+    public void add(FeatureSet fs, String value1, int value2) { add(fs, value1, 0, null, value2); }
+
+    /**
+     * Add a feature of this template to a feature set. Each value is passed as a string or a number, as given by the
+     * kind of its slot; the other one is ignored.
+     * @param fs
+     * @param string1
+     * @param number1
+     * @param string2
+     * @param number2
+     */
+    void add(FeatureSet fs, String string1, int number1, String string2, int number2) {
+        if (fs instanceof FeatureIntSet) ((FeatureIntSet) fs).addTemplateFeature(this, string1, number1, string2, number2);
+        else fs.add(name(string1, number1, string2, number2));
+    }
+
+    /**
+     * Feature string of a feature of this template
+     * @param string1
+     * @param number1
+     * @param string2
+     * @param number2
+     * @return
+     */
+    String name(String string1, int number1, String string2, int number2) {
+        StringBuilder sb = new StringBuilder(prefix);
+        if (kind1 == Kind.INT) sb.append(number1);
+        else sb.append(string1);
+
+        if (kind2 != null) {
+            sb.append(separator);
+            if (kind2 == Kind.INT) sb.append(number2);
+            else sb.append(string2);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Whether a feature of this template is a conjunction feature (see FeatureIndexMap.isConjunction), without building
+     * the string: either the template marks it, or one of its string values does
+     * @param string1
+     * @param string2
+     * @return
+     */
+    boolean isConjunction(String string1, String string2) {
+        if (conjunction) return true;
+
+        if (kind1 == Kind.STRING && FeatureIndexMap.isConjunctionName(string1)) return true;
+        return kind2 == Kind.STRING && FeatureIndexMap.isConjunctionName(string2);
+    }
+
+    /**
+     * String.hashCode() of the feature string, without building the string
+     * @param string1
+     * @param number1
+     * @param string2
+     * @param number2
+     * @return
+     */
+    int nameHashCode(String string1, int number1, String string2, int number2) {
+        int hash = hashCode(0, prefix);
+        hash = kind1 == Kind.INT ? hashCode(hash, number1) : hashCode(hash, string1);
+
+        if (kind2 != null) {
+            hash = hashCode(hash, separator);
+            hash = kind2 == Kind.INT ? hashCode(hash, number2) : hashCode(hash, string2);
+        }
+
+        return hash;
+    }
+
+    /**
+     * Whether a string is the feature string of a feature of this template, without building the latter
+     * @param feature
+     * @param string1
+     * @param number1
+     * @param string2
+     * @param number2
+     * @return
+     */
+    boolean nameEquals(String feature, String string1, int number1, String string2, int number2) {
+        if (!feature.startsWith(prefix)) return false;
+        int position = prefix.length();
+
+        position = kind1 == Kind.INT ? match(feature, position, number1) : match(feature, position, string1);
+        if (position < 0) return false;
+
+        if (kind2 != null) {
+            position = match(feature, position, separator);
+            if (position < 0) return false;
+            position = kind2 == Kind.INT ? match(feature, position, number2) : match(feature, position, string2);
+            if (position < 0) return false;
+        }
+
+        return position == feature.length();
+    }
+
+    /**
+     * FNV-1a hash of the feature string (as computed by HashedFeatureIndexMap.hash), without building the string
+     * @param string1
+     * @param number1
+     * @param string2
+     * @param number2
+     * @return
+     */
+    int nameFnvHash(String string1, int number1, String string2, int number2) {
+        int hash = HashedFeatureIndexMap.fnv(HashedFeatureIndexMap.FNV_OFFSET, prefix);
+        hash = kind1 == Kind.INT ? HashedFeatureIndexMap.fnv(hash, number1) : HashedFeatureIndexMap.fnv(hash, string1);
+
+        if (kind2 != null) {
+            hash = HashedFeatureIndexMap.fnv(hash, separator);
+            hash = kind2 == Kind.INT ? HashedFeatureIndexMap.fnv(hash, number2) : HashedFeatureIndexMap.fnv(hash, string2);
+        }
+
+        return HashedFeatureIndexMap.finish(hash);
+    }
+
+    /**
+     * Continue String.hashCode() with the characters of a string
+     * @param hash
+     * @param s
+     * @return
+     */
+    static int hashCode(int hash, String s) {
+        for (int i = 0; i < s.length(); i++) hash = 31 * hash + s.charAt(i);
+        return hash;
+    }
+
+    /**
+     * Continue String.hashCode() with the decimal representation of a number
+     * @param hash
+     * @param number
+     * @return
+     */
+    static int hashCode(int hash, int number) {
+        long n = number;
+        if (n < 0) {
+            hash = 31 * hash + '-';
+            n = -n;
+        }
+
+        for (long divisor = divisor(n); divisor > 0; divisor /= 10) hash = 31 * hash + (char) ('0' + n / divisor % 10);
+        return hash;
+    }
+
+    /**
+     * Match a string at a position of a feature string
+     * @param feature
+     * @param position
+     * @param s
+     * @return the position after the match, or -1 if it does not match
+     */
+    static int match(String feature, int position, String s) {
+        if (feature.startsWith(s, position)) return position + s.length();
+        else return -1;
+    }
+
+    /**
+     * Match the decimal representation of a number at a position of a feature string
+     * @param feature
+     * @param position
+     * @param number
+     * @return the position after the match, or -1 if it does not match
+     */
+    static int match(String feature, int position, int number) {
+        long n = number;
+        if (n < 0) {
+            if (position >= feature.length() || feature.charAt(position) != '-') return -1;
+            position++;
+            n = -n;
+        }
+
+        for (long divisor = divisor(n); divisor > 0; divisor /= 10) {
+            if (position >= feature.length() || feature.charAt(position) != '0' + n / divisor % 10) return -1;
+            position++;
+        }
+
+        return position;
+    }
+
+    /**
+     * Power of ten of the most significant decimal digit of a non-negative number
+     * @param n
+     * @return
+     */
+    static long divisor(long n) {
+        long divisor = 1;
+        while (n / divisor >= 10) divisor *= 10;
+        return divisor;
+    }
+}
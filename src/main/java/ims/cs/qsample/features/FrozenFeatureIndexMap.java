@@ -0,0 +1,154 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.qsample.features;
+
+import java.util.Arrays;
+
+/**
+ * Read-only feature dictionary for prediction. Known features keep the indices they had when the dictionary was
+ * frozen; unknown features are not added, but resolve to ABSENT, so that memory stays bounded no matter how much
+ * text is processed.
+ * The vocabulary is stored in two flat arrays: the feature strings in index order (for reverse lookups) and an open
+ * addressing table of indices into that array. Lookups hash the string, probe the table and compare against the
+ * stored string; no keys or boxed values are kept besides the strings themselves.
+ */
+public class FrozenFeatureIndexMap extends FeatureIndexMap {
+
+    static final int EMPTY_SLOT = -1;
+
+    final String[] features;
+    final int[] table;
+    final int mask;
+
+    /**
+     * Freeze the current contents of a dictionary
+     * @param featureIndexMap
+     */
+    public FrozenFeatureIndexMap(FeatureIndexMap featureIndexMap) {
+        super(false);
+
+        int size = featureIndexMap.size();
+        features = new String[size];
+        for (int index = 0; index < size; index++) features[index] = featureIndexMap.getFeature(index);
+
+        // table with a load factor of at most 0.5, so that probe sequences stay short
+        int tableSize = 2;
+        while (tableSize < 2 * size) tableSize *= 2;
+        table = new int[tableSize];
+        mask = tableSize - 1;
+        Arrays.fill(table, EMPTY_SLOT);
+
+        for (int index = 0; index < size; index++) {
+            int slot = hash(features[index]) & mask;
+            while (table[slot] != EMPTY_SLOT) slot = (slot + 1) & mask;
+            table[slot] = index;
+        }
+
+        numFeatures = size;
+    }
+
+    /**
+     * Index of a known feature, or ABSENT if the feature was not in the dictionary when it was frozen
+     * @param feature
+     * @return
+     */
+    @Override
+    public int getIndex(String feature) {
+        int slot = hash(feature) & mask;
+        while (true) {
+            int index = table[slot];
+            if (index == EMPTY_SLOT) return ABSENT;
+            if (features[index].equals(feature)) return index;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Index of a known feature of a template, or ABSENT. The table is probed with the string hash of the name, which
+     * is computed without building the name, so that neither names nor template values are kept.
+     * @param template
+     * @param string1
+     * @param number1
+     * @param string2
+     * @param number2
+     * @return
+     */
+    @Override
+    public int getIndex(FeatureTemplate template, String string1, int number1, String string2, int number2) {
+        int slot = spread(template.nameHashCode(string1, number1, string2, number2)) & mask;
+        while (true) {
+            int index = table[slot];
+            if (index == EMPTY_SLOT) return ABSENT;
+            if (template.nameEquals(features[index], string1, number1, string2, number2)) return index;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    @Override
+    public String getFeature(int index) {
+        if (index >= 0 && index < features.length) {
+            return features[index];
+        } else {
+            throw new Error("Lookup error");
+        }
+    }
+
+    @Override
+    public boolean isFrozen() {
+        return true;
+    }
+
+    @Override
+    public FeatureIndexMap freeze() {
+        return this;
+    }
+
+    /**
+     * A growable dictionary with the same indices, e.g., to add the features of another model
+     * @return
+     */
+    @Override
+    public FeatureIndexMap thaw() {
+        FeatureIndexMap featureIndexMap = new FeatureIndexMap();
+        for (String feature : features) featureIndexMap.getIndex(feature);
+        return featureIndexMap;
+    }
+
+    /**
+     * String hash (cached by String) spread with the MurmurHash3 finalizer, as the table size is a power of two
+     * @param feature
+     * @return
+     */
+    static int hash(String feature) {
+        return spread(feature.hashCode());
+    }
+
+    /**
+     * MurmurHash3 finalizer
+     * @param hash
+     * @return
+     */
+    static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.qsample.features;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Feature index map using the hashing trick: feature strings are hashed straight into one of 2^bits buckets, and no
+ * dictionary is kept, so memory does not grow with the number of distinct features.
+ * Hashing is signed to reduce the bias caused by collisions: half of the features are mapped to a negative index
+ * ~bucket, which means that the feature contributes to its bucket with weight -1 instead of +1.
+ * As there is no dictionary, feature strings cannot be recovered; getFeature() returns a name for the signed bucket.
+ * Conjunction features can therefore not be recognized by their name. Instead, the signed buckets of conjunction
+ * features are marked in a bit set when the features are hashed, so that a bucket counts as a conjunction as soon as
+ * one of the features hashed into it is one. Conjoining a feature with a conjunction bucket yields the feature
+ * "BOUND:CUE:HASH:+17:" + feature, i.e., the conjunction of the bucket (rather than of the original feature) with the
+ * feature. The bit set takes one bit per signed bucket, 1/32 of the memory of the weights of one column.
+ */
+public class HashedFeatureIndexMap extends FeatureIndexMap {
+
+    public static final int MAX_BITS = 30;
+
+    static final int FNV_OFFSET = 0x811c9dc5;
+    static final int FNV_PRIME = 0x01000193;
+
+    final int bits;
+    final int mask;
+
+    // conjunction marks, one bit per signed bucket (see conjunctionBit)
+    final AtomicLongArray conjunctionBits;
+
+    /**
+     * Set up a map with 2^bits buckets
+     * @param bits
+     */
+    public HashedFeatureIndexMap(int bits) {
+        super(false);
+        if (bits < 1 || bits > MAX_BITS) throw new Error("Number of hash bits must be between 1 and " + MAX_BITS);
+
+        this.bits = bits;
+        this.mask = (1 << bits) - 1;
+        this.conjunctionBits = new AtomicLongArray((int) (((1L << (bits + 1)) + 63) >>> 6));
+    }
+
+    /**
+     * Signed bucket of a feature string: bucket if the sign is positive, ~bucket if it is negative
+     * @param feature
+     * @return
+     */
+    @Override
+    public int getIndex(String feature) {
+        int index = signedBucket(hash(feature));
+        if (isConjunctionName(feature)) markConjunction(index);
+        return index;
+    }
+
+    /**
+     * Signed bucket of a feature of a template, hashed from the template and its values as if it were its feature
+     * string. Neither the string nor the values are kept.
+     * @param template
+     * @param string1
+     * @param number1
+     * @param string2
+     * @param number2
+     * @return
+     */
+    @Override
+    public int getIndex(FeatureTemplate template, String string1, int number1, String string2, int number2) {
+        int index = signedBucket(template.nameFnvHash(string1, number1, string2, number2));
+        if (template.isConjunction(string1, string2)) markConjunction(index);
+        return index;
+    }
+
+    /**
+     * Signed bucket of a conjunction feature, which is marked as such whatever its name
+     * @param feature
+     * @return
+     */
+    @Override
+    public int getConjunctionIndex(String feature) {
+        int index = signedBucket(hash(feature));
+        markConjunction(index);
+        return index;
+    }
+
+    /**
+     * Whether a conjunction feature has been hashed into a signed bucket
+     * @param index
+     * @return
+     */
+    @Override
+    public boolean isConjunction(int index) {
+        int bit = conjunctionBit(index);
+        return (conjunctionBits.get(bit >>> 6) & (1L << bit)) != 0;
+    }
+
+    /**
+     * Mark a signed bucket as a conjunction
+     * @param index
+     */
+    void markConjunction(int index) {
+        int bit = conjunctionBit(index);
+        int word = bit >>> 6;
+        long bitMask = 1L << bit;
+
+        long old = conjunctionBits.get(word);
+        while ((old & bitMask) == 0 && !conjunctionBits.compareAndSet(word, old, old | bitMask))
+            old = conjunctionBits.get(word);
+    }
+
+    /**
+     * Position of a signed bucket in the conjunction bit set: 2 * bucket for positive, 2 * bucket + 1 for negative
+     * signs
+     * @param index
+     * @return
+     */
+    static int conjunctionBit(int index) {
+        if (index < 0) return 2 * ~index + 1;
+        else return 2 * index;
+    }
+
+    /**
+     * Bucket of a hash, signed by its highest bit
+     * @param hash
+     * @return
+     */
+    int signedBucket(int hash) {
+        int bucket = hash & mask;
+
+        // the sign is taken from the highest bit, which is never part of the bucket
+        if (hash < 0) return ~bucket;
+        else return bucket;
+    }
+
+    /**
+     * Name of a signed bucket, e.g., "HASH:+17" or "HASH:-17"
+     * @param index
+     * @return
+     */
+    @Override
+    public String getFeature(int index) {
+        if (index < 0) return "HASH:-" + ~index;
+        else return "HASH:+" + index;
+    }
+
+    /**
+     * Number of buckets. Signed indices are in [-size(), size()).
+     * @return
+     */
+    @Override
+    public int size() {
+        return 1 << bits;
+    }
+
+    @Override
+    public int getHashBits() {
+        return bits;
+    }
+
+    /**
+     * The hashed map is bounded already and never grows, so freezing does not change it
+     * @return
+     */
+    @Override
+    public FeatureIndexMap freeze() {
+        return this;
+    }
+
+    /**
+     * 32 bit FNV-1a hash of the characters of a string, followed by the MurmurHash3 finalizer so that all bits
+     * depend on all characters
+     * @param feature
+     * @return
+     */
+    static int hash(String feature) {
+        return finish(fnv(FNV_OFFSET, feature));
+    }
+
+    /**
+     * Continue an FNV-1a hash with the characters of a string
+     * @param hash
+     * @param s
+     * @return
+     */
+    static int fnv(int hash, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            hash ^= s.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Continue an FNV-1a hash with the decimal representation of a number, as if it were a string
+     * @param hash
+     * @param number
+     * @return
+     */
+    static int fnv(int hash, int number) {
+        long n = number;
+        if (n < 0) {
+            hash ^= '-';
+            hash *= FNV_PRIME;
+            n = -n;
+        }
+
+        for (long divisor = FeatureTemplate.divisor(n); divisor > 0; divisor /= 10) {
+            hash ^= '0' + (int) (n / divisor % 10);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * MurmurHash3 finalizer
+     * @param hash
+     * @return
+     */
+    static int finish(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
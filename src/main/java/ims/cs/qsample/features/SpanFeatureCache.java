@@ -0,0 +1,75 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.qsample.features;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Span feature sets of one document by (begin, end), so that spans proposed again in later sampling iterations are
+ * not featurized again. Span features only depend on the tokens and the predicted cues, which do not change while
+ * sampling; the cache is dropped whenever they do (see SpanFeatures.invalidateCache).
+ * The cache holds a bounded number of feature sets and evicts the least recently used one.
+ */
+public class SpanFeatureCache {
+
+    // feature indices refer to this map
+    final FeatureIndexMap featureIndexMap;
+    final LinkedHashMap<Long, FeatureSet> featureSets;
+
+    public SpanFeatureCache(FeatureIndexMap featureIndexMap, final int maxSize) {
+        this.featureIndexMap = featureIndexMap;
+
+        // access order, so that the eldest entry is the least recently used one
+        featureSets = new LinkedHashMap<Long, FeatureSet>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, FeatureSet> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    static long key(int begin, int end) {
+        return ((long) begin << 32) | (end & 0xffffffffL);
+    }
+
+    /**
+     * Cached feature set of a span, or null
+     * @param begin
+     * @param end
+     * @return
+     */
+    public synchronized FeatureSet get(int begin, int end) {
+        return featureSets.get(key(begin, end));
+    }
+
+    /**
+     * Cache the feature set of a span. The feature set is shared by all spans with the same boundaries, so it must
+     * not be modified afterwards.
+     * @param begin
+     * @param end
+     * @param featureSet
+     */
+    public synchronized void put(int begin, int end, FeatureSet featureSet) {
+        featureSets.put(key(begin, end), featureSet);
+    }
+
+    public synchronized int size() {
+        return featureSets.size();
+    }
+}
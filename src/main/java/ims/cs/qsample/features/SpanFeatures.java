@@ -17,23 +17,60 @@
 
 package ims.cs.qsample.features;
 
+import ims.cs.lingdata.DependencyPaths;
+import ims.cs.lingdata.Document;
 import ims.cs.lingdata.Sentence;
 import ims.cs.lingdata.Token;
 import ims.cs.corenlp.Helper;
-import edu.stanford.nlp.trees.Constituent;
 import ims.cs.qsample.spans.Span;
-import org.jgrapht.GraphPath;
+import ims.cs.util.StaticConfig;
 
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+
+import static ims.cs.qsample.features.FeatureTemplate.Kind.INT;
+import static ims.cs.qsample.features.FeatureTemplate.Kind.STRING;
 
 /**
  * Created by scheibcn on 11/5/15.
  */
 public class SpanFeatures {
 
+    // compiled feature templates
+    static final FeatureTemplate NUMBER_OF_SENTENCES = FeatureTemplate.unary("NUMBER-OF-SENTENCES=", INT);
+    static final FeatureTemplate SPAN_LENGTH = FeatureTemplate.unary("SPAN-LENGTH=", INT);
+    static final FeatureTemplate OVERLAPS_CUE_NUMBER = FeatureTemplate.unary("OVERLAPS-CUE,NUMBER=", INT);
+    static final FeatureTemplate NUMBER_OF_NE = FeatureTemplate.unary("NUMBER-OF-NE=", INT);
+    static final FeatureTemplate NUMBER_OF_PRO = FeatureTemplate.unary("NUMBER-OF-PRO=", INT);
+    static final FeatureTemplate NUMBER_OF_LOWERCASE = FeatureTemplate.unary("NUMBER-OF-LOWERCASE=", INT);
+    static final FeatureTemplate NUMBER_OF_COMMA = FeatureTemplate.unary("NUMBER-OF-COMMA=", INT);
+
+    static final FeatureTemplate BE_WORD_WORD = FeatureTemplate.binary("BE-CONJUNCTION-WORD-WORD=", "_", STRING, STRING);
+    static final FeatureTemplate BE_LEMMA_LEMMA = FeatureTemplate.binary("BE-CONJUNCTION-LEMMA-LEMMA=", "_", STRING, STRING);
+    static final FeatureTemplate BE_POS_POS = FeatureTemplate.binary("BE-CONJUNCTION-POS-POS=", "_", STRING, STRING);
+    static final FeatureTemplate BE_WORD_1_WORD_1 = FeatureTemplate.binary("BE-CONJUNCTION-WORD-1-WORD+1=", "_", STRING, STRING);
+    static final FeatureTemplate BE_LEMMA_1_LEMMA_1 = FeatureTemplate.binary("BE-CONJUNCTION-LEMMA-1-LEMMA+1=", "_", STRING, STRING);
+    static final FeatureTemplate BE_POS_1_POS_1 = FeatureTemplate.binary("BE-CONJUNCTION-POS-1-POS+1=", "_", STRING, STRING);
+    static final FeatureTemplate BE_WORD_WORD_1 = FeatureTemplate.binary("BE-CONJUNCTION-WORD-WORD+1=", "_", STRING, STRING);
+    static final FeatureTemplate BE_LEMMA_LEMMA_1 = FeatureTemplate.binary("BE-CONJUNCTION-LEMMA-LEMMA+1=", "_", STRING, STRING);
+    static final FeatureTemplate BE_POS_POS_1 = FeatureTemplate.binary("BE-CONJUNCTION-POS-POS+1=", "_", STRING, STRING);
+    static final FeatureTemplate BE_WORD_1_WORD = FeatureTemplate.binary("BE-CONJUNCTION-WORD-1-WORD=", "_", STRING, STRING);
+    static final FeatureTemplate BE_LEMMA_1_LEMMA = FeatureTemplate.binary("BE-CONJUNCTION-LEMMA-1-LEMMA=", "_", STRING, STRING);
+    static final FeatureTemplate BE_POS_1_POS = FeatureTemplate.binary("BE-CONJUNCTION-POS-1-POS=", "_", STRING, STRING);
+
+    static final FeatureTemplate WORD_BETWEEN_LEFT = FeatureTemplate.unary("WORD-BETWEEN-CUE-AND-CONTENT-LEFT-", STRING);
+    static final FeatureTemplate POS_BETWEEN_LEFT = FeatureTemplate.unary("POS-BETWEEN-CUE-AND-CONTENT-LEFT-", STRING);
+    static final FeatureTemplate WORD_BETWEEN_RIGHT = FeatureTemplate.unary("WORD-BETWEEN-CUE-AND-CONTENT-RIGHT-", STRING);
+    static final FeatureTemplate POS_BETWEEN_RIGHT = FeatureTemplate.unary("POS-BETWEEN-CUE-AND-CONTENT-RIGHT-", STRING);
+
+    static final FeatureTemplate NUM_QM_EVEN = FeatureTemplate.binary("NUM-QM-EVEN=", "_&_AT-DOC-END=", STRING, STRING);
+    static final FeatureTemplate NUM_QM_LAST = FeatureTemplate.binary("NUM-QM=", "_&_LAST-IS-QM=", INT, STRING);
+
+    static final Binning.Bins SPAN_LENGTH_BINS = Binning.bins("SPAN-LENGTH");
+    static final Binning.Bins CUE_DEP_PERCENTAGE = Binning.bins("CUE-DEP-PERCENTAGE");
+    static final Binning.Bins CLOSEST_CUE_DEP_PERCENTAGE = Binning.bins("CLOSEST-CUE-DEP-PERCENTAGE");
+
     /**
      * Pastes text in front of all feature names
      * @param fs
@@ -60,10 +97,8 @@ public class SpanFeatures {
         if (Helper.isQuote(span.first()) && Helper.isQuote(span.last())) {
             spanType = "SPANTYPE-DIRECT";
 
-        } else {
-            for (int i = span.begin.position; i <= span.end.position; i++) {
-                if (Helper.isQuote(span.tokenAt(i))) spanType = "SPANTYPE-MIXED";
-            }
+        } else if (spanIndex(span.document).numQuotes(span.begin.position, span.end.position) > 0) {
+            spanType = "SPANTYPE-MIXED";
         }
 
         fs.add(spanType);
@@ -94,15 +129,8 @@ public class SpanFeatures {
         }
 
         // CONSTITUENT EXACT MATCH
-        Set<Constituent> constituents = sentence.tree.constituents();
-        for (Constituent constituent : constituents) {
-            int begin = constituent.start();
-            int end = constituent.end();
-
-            // TODO POST-ACL: end - begin > 0 would be correct. change later.
-            if (end - begin > 1 && begin == span.first().predSentencePosition && end == span.last().predSentencePosition) {
-                fs.add("MATCHES-CONSTITUENT");
-            }
+        if (sentence.getConstituentIndex().matchesConstituent(span.first().predSentencePosition, span.last().predSentencePosition)) {
+            fs.add("MATCHES-CONSTITUENT");
         }
     }
 
@@ -112,19 +140,10 @@ public class SpanFeatures {
      * @param fs
      */
     public static void sentenceStructureFeature(Span span, FeatureSet fs) {
-        Sentence sentence = null;
-        int numSentences = 0;
-
-        for (int i = span.begin.position; i <= span.end.position; i++) {
-            Token token = span.tokenAt(i);
-            Sentence newSentence = token.sentence;
-            if (newSentence != sentence) {
-                numSentences++;
-                sentence = newSentence;
-            }
-        }
+        Sentence sentence = span.last().sentence;
+        int numSentences = spanIndex(span.document).numSentences(span.begin.position, span.end.position);
 
-        fs.add("NUMBER-OF-SENTENCES=" + numSentences);
+        NUMBER_OF_SENTENCES.add(fs, numSentences);
 
         if (numSentences == 1) {
             if (span.begin.position == 0 && span.end.position == sentence.tokenList.size() - 1) {
@@ -144,9 +163,8 @@ public class SpanFeatures {
      */
     public static void numTokensFeature(Span span, FeatureSet fs) {
         int spanLength = span.length();
-        List<String> features = Binning.distanceBins1to100(spanLength, "SPAN-LENGTH");
-        fs.addAll(features);
-        if (spanLength <= 5) fs.add("SPAN-LENGTH=" + span.length());
+        Binning.distanceBins1to100(spanLength, SPAN_LENGTH_BINS, fs);
+        if (spanLength <= 5) SPAN_LENGTH.add(fs, span.length());
     }
 
     /**
@@ -155,18 +173,11 @@ public class SpanFeatures {
      * @param fs
      */
     public static void overlapsCueFeature(Span span, FeatureSet fs) {
-        int numOverlapped = 0;
-
-        for (int i = span.begin.position; i <= span.end.position; i++) {
-            Token token = span.tokenAt(i);
-            if (token.isPredictedCue) {
-                numOverlapped++;
-            }
-        }
+        int numOverlapped = spanIndex(span.document).numCues(span.begin.position, span.end.position);
 
         if (numOverlapped > 0) {
             fs.add("OVERLAPS-CUE");
-            fs.add("OVERLAPS-CUE,NUMBER=" + numOverlapped);
+            OVERLAPS_CUE_NUMBER.add(fs, numOverlapped);
         }
     }
 
@@ -178,8 +189,7 @@ public class SpanFeatures {
     public static void simpleTokenFeatures(Span span, FeatureSet fs) {
         for (int i = span.begin.position+1; i <= span.end.position-1; i++) {
             Token iToken = span.tokenAt(i);
-            List<String> insideFeatures = BoundaryFeatures.tokenFeatures(iToken, false);
-            fs.addAll(insideFeatures);
+            BoundaryFeatures.tokenFeatures(iToken, false, fs);
         }
 
     }
@@ -191,30 +201,23 @@ public class SpanFeatures {
      * @param fs
      */
     public static void tokenFeatures(Span span, FeatureSet fs) {
-        int numNe = 0;
-        int numLowerCase = 0;
-        int numPronoun = 0;
-        int numComma = 0;
-
-        for (int i = span.begin.position+1; i <= span.end.position-1; i++) {
-            Token iToken = span.tokenAt(i);
-            if (fs.contains("SHAPE=[XX]")) numNe ++;
-            if (iToken.predTextIsLower()) numLowerCase++;
-            if (iToken.predPosTag.startsWith("PR")) numPronoun++;
-            if (iToken.predText.equals(",")) numComma++;
-        }
-
-        fs.add("NUMBER-OF-NE=" + numNe);
-        fs.add("NUMBER-OF-PRO=" + numPronoun);
-        fs.add("NUMBER-OF-LOWERCASE=" + numLowerCase);
-        fs.add("NUMBER-OF-COMMA=" + numLowerCase);
+        SpanIndex index = spanIndex(span.document);
+        int innerBegin = span.begin.position + 1;
+        int innerEnd = span.end.position - 1;
 
+        // the shape test is on the span features (which include those of the inner tokens), so it counts either all
+        // inner tokens or none
+        int numNe = 0;
+        if (innerEnd >= innerBegin && fs.contains("SHAPE=[XX]")) numNe = innerEnd - innerBegin + 1;
+        int numLowerCase = index.numLowerCase(innerBegin, innerEnd);
+        int numPronoun = index.numPronouns(innerBegin, innerEnd);
 
-        for (int i = span.begin.position; i <= span.end.position; i++) {
-            Token token = span.tokenAt(i);
-            if (token.predPosTag.startsWith("V")) fs.add("CONTAINS-VERB");
-        }
+        NUMBER_OF_NE.add(fs, numNe);
+        NUMBER_OF_PRO.add(fs, numPronoun);
+        NUMBER_OF_LOWERCASE.add(fs, numLowerCase);
+        NUMBER_OF_COMMA.add(fs, numLowerCase);
 
+        if (index.numVerbs(span.begin.position, span.end.position) > 0) fs.add("CONTAINS-VERB");
     }
 
     /**
@@ -224,11 +227,9 @@ public class SpanFeatures {
      * @return
      */
     public static Token seekCueLeft(Sentence sentence, Token token) {
-        for (int i = token.predSentencePosition - 1; i >= 0; i--) {
-            Token prevToken = sentence.tokenList.get(i);
-            if (prevToken.isPredictedCue) return prevToken;
-        }
-        return null;
+        int position = spanIndex(sentence.document).prevCue(token.predPosition);
+        if (position == SpanIndex.NO_CUE) return null;
+        return sentence.document.tokenList.get(position);
     }
 
     /**
@@ -238,11 +239,9 @@ public class SpanFeatures {
      * @return
      */
     public static Token seekCueRight(Sentence sentence, Token token) {
-        for (int i = token.predSentencePosition + 1; i < sentence.tokenList.size(); i++) {
-            Token prevToken = sentence.tokenList.get(i);
-            if (prevToken.isPredictedCue) return prevToken;
-        }
-        return null;
+        int position = spanIndex(sentence.document).nextCue(token.predPosition);
+        if (position == SpanIndex.NO_CUE) return null;
+        return sentence.document.tokenList.get(position);
     }
 
     /**
@@ -266,21 +265,21 @@ public class SpanFeatures {
         Token firstToken = span.first();
         Token lastToken = span.last();
 
-        fs.add("BE-CONJUNCTION-WORD-WORD=" + firstToken.predText + "_" + lastToken.predText);
-        fs.add("BE-CONJUNCTION-LEMMA-LEMMA=" + firstToken.predLemma + "_" + lastToken.predLemma);
-        fs.add("BE-CONJUNCTION-POS-POS=" + firstToken.predPosTag + "_" + lastToken.predPosTag);
+        BE_WORD_WORD.add(fs, firstToken.predText, lastToken.predText);
+        BE_LEMMA_LEMMA.add(fs, firstToken.predLemma, lastToken.predLemma);
+        BE_POS_POS.add(fs, firstToken.predPosTag, lastToken.predPosTag);
 
-        fs.add("BE-CONJUNCTION-WORD-1-WORD+1=" + BoundaryFeatures.prevWord(firstToken) + "_" + BoundaryFeatures.nextWord(lastToken));
-        fs.add("BE-CONJUNCTION-LEMMA-1-LEMMA+1=" + BoundaryFeatures.prevLemma(firstToken) + "_" + BoundaryFeatures.nextLemma(lastToken));
-        fs.add("BE-CONJUNCTION-POS-1-POS+1=" + BoundaryFeatures.prevPosTag(firstToken) + "_" + BoundaryFeatures.nextPosTag(lastToken));
+        BE_WORD_1_WORD_1.add(fs, BoundaryFeatures.prevWord(firstToken), BoundaryFeatures.nextWord(lastToken));
+        BE_LEMMA_1_LEMMA_1.add(fs, BoundaryFeatures.prevLemma(firstToken), BoundaryFeatures.nextLemma(lastToken));
+        BE_POS_1_POS_1.add(fs, BoundaryFeatures.prevPosTag(firstToken), BoundaryFeatures.nextPosTag(lastToken));
 
-        fs.add("BE-CONJUNCTION-WORD-WORD+1=" + firstToken.predText + "_" + BoundaryFeatures.nextWord(lastToken));
-        fs.add("BE-CONJUNCTION-LEMMA-LEMMA+1=" + firstToken.predLemma + "_" + BoundaryFeatures.nextLemma(lastToken));
-        fs.add("BE-CONJUNCTION-POS-POS+1=" + firstToken.predPosTag + "_" + BoundaryFeatures.nextPosTag(lastToken));
+        BE_WORD_WORD_1.add(fs, firstToken.predText, BoundaryFeatures.nextWord(lastToken));
+        BE_LEMMA_LEMMA_1.add(fs, firstToken.predLemma, BoundaryFeatures.nextLemma(lastToken));
+        BE_POS_POS_1.add(fs, firstToken.predPosTag, BoundaryFeatures.nextPosTag(lastToken));
 
-        fs.add("BE-CONJUNCTION-WORD-1-WORD=" + BoundaryFeatures.prevWord(firstToken) + "_" + lastToken.predText);
-        fs.add("BE-CONJUNCTION-LEMMA-1-LEMMA=" + BoundaryFeatures.prevLemma(firstToken) + "_" + lastToken.predLemma);
-        fs.add("BE-CONJUNCTION-POS-1-POS=" + BoundaryFeatures.prevPosTag(firstToken) + "_" + lastToken.predPosTag);
+        BE_WORD_1_WORD.add(fs, BoundaryFeatures.prevWord(firstToken), lastToken.predText);
+        BE_LEMMA_1_LEMMA.add(fs, BoundaryFeatures.prevLemma(firstToken), lastToken.predLemma);
+        BE_POS_1_POS.add(fs, BoundaryFeatures.prevPosTag(firstToken), lastToken.predPosTag);
     }
 
     /**
@@ -308,15 +307,9 @@ public class SpanFeatures {
         }
 
         // NUMBER OF CUE DEPENDENT
-        int numCueDep = 0;
-        for (int i = span.begin.position; i <= span.end.position; i++) {
-            if (span.tokenAt(i).boundaryFeatureSet.contains("BOUND:CUE:IS-CUE-DEP")) {
-                numCueDep++;
-            }
-        }
+        int numCueDep = spanIndex(span.document).numCueDependents(span.begin.position, span.end.position);
         double cueRatio = numCueDep/(double) span.length();
-        List cueRatioBins = Binning.distanceBins1to100((int) (cueRatio * 100), "CUE-DEP-PERCENTAGE");
-        fs.addAll(cueRatioBins);
+        Binning.distanceBins1to100((int) (cueRatio * 100), CUE_DEP_PERCENTAGE, fs);
 
         // SURROUNDINGS?
         if (prevCue != null) {
@@ -355,74 +348,92 @@ public class SpanFeatures {
             else fs.add("RIGHT-CUE-IS-CLOSEST");
 
             // SYNTACTIC INFO
-            GraphPath closestCueToBegin = BoundaryFeatures.pathFromTo(closestCue, firstToken);
-            GraphPath closestCueToEnd = BoundaryFeatures.pathFromTo(closestCue, lastToken);
+            DependencyPaths.Path closestCueToBegin = BoundaryFeatures.pathFromTo(closestCue, firstToken);
+            DependencyPaths.Path closestCueToEnd = BoundaryFeatures.pathFromTo(closestCue, lastToken);
 
             if (closestCueToBegin != null) fs.add("BEGIN-DEPENDS-ON-CLOSEST-CUE");
             if (closestCueToEnd != null) fs.add("END-DEPENDS-ON-CLOSEST-CUE");
             if (closestCueToBegin != null && closestCueToEnd != null) fs.add("BEGIN-AND-END-DEPEND-ON-CLOSEST-CUE");
 
-            int numClosestCueDep = 0;
-            for (int i = span.begin.position; i <= span.end.position; i++) {
-                Token innerToken = span.tokenAt(i);
-                GraphPath closestCueToInner = BoundaryFeatures.pathFromTo(closestCue, firstToken);
-                if (closestCueToInner != null) numClosestCueDep++;
-            }
+            // each token counts if the first token depends on the cue
+            int numClosestCueDep = closestCueToBegin != null ? span.length() : 0;
 
             // CLOSEST CUE DEP RATIO
             double closestCueRatio = numClosestCueDep/(double) span.length();
-            List closestCueRatioBins = Binning.distanceBins1to100((int) (closestCueRatio * 100), "CLOSEST-CUE-DEP-PERCENTAGE");
-            fs.addAll(closestCueRatioBins);
+            Binning.distanceBins1to100((int) (closestCueRatio * 100), CLOSEST_CUE_DEP_PERCENTAGE, fs);
 
             // CLOSEST CUE: WORDS BETWEEN
             if (closestIsLeft) {
                 for (int betweenPos = closestCue.predPosition+1; betweenPos < firstToken.predPosition; betweenPos++) {
                     Token betweenToken = span.document.tokenList.get(betweenPos);
-                    fs.add("WORD-BETWEEN-CUE-AND-CONTENT-LEFT-" + betweenToken.predText);
-                    fs.add("POS-BETWEEN-CUE-AND-CONTENT-LEFT-" + betweenToken.predPosTag);
+                    WORD_BETWEEN_LEFT.add(fs, betweenToken.predText);
+                    POS_BETWEEN_LEFT.add(fs, betweenToken.predPosTag);
                 }
             } else {
                 for (int betweenPos = lastToken.predPosition+1; betweenPos < closestCue.predPosition; betweenPos++) {
                     Token betweenToken = span.document.tokenList.get(betweenPos);
-                    fs.add("WORD-BETWEEN-CUE-AND-CONTENT-RIGHT-" + betweenToken.predText);
-                    fs.add("POS-BETWEEN-CUE-AND-CONTENT-RIGHT-" + betweenToken.predPosTag);
+                    WORD_BETWEEN_RIGHT.add(fs, betweenToken.predText);
+                    POS_BETWEEN_RIGHT.add(fs, betweenToken.predPosTag);
                 }
             }
         }
 
 
         // CONJUNCTION
-        List<String> conjunctionFeatures = new ArrayList<>(fs.size());
-        for (String feature : fs) {
-            if (feature.contains("CONJUNCTION")) {
-                conjunctionFeatures.add("BOTH-SENTENCES-HAVE-CUES=" + bothSentCues + "_&_" + feature);
+        if (fs instanceof FeatureIntSet) {
+            conjoinBothSentCues((FeatureIntSet) fs, bothSentCues);
+        } else {
+            List<String> conjunctionFeatures = new ArrayList<>(fs.size());
+            for (String feature : fs) {
+                if (feature.contains("CONJUNCTION")) {
+                    conjunctionFeatures.add("BOTH-SENTENCES-HAVE-CUES=" + bothSentCues + "_&_" + feature);
+                }
             }
+            fs.addAll(conjunctionFeatures);
         }
-        fs.addAll(conjunctionFeatures);
 
 
     }
 
+    /**
+     * Conjoin the conjunction features of an int feature set with whether both sentences have cues. Conjunction
+     * features are recognized through the feature index map, so that this also works with hashed features.
+     * @param fs
+     * @param bothSentCues
+     */
+    static void conjoinBothSentCues(FeatureIntSet fs, boolean bothSentCues) {
+        FeatureIndexMap featureIndexMap = FeatureIntSet.getFeatureIndexMap();
+
+        // collect first, so that the set stays sealed while reading
+        int numOld = fs.size();
+        int[] newIndices = new int[numOld];
+        int numNew = 0;
+        for (int i = 0; i < numOld; i++) {
+            int index = fs.indexAt(i);
+            if (!featureIndexMap.isConjunction(index)) continue;
+
+            int newIndex = featureIndexMap.getConjunctionIndex("BOTH-SENTENCES-HAVE-CUES=" + bothSentCues + "_&_" + featureIndexMap.getFeature(index));
+            if (newIndex != FeatureIndexMap.ABSENT) newIndices[numNew++] = newIndex;
+        }
+
+        for (int i = 0; i < numNew; i++) fs.addIndex(newIndices[i]);
+    }
+
     /**
      * Adds features about the quotation mark structure (e.g., does the span contain an even number of quotation marks?)
      * @param span
      * @param fs
      */
     public static void qmStructure(Span span, FeatureSet fs) {
-        int numQm = 0;
-
-        for (int i = span.begin.position; i <= span.end.position; i++) {
-            Token iToken = span.tokenAt(i);
-            if (Helper.isQuote(iToken)) numQm++;
-        }
+        int numQm = spanIndex(span.document).numQuotes(span.begin.position, span.end.position);
 
         boolean lastEndsDoc = span.end.position == span.document.tokenList.size() - 1;
         boolean numQmEven = numQm % 2 == 0;
         boolean lastIsQm = Helper.isQuote(span.last());
         boolean firstIsQm = Helper.isQuote(span.first());
 
-        fs.add("NUM-QM-EVEN=" + numQmEven + "_&_AT-DOC-END=" + lastEndsDoc);
-        if (numQm == 1) fs.add("NUM-QM=" + numQm + "_&_" + "LAST-IS-QM=" + lastIsQm);
+        NUM_QM_EVEN.add(fs, String.valueOf(numQmEven), String.valueOf(lastEndsDoc));
+        if (numQm == 1) NUM_QM_LAST.add(fs, numQm, String.valueOf(lastIsQm));
         if (numQm == 2 && lastIsQm && firstIsQm) fs.add("WELL-FORMED-DIRECT");
     }
 
@@ -441,12 +452,66 @@ public class SpanFeatures {
     }
 
     /**
-     * The main feature extraction function
+     * Span feature cache of a document, created on first use. A cache made for another feature index map is dropped.
+     * @param document
+     * @return null if caching is disabled
+     */
+    static SpanFeatureCache spanFeatureCache(Document document) {
+        if (StaticConfig.current().spanFeatureCacheSize <= 0) return null;
+
+        FeatureIndexMap featureIndexMap = FeatureIntSet.getFeatureIndexMap();
+        SpanFeatureCache cache = document.spanFeatureCache;
+
+        if (cache == null || cache.featureIndexMap != featureIndexMap) {
+            cache = new SpanFeatureCache(featureIndexMap, StaticConfig.current().spanFeatureCacheSize);
+            document.spanFeatureCache = cache;
+        }
+
+        return cache;
+    }
+
+    /**
+     * Token counts and cue positions of a document, built on first use
+     * @param document
+     * @return
+     */
+    static SpanIndex spanIndex(Document document) {
+        SpanIndex index = document.spanIndex;
+        if (index == null) {
+            index = new SpanIndex(document);
+            document.spanIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Drop the cached span features and token counts of a document, e.g., after the predicted cues or the token
+     * features changed
+     * @param document
+     */
+    public static void invalidateCache(Document document) {
+        document.spanFeatureCache = null;
+        document.spanIndex = null;
+        document.tokenFeatureVersion++;
+    }
+
+    /**
+     * The main feature extraction function. Feature sets are cached per document and shared by spans with the same
+     * boundaries.
      * @param span
      * @return
      */
     public static void addAllSpanFeatures(Span span) {
-        FeatureSet fs = new FeatureIntSet();
+        SpanFeatureCache cache = spanFeatureCache(span.document);
+        if (cache != null) {
+            FeatureSet cached = cache.get(span.begin.position, span.end.position);
+            if (cached != null) {
+                span.featureSet = cached;
+                return;
+            }
+        }
+
+        FeatureIntSet fs = new FeatureIntSet();
 
         // full span features
         sentenceStructureFeature(span, fs);
@@ -463,7 +528,10 @@ public class SpanFeatures {
         // DEBUG: add gold information
 //        goldFeatures(span, fs);
 
+        // sealed before it is shared
+        fs.seal();
         span.featureSet = fs;
+        if (cache != null) cache.put(span.begin.position, span.end.position, fs);
     }
 
 
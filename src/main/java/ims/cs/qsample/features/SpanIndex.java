@@ -0,0 +1,138 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.qsample.features;
+
+import ims.cs.corenlp.Helper;
+import ims.cs.lingdata.Document;
+import ims.cs.lingdata.Token;
+
+import java.util.List;
+
+/**
+ * Token counts and cue positions of a document for span features. Counts are stored as prefix sums over the token
+ * positions, so that the number of tokens with a property in any span is a difference of two entries.
+ * The index reflects the predicted cues and cue features at the time it is built and is rebuilt when they change
+ * (see SpanFeatures.invalidateCache).
+ */
+public class SpanIndex {
+
+    static final int NO_CUE = -1;
+
+    // prefix sums: entry i counts tokens at positions < i
+    final int[] cues;
+    final int[] quotes;
+    final int[] lowerCase;
+    final int[] pronouns;
+    final int[] verbs;
+    final int[] cueDependents;
+    final int[] sentenceStarts;
+
+    // position of the closest cue to the left and right in the same sentence, or NO_CUE
+    final int[] prevCue;
+    final int[] nextCue;
+
+    public SpanIndex(Document document) {
+        List<Token> tokens = document.tokenList;
+        int n = tokens.size();
+
+        cues = new int[n + 1];
+        quotes = new int[n + 1];
+        lowerCase = new int[n + 1];
+        pronouns = new int[n + 1];
+        verbs = new int[n + 1];
+        cueDependents = new int[n + 1];
+        sentenceStarts = new int[n + 1];
+
+        for (int i = 0; i < n; i++) {
+            Token token = tokens.get(i);
+            cues[i + 1] = cues[i] + (token.isPredictedCue ? 1 : 0);
+            quotes[i + 1] = quotes[i] + (Helper.isQuote(token) ? 1 : 0);
+            lowerCase[i + 1] = lowerCase[i] + (token.predTextIsLower() ? 1 : 0);
+            pronouns[i + 1] = pronouns[i] + (token.predPosTag.startsWith("PR") ? 1 : 0);
+            verbs[i + 1] = verbs[i] + (token.predPosTag.startsWith("V") ? 1 : 0);
+            cueDependents[i + 1] = cueDependents[i] + (token.boundaryFeatureSet.contains("BOUND:CUE:IS-CUE-DEP") ? 1 : 0);
+            sentenceStarts[i + 1] = sentenceStarts[i] + (i == 0 || token.sentence != tokens.get(i - 1).sentence ? 1 : 0);
+        }
+
+        prevCue = new int[n];
+        nextCue = new int[n];
+
+        int cue = NO_CUE;
+        for (int i = 0; i < n; i++) {
+            if (i > 0 && tokens.get(i).sentence != tokens.get(i - 1).sentence) cue = NO_CUE;
+            prevCue[i] = cue;
+            if (tokens.get(i).isPredictedCue) cue = i;
+        }
+
+        cue = NO_CUE;
+        for (int i = n - 1; i >= 0; i--) {
+            if (i < n - 1 && tokens.get(i).sentence != tokens.get(i + 1).sentence) cue = NO_CUE;
+            nextCue[i] = cue;
+            if (tokens.get(i).isPredictedCue) cue = i;
+        }
+    }
+
+    /**
+     * Number of counted tokens from begin to end (inclusive); 0 if the range is empty
+     * @param prefixSums
+     * @param begin
+     * @param end
+     * @return
+     */
+    static int count(int[] prefixSums, int begin, int end) {
+        if (end < begin) return 0;
+        return prefixSums[end + 1] - prefixSums[begin];
+    }
+
+    public int numCues(int begin, int end) { return count(cues, begin, end); }
+
+    public int numQuotes(int begin, int end) { return count(quotes, begin, end); }
+
+    public int numLowerCase(int begin, int end) { return count(lowerCase, begin, end); }
+
+    public int numPronouns(int begin, int end) { return count(pronouns, begin, end); }
+
+    public int numVerbs(int begin, int end) { return count(verbs, begin, end); }
+
+    public int numCueDependents(int begin, int end) { return count(cueDependents, begin, end); }
+
+    /**
+     * Number of sentences that tokens from begin to end (inclusive) belong to
+     * @param begin
+     * @param end
+     * @return
+     */
+    public int numSentences(int begin, int end) {
+        if (end < begin) return 0;
+        return count(sentenceStarts, begin + 1, end) + 1;
+    }
+
+    /**
+     * Position of the closest cue left of a position in the same sentence, or NO_CUE
+     * @param position
+     * @return
+     */
+    public int prevCue(int position) { return prevCue[position]; }
+
+    /**
+     * Position of the closest cue right of a position in the same sentence, or NO_CUE
+     * @param position
+     * @return
+     */
+    public int nextCue(int position) { return nextCue[position]; }
+}
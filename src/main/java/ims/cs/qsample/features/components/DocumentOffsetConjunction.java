@@ -17,47 +17,78 @@
 
 package ims.cs.qsample.features.components;
 
-import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
-
 import ims.cs.lingdata.Document;
 import ims.cs.lingdata.Token;
+import ims.cs.qsample.features.FeatureIndexMap;
+import ims.cs.qsample.features.FeatureIntSet;
 import ims.cs.qsample.features.FeatureSet;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Offset conjunction over a selection of features.
  * Idea here: enumerate all possible patterns of feature conjunctions. Then test for each feature set whether it
  * contains each of the conjunctions. If so, add the conjunction.
+ * Patterns are subsets of the features and are represented as bit masks: for each token, the features it contains
+ * are collected into one mask, and the conjunctions of all subsets of that mask are looked up in a table.
  */
 public class DocumentOffsetConjunction {
 
 	// features subject to conjunction
 	private static final String[] features = new String[] {"SENT:QUOT", "SENT:NE", "SENT:PRO", "SENT:HASCUE", "CUE-DEP", "IS-LEFTMOST", "SENT-BEGIN-WIN", "SENT-END-WIN"};
 
-	private List<String[]> patternList;
-	
+	private static final int NUM_PATTERNS = 1 << features.length;
+
+	// conjunction feature of each pattern, e.g., "CONJUNCTION:SENT:QUOT,SENT:NE" for pattern 3
+	private final String[] patternNames;
+
+	// feature indices of the features and patterns in the current feature index map
+	private volatile IndexTable indexTable;
+
+	/**
+	 * Indices of the features and of the conjunctions of all patterns in one feature index map
+	 */
+	private class IndexTable {
+		final FeatureIndexMap featureIndexMap;
+		final int[] featureIndices = new int[features.length];
+		final int[] patternIndices = new int[NUM_PATTERNS];
+
+		IndexTable(FeatureIndexMap featureIndexMap) {
+			this.featureIndexMap = featureIndexMap;
+			for (int i = 0; i < features.length; i++) featureIndices[i] = featureIndexMap.getIndex(features[i]);
+			for (int pattern = 1; pattern < NUM_PATTERNS; pattern++) patternIndices[pattern] = featureIndexMap.getIndex(patternNames[pattern]);
+		}
+	}
+
 
 	public DocumentOffsetConjunction() {
-		patternList = new LinkedList<>();
-		
-		// add empty entry to start
-		patternList.add(new String[] {});
-		
-		
-		for (String s : features) {
-			List<String[]> newPatterns = new LinkedList<String[]>();
-			for (String[] pattern : patternList) {
-				String[] concat = append(pattern, s);
-				newPatterns.add(concat);
-			}
-			
-			patternList.addAll(newPatterns);
+		patternNames = new String[NUM_PATTERNS];
+
+		for (int pattern = 1; pattern < NUM_PATTERNS; pattern++) {
+			List<String> patternFeatures = new ArrayList<>();
+			for (int i = 0; i < features.length; i++)
+				if ((pattern & (1 << i)) != 0) patternFeatures.add(features[i]);
+
+			patternNames[pattern] = "CONJUNCTION:" + StringUtils.join(patternFeatures, ",");
 		}
-		
-		// remove the empty entry
-		patternList.remove(0);
+	}
+
+	/**
+	 * Index table for the current feature index map, which may have been replaced since the last call
+	 * @return
+	 */
+	private IndexTable indexTable() {
+		FeatureIndexMap featureIndexMap = FeatureIntSet.getFeatureIndexMap();
+		IndexTable table = indexTable;
+
+		if (table == null || table.featureIndexMap != featureIndexMap) {
+			table = new IndexTable(featureIndexMap);
+			indexTable = table;
+		}
+
+		return table;
 	}
 
 	/**
@@ -66,39 +97,38 @@ public class DocumentOffsetConjunction {
 	 */
 	public void extract (Document document) {
 		List<Token> tokenList = document.getTokenList();
+		IndexTable table = indexTable();
 		
 		for (Token token : tokenList) {
 			FeatureSet fs = token.boundaryFeatureSet;
 
-			// check for each pattern whether the feature set satisfies it
-			for (String[] features : patternList) {
-				boolean matches = true;
-				for (String feature: features) {
-					if (!fs.contains(feature)) {
-						matches = false;
-						break;
-					}
-				}
+			if (fs instanceof FeatureIntSet) {
+				FeatureIntSet fis = (FeatureIntSet) fs;
+
+				// collect the features the token has
+				int mask = 0;
+				for (int i = 0; i < features.length; i++)
+					if (fis.containsIndex(table.featureIndices[i])) mask |= 1 << i;
 
-				// if the pattern is satisfied, add the conjunction
-				if (matches) {
-					fs.add("CONJUNCTION:" + StringUtils.join(",", features));
+				// every non-empty subset of the mask is a pattern that the feature set satisfies
+				for (int pattern = mask; pattern != 0; pattern = (pattern - 1) & mask) {
+					int index = table.patternIndices[pattern];
+					if (index != FeatureIndexMap.ABSENT) fis.addIndex(index);
 				}
+			} else {
+				int mask = 0;
+				for (int i = 0; i < features.length; i++)
+					if (fs.contains(features[i])) mask |= 1 << i;
+
+				for (int pattern = mask; pattern != 0; pattern = (pattern - 1) & mask)
+					fs.add(patternNames[pattern]);
 			}
 		}
 	}
 	
-	
-	public static String[] append (String[] a1, String s) {
-		String[] ret = new String[a1.length + 1];
-		System.arraycopy(a1, 0, ret, 0, a1.length);
-		ret[ret.length-1] = s;
-		return ret;
-	}
-	
 	public void printPatterns() {
-		for(String[] p : patternList) {
-			System.out.println(Arrays.toString(p));
+		for (int pattern = 1; pattern < NUM_PATTERNS; pattern++) {
+			System.out.println(patternNames[pattern]);
 		}
 	}
 
@@ -84,7 +84,7 @@ public abstract class SentenceConstituentFeatures {
 			// check if token is null. this can happen if the token was unaligned previously (e.g., because of
 			// a parser error)
 			if (pToken == null) {
-				if (StaticConfig.verbose)
+				if (StaticConfig.current().verbose)
 					System.err.println(sentence.sentenceId + " Dropping tree without associated token: " + t + " ");
 				return;
 			}
@@ -92,17 +92,17 @@ public abstract class SentenceConstituentFeatures {
 			FeatureSet fs = pToken.boundaryFeatureSet;
 
 			// leftmost feature (see Pareti paper for description)
-			if (StaticConfig.constituentLeftmost && isLeftmost)
+			if (StaticConfig.current().constituentLeftmost && isLeftmost)
 				fs.add(LEFTMOST_FEATURE);
 
 			// level in tree
-			if (StaticConfig.constituentLevel) {
+			if (StaticConfig.current().constituentLevel) {
 				fs.add(LEVEL_FEATURE + level);
 				addLevelBinHeuristic(pToken, LEVEL_FEATURE, level);
 			}
 
 			// leftmost feature label
-			if (StaticConfig.constituentAncestorL) {
+			if (StaticConfig.current().constituentAncestorL) {
 				fs.add(AL_FEATURE + "LBL:" + ancestorWhereLeftmost.label);
 				fs.add(AL_FEATURE + "LVL:" + ancestorWhereLeftmost.level);
 				
@@ -110,12 +110,12 @@ public abstract class SentenceConstituentFeatures {
 			}
 
 			// parent in constituent tree
-			if (StaticConfig.constituentParent) {
+			if (StaticConfig.current().constituentParent) {
 				fs.add(PARENT_FEATURE + "LBL:" + parent.label);
 			}
 
 			// labels of all ancestors
-			if (StaticConfig.constituentGoverning) {   /* "Ancestor" features in the paper */
+			if (StaticConfig.current().constituentGoverning) {   /* "Ancestor" features in the paper */
 				for (NodeFeatures nf: governingLabels) {
 					// label with and without depth
 					fs.add(GOV_FEATURE + nf.label + "@" + nf.level);   /* ambiguous in paper */
@@ -160,7 +160,7 @@ public abstract class SentenceConstituentFeatures {
 	 * @param value
 	 */
 	private static void addLevelBinHeuristic(Token mToken, String feature, int value) {
-		if (!StaticConfig.constituentBinning) return;
+		if (!StaticConfig.current().constituentBinning) return;
 		
 		FeatureSet fs = mToken.boundaryFeatureSet;
 
@@ -172,7 +172,7 @@ public abstract class SentenceConstituentFeatures {
 
 			// threshold satisfied? add bin feature!
 			if (value <= threshUpper) {
-				if (StaticConfig.constituentBinningStacked) {
+				if (StaticConfig.current().constituentBinningStacked) {
 					fs.add(feature + "(<=)" + threshLower);
 					if (value >= threshLower)
 						fs.add(feature + "(>=)" + threshLower);
@@ -43,8 +43,8 @@ public abstract class SentenceDependencyFeatures {
 	 */
 	public static void extract (Sentence sentence) {
 		for (Token pToken : sentence.tokenList) {
-			if (StaticConfig.dependencyParentRel || StaticConfig.dependencyParentRelHead) addParentFeature(pToken);
-			if (StaticConfig.dependencyChildRel || StaticConfig.dependencyChildRelHead) addChildFeatures(pToken);
+			if (StaticConfig.current().dependencyParentRel || StaticConfig.current().dependencyParentRelHead) addParentFeature(pToken);
+			if (StaticConfig.current().dependencyChildRel || StaticConfig.current().dependencyChildRelHead) addChildFeatures(pToken);
 		}
 	}
 
@@ -59,11 +59,11 @@ public abstract class SentenceDependencyFeatures {
 		
 		if (parentEdge != null) {
 			// plain parent
-			if (StaticConfig.dependencyParentRel)
+			if (StaticConfig.current().dependencyParentRel)
 				fs.add(PARENT_REL_PREFIX + "=" + parentEdge.getRelation());
 
 			// parent and relation label
-			if (StaticConfig.dependencyParentRelHead)
+			if (StaticConfig.current().dependencyParentRelHead)
 				fs.add(PARENT_RELHEAD_PREFIX + "=" + parentEdge.getRelation() + "," + parentEdge.getGovernor().lemma());
 		}
 	}
@@ -79,11 +79,11 @@ public abstract class SentenceDependencyFeatures {
 		if (childEdgeList != null) {
 			for (SemanticGraphEdge childEdge : childEdgeList) {
 				// plain child
-				if (StaticConfig.dependencyChildRel)
+				if (StaticConfig.current().dependencyChildRel)
 					fs.add(CHILD_REL_PREFIX + "=" + childEdge.getRelation());
 
 				// child and relation label
-				if (StaticConfig.dependencyChildRelHead)
+				if (StaticConfig.current().dependencyChildRelHead)
 					fs.add(CHILD_RELHEAD_PREFIX + "=" + childEdge.getRelation() + "," + childEdge.getDependent().lemma());
 			}
 		}
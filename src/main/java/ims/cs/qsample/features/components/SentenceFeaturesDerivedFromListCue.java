@@ -42,7 +42,7 @@ public abstract class SentenceFeaturesDerivedFromListCue {
 
 		// check each token for noun-cue-ness, push features to its dependents (transitively)
 		for (Token pToken : sentence.tokenList) {
-			if (StaticConfig.dependencyCueDependent) {
+			if (StaticConfig.current().dependencyCueDependent) {
 				// token is in noun cue list
 				if (pToken.boundaryFeatureSet.contains("NOUNCUELIST"))
 					addCueDependentFeature("LIST", pToken, sentence);
@@ -56,11 +56,11 @@ public abstract class SentenceIndicatorFeatures {
 
 		// now add pre-computed features to token list
 		for (Token mToken : sentence.tokenList) {
-			if (StaticConfig.sentenceHasQuote) addFeaturePositiveAndNegative(QUOT_PREFIX, sentenceHasQuotFeature, mToken);
-			if (StaticConfig.sentenceHasPronoun) addFeaturePositiveAndNegative(PRO_PREFIX, sentenceHasProFeature, mToken);
+			if (StaticConfig.current().sentenceHasQuote) addFeaturePositiveAndNegative(QUOT_PREFIX, sentenceHasQuotFeature, mToken);
+			if (StaticConfig.current().sentenceHasPronoun) addFeaturePositiveAndNegative(PRO_PREFIX, sentenceHasProFeature, mToken);
 
-			if (StaticConfig.sentenceHasNe) addFeaturePositiveAndNegative(NE_PREFIX, sentenceHasNeFeature, mToken);
-			if (StaticConfig.sentenceLength) {
+			if (StaticConfig.current().sentenceHasNe) addFeaturePositiveAndNegative(NE_PREFIX, sentenceHasNeFeature, mToken);
+			if (StaticConfig.current().sentenceLength) {
 				addLengthLogBinHeuristic(mToken, sentenceLength);
 				mToken.boundaryFeatureSet.add(SL_PREFIX + sentenceLength);
 			}
@@ -86,7 +86,7 @@ public abstract class SentenceIndicatorFeatures {
 	 * @param length
 	 */
 	private static void addLengthLogBinHeuristic(Token pToken, int length) {
-		if (!StaticConfig.sentenceLengthBinning) return;
+		if (!StaticConfig.current().sentenceLengthBinning) return;
 		
 		FeatureSet fs = pToken.boundaryFeatureSet;
 		
@@ -97,14 +97,14 @@ public abstract class SentenceIndicatorFeatures {
 			int threshUpper = bins[i+1];
 			
 			if (length <= threshUpper) {
-				if (StaticConfig.sentenceLengthBinningStacked) {
+				if (StaticConfig.current().sentenceLengthBinningStacked) {
 					fs.add(SL_LT_PREFIX + "STACKED-" + threshLower);
 				} else if (length > threshLower) {
 					fs.add(SL_EXACT_PREFIX + threshLower);
 				}
 			} 
 			
-			if ((length >= threshLower) && StaticConfig.sentenceLengthBinningStacked) {
+			if ((length >= threshLower) && StaticConfig.current().sentenceLengthBinningStacked) {
 				fs.add(SL_GT_PREFIX + threshLower);
 			}
 		}
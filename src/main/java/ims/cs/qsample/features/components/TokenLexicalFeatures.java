@@ -41,12 +41,12 @@ public abstract class TokenLexicalFeatures {
 	 */
 	public static void extract(Token t) {
 
-		if (StaticConfig.lexicalPos ||
-				StaticConfig.lexicalLemma ||
-				StaticConfig.lexicalToken)
+		if (StaticConfig.current().lexicalPos ||
+				StaticConfig.current().lexicalLemma ||
+				StaticConfig.current().lexicalToken)
 			addWindowFeatures(t);
 
-		if (StaticConfig.lexicalBigram) addBigramFeature(t);
+		if (StaticConfig.current().lexicalBigram) addBigramFeature(t);
 		addNeFeature(t);
 		addDocStructureFeature(t);
 	}
@@ -121,14 +121,14 @@ public abstract class TokenLexicalFeatures {
 		// current POS tag
 		FeatureSet fs = pToken.boundaryFeatureSet;
 		
-		if (StaticConfig.lexicalPos)   fs.add(POS_PREFIX + "-0=" + pToken.predPosTag);
-		if (StaticConfig.lexicalToken) fs.add(TOK_PREFIX + "-0=" + pToken.predText);
-		if (StaticConfig.lexicalLemma) fs.add(LEMMA_PREFIX + "-0=" + pToken.predLemma);
+		if (StaticConfig.current().lexicalPos)   fs.add(POS_PREFIX + "-0=" + pToken.predPosTag);
+		if (StaticConfig.current().lexicalToken) fs.add(TOK_PREFIX + "-0=" + pToken.predText);
+		if (StaticConfig.current().lexicalLemma) fs.add(LEMMA_PREFIX + "-0=" + pToken.predLemma);
 
 		
 		// previous tokens
 		Token currentToken = pToken;
-		for (int i = 1; i <= StaticConfig.lexicalWindowSize; i++) {
+		for (int i = 1; i <= StaticConfig.current().lexicalWindowSize; i++) {
 			String leftPos;
 			String leftTok;
 			String leftLemma;
@@ -145,14 +145,14 @@ public abstract class TokenLexicalFeatures {
 				leftTok = "NONE";
 			}
 
-			if (StaticConfig.lexicalPos)	fs.add("WIN_" + POS_PREFIX + "-" + i + "=" + leftPos);
-			if (StaticConfig.lexicalToken) fs.add("WIN_" + TOK_PREFIX + "-" + i + "=" + leftTok);
-			if (StaticConfig.lexicalLemma) fs.add("WIN_" + LEMMA_PREFIX + "-" + i + "=" + leftLemma);
+			if (StaticConfig.current().lexicalPos)	fs.add("WIN_" + POS_PREFIX + "-" + i + "=" + leftPos);
+			if (StaticConfig.current().lexicalToken) fs.add("WIN_" + TOK_PREFIX + "-" + i + "=" + leftTok);
+			if (StaticConfig.current().lexicalLemma) fs.add("WIN_" + LEMMA_PREFIX + "-" + i + "=" + leftLemma);
 		}
 
 		// subsequent tokens
 		currentToken = pToken;
-		for (int i = 1; i <= StaticConfig.lexicalWindowSize; i++) {
+		for (int i = 1; i <= StaticConfig.current().lexicalWindowSize; i++) {
 			String rightPos;
 			String rightTok;
 			String rightLemma;
@@ -171,9 +171,9 @@ public abstract class TokenLexicalFeatures {
 				
 			}
 
-			if (StaticConfig.lexicalPos)   fs.add("WIN_" + POS_PREFIX + "+" + i + "=" + rightPos);
-			if (StaticConfig.lexicalToken) fs.add("WIN_" + TOK_PREFIX + "+" + i + "=" + rightTok);
-			if (StaticConfig.lexicalLemma) fs.add("WIN_" + LEMMA_PREFIX + "+" + i + "=" + rightLemma);
+			if (StaticConfig.current().lexicalPos)   fs.add("WIN_" + POS_PREFIX + "+" + i + "=" + rightPos);
+			if (StaticConfig.current().lexicalToken) fs.add("WIN_" + TOK_PREFIX + "+" + i + "=" + rightTok);
+			if (StaticConfig.current().lexicalLemma) fs.add("WIN_" + LEMMA_PREFIX + "+" + i + "=" + rightLemma);
 
 		}
 	}
@@ -22,11 +22,14 @@ import ims.cs.qsample.features.SpanFeatures;
 import ims.cs.qsample.models.HigherSpanModel;
 import ims.cs.qsample.models.QuotationPerceptrons;
 import ims.cs.qsample.spans.Span;
-import ims.cs.qsample.spans.SpanBegin;
-import ims.cs.qsample.spans.SpanEnd;
 import ims.cs.util.StaticConfig;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * A sampler for content spans based on boundary prediction made by token-level classifiers
@@ -46,6 +49,11 @@ public class PerceptronSampler {
     Sampling beginSampling = new Sampling(new Random(123));
     Sampling endSampling = new Sampling(new Random(313));
 
+    // begin and end distributions over the tokens of the document being sampled (see prepareDistributions)
+    Document distributionDocument;
+    TokenDistribution beginDistribution;
+    TokenDistribution endDistribution;
+
     // parameters
     double learningRate = 0.1;
     boolean linearSampling = false;
@@ -62,23 +70,71 @@ public class PerceptronSampler {
         this.spanModel = proposalPerceptrons.associatedSpanModel;
     }
 
+    // samplers for lock-free training threads, set up on first use
+    List<PerceptronSampler> threadSamplers;
+
     /**
-     * Sample an end token according to perceptron scores from the tokens of a document
+     * Set up a sampler for a training thread. It shares models and parameters with the given sampler, but has its own
+     * random generators.
+     * @param sampler
+     * @param seed
+     */
+    PerceptronSampler(PerceptronSampler sampler, long seed) {
+        this.proposalPerceptrons = sampler.proposalPerceptrons;
+        this.spanModel = sampler.spanModel;
+
+        this.learningRate = sampler.learningRate;
+        this.linearSampling = sampler.linearSampling;
+        this.updateForGoldSpan = sampler.updateForGoldSpan;
+        this.overlappingSpanCriterion = sampler.overlappingSpanCriterion;
+
+        this.shufRandom = new Random(seed);
+        this.directionRandom = new Random(seed + 1);
+        this.beginSampling = new Sampling(new Random(seed + 2));
+        this.endSampling = new Sampling(new Random(seed + 3));
+    }
+
+    /**
+     * Compute the begin and end distributions of a document from the current perceptron scores and temperatures.
+     * The token scores do not change while a document is sampled, so this is done once per pass over the document.
      * @param document
-     * @return
      */
-    public int sampleEnd(Document document) {
-        // set up list of scored end positions
+    void prepareDistributions(Document document) {
         int numTokens = document.tokenList.size();
-        List<HasScore> endList = new ArrayList<>(numTokens);
+        double[] beginWeights = new double[numTokens];
+        double[] endWeights = new double[numTokens];
+        double beginTemperature = StaticConfig.current().beginTemperature;
+        double endTemperature = StaticConfig.current().endTemperature;
 
         for (int position = 0; position < numTokens; position++) {
-            endList.add(new SpanEnd(position, document.tokenList.get(position).perceptronEndScore));
+            Token token = document.tokenList.get(position);
+            beginWeights[position] = TokenDistribution.weight(token.perceptronBeginScore, beginTemperature, beginSampling.doExp);
+            endWeights[position] = TokenDistribution.weight(token.perceptronEndScore, endTemperature, endSampling.doExp);
         }
 
-        // sample a token from this list
-        int listPosition = endSampling.sampleOne(endList, StaticConfig.endTemperature, 0);
-        int position = ((SpanEnd) endList.get(listPosition)).position;
+        beginDistribution = new TokenDistribution(beginWeights);
+        endDistribution = new TokenDistribution(endWeights);
+        distributionDocument = document;
+    }
+
+    /**
+     * Make sure that the distributions belong to the document
+     * @param document
+     */
+    void checkDistributions(Document document) {
+        if (distributionDocument != document) prepareDistributions(document);
+    }
+
+    /**
+     * Sample an end token according to perceptron scores from the tokens of a document
+     * @param document
+     * @return
+     */
+    public int sampleEnd(Document document) {
+        checkDistributions(document);
+
+        // sample a token from all positions
+        int position = endSampling.sampleOne(endDistribution);
 
         // statistics
         document.tokenList.get(position).numTimesSampledEnd++;
@@ -92,17 +148,10 @@ public class PerceptronSampler {
      * @return
      */
     public int sampleBegin(Document document) {
-        // set up list of scored begin positions
-        int numTokens = document.tokenList.size();
-        List<HasScore> beginList = new ArrayList<>(numTokens);
+        checkDistributions(document);
 
-        for (int position = 0; position < numTokens; position++) {
-            beginList.add(new SpanBegin(position, document.tokenList.get(position).perceptronBeginScore));
-        }
-
-        // sample a token from this list
-        int listPosition = beginSampling.sampleOne(beginList, StaticConfig.beginTemperature, 0);
-        int position = ((SpanBegin) beginList.get(listPosition)).position;
+        // sample a token from all positions
+        int position = beginSampling.sampleOne(beginDistribution);
 
         // statistics
         document.tokenList.get(position).numTimesSampledBegin++;
@@ -116,23 +165,16 @@ public class PerceptronSampler {
      * @return
      */
     public int sampleBegin(Document document, int endPosition) {
-        // set up list of scored begin positions
-        int numTokens = document.tokenList.size();
-        List<HasScore> beginList = new ArrayList<>();
+        checkDistributions(document);
 
         // determine the leftmost possible position according to maxLengthSampling
-        int maxBeginPosition = Math.max(0, endPosition - StaticConfig.maxLengthSampling);
-
-        for (int position = endPosition; position >= maxBeginPosition; position--) {
-            beginList.add(new SpanBegin(position, document.tokenList.get(position).perceptronBeginScore));
-        }
+        int maxBeginPosition = Math.max(0, endPosition - StaticConfig.current().maxLengthSampling);
 
         // abort if there is no possible position
-        if (beginList.isEmpty()) return -1;
+        if (endPosition < maxBeginPosition) return -1;
 
-        // draw a position
-        int listPosition = beginSampling.sampleOne(beginList, StaticConfig.beginTemperature, 0);
-        int position = ((SpanBegin) beginList.get(listPosition)).position;
+        // draw a position, walking left from the end position
+        int position = beginSampling.sampleBackward(beginDistribution, maxBeginPosition, endPosition);
 
         // statistics
         document.tokenList.get(position).numTimesSampledBegin++;
@@ -148,23 +190,17 @@ public class PerceptronSampler {
      * @return
      */
     public int sampleEnd(Document document, int beginPosition) {
-        // set up list of scored end positions
-        int numTokens = document.tokenList.size();
-        List<HasScore> endList = new ArrayList<>(numTokens - beginPosition);
+        checkDistributions(document);
 
         // determine the rightmost possible position according to maxLengthSampling
-        int maxEndPosition = Math.min(numTokens - 1, beginPosition + StaticConfig.maxLengthSampling);
-
-        for (int position = beginPosition; position <= maxEndPosition; position++) {
-            endList.add(new SpanEnd(position, document.tokenList.get(position).perceptronEndScore));
-        }
+        int numTokens = document.tokenList.size();
+        int maxEndPosition = Math.min(numTokens - 1, beginPosition + StaticConfig.current().maxLengthSampling);
 
         // abort if there is no possible position
-        if (endList.isEmpty()) return -1;
+        if (maxEndPosition < beginPosition) return -1;
 
-        // draw a position
-        int listPosition = endSampling.sampleOne(endList, StaticConfig.endTemperature, 0);
-        int position = ((SpanEnd) endList.get(listPosition)).position;
+        // draw a position, walking right from the begin position
+        int position = endSampling.sampleForward(endDistribution, beginPosition, maxEndPosition);
 
         // statistics
         document.tokenList.get(position).numTimesSampledEnd++;
@@ -187,7 +223,7 @@ public class PerceptronSampler {
 
         // try to find a consistent configuration of begin and end tokens
         // draw at most maxNumTrials spans
-        while(numTrials < StaticConfig.maxNumTrials && (beginPosition == -1 || endPosition == -1)) {
+        while(numTrials < StaticConfig.current().maxNumTrials && (beginPosition == -1 || endPosition == -1)) {
             // sample whether to start with the begin or end token
             boolean goForward = directionRandom.nextBoolean();
             if (goForward) {   /* begin first */
@@ -227,10 +263,10 @@ public class PerceptronSampler {
             // sample a direction, then sample a begin and end position
             boolean goForward = directionRandom.nextBoolean();
             if (goForward) {
-                beginPosition = HeuristicSampler.findNextBeginFromCue(document, cue.predPosition, StaticConfig.maxCueDistanceSampling);
+                beginPosition = HeuristicSampler.findNextBeginFromCue(document, cue.predPosition, StaticConfig.current().maxCueDistanceSampling);
                 if (beginPosition != -1) endPosition = sampleEnd(document, beginPosition);
             } else {
-                endPosition = HeuristicSampler.findPrevEndFromCue(document, cue.predPosition, StaticConfig.maxCueDistanceSampling);
+                endPosition = HeuristicSampler.findPrevEndFromCue(document, cue.predPosition, StaticConfig.current().maxCueDistanceSampling);
                 if (endPosition != -1) beginPosition = sampleBegin(document, endPosition);
             }
             if (beginPosition != -1 && endPosition != -1)
@@ -255,7 +291,7 @@ public class PerceptronSampler {
         boolean isCorrect = !matchingGoldSpans.isEmpty();
 
         // if the span is incorrect and there is a margin violation, perform an update
-        if (!isCorrect && candidateSpan.score > -StaticConfig.samplerMarginNegative) {
+        if (!isCorrect && candidateSpan.score > -StaticConfig.current().samplerMarginNegative) {
             spanModel.train(candidateSpan, false, learningRate);
 
             if (updateForGoldSpan) {
@@ -267,7 +303,7 @@ public class PerceptronSampler {
                     spanModel.train(goldSpan, true, learningRate);
                 }
             }
-        } else if (isCorrect && candidateSpan.score <= StaticConfig.samplerMarginPositive) {
+        } else if (isCorrect && candidateSpan.score <= StaticConfig.current().samplerMarginPositive) {
             // also update correct spans if the score is not large enough yet
             spanModel.train(candidateSpan, true, learningRate);
         }
@@ -286,6 +322,10 @@ public class PerceptronSampler {
         // container for span proposals
         Set<Span> proposedSpanSet = new HashSet<>();
 
+        // token scores may have changed since the last pass over this document
+        prepareDistributions(document);
+        spanModel.beginDocument(document);
+
         for (int iter = 0; iter < numIter; iter++) {
             // sample a new span
             List<Span> candidateSpanList;
@@ -331,8 +371,8 @@ public class PerceptronSampler {
                         if (existingSpan.featureSet == null)
                             SpanFeatures.addAllSpanFeatures(existingSpan);
 
-                        // score the span
-                        existingSpan.score = spanModel.score(existingSpan, doAverage);
+                        // score the span (unless the weights have not changed since it was last scored)
+                        spanModel.scoreCached(existingSpan, doAverage);
 
                         if (overlappingSpanCriterion == OverlappingSpanCriterion.SUM ||
                                 overlappingSpanCriterion == OverlappingSpanCriterion.MEAN) {   /* score sum or mean */
@@ -384,13 +424,14 @@ public class PerceptronSampler {
      */
     public void removeBadSpans(Document document, boolean isTraining) {
         boolean doAverage = !isTraining;
+        spanModel.beginDocument(document);
 
         Iterator<Span> iterator = document.predictedSpanSet.iterator();
 
         while (iterator.hasNext()) {
             Span span = iterator.next();
             if (span.featureSet == null) SpanFeatures.addAllSpanFeatures(span);
-            span.score = spanModel.score(span, doAverage);
+            spanModel.scoreCached(span, doAverage);
 
             if (span.score <= 0)
                 iterator.remove();
@@ -410,6 +451,14 @@ public class PerceptronSampler {
         List<Document> shuffledDocumentList = new ArrayList<>(documentList);
         Collections.shuffle(shuffledDocumentList, shufRandom);
 
+        // averaged weights do not change during prediction, so compute them only once
+        if (!isTraining) spanModel.finalizeAverage();
+
+        // optionally train on several threads
+        if (isTraining && StaticConfig.current().numSamplingThreads > 1) {
+            sampleAndScoreBeginEndLockFree(shuffledDocumentList, numIter, StaticConfig.current().numSamplingThreads);
+            return;
+        }
 
         for (Document document : shuffledDocumentList) {
             removeBadSpans(document, isTraining);
@@ -418,4 +467,58 @@ public class PerceptronSampler {
     }
 
 
+    /**
+     * Sample new spans for the given documents and update the span model, using several threads that share the
+     * model weights without locking (Hogwild-style). Each document is processed by exactly one thread, each thread
+     * uses its own random generators.
+     * @param documentList
+     * @param numIter
+     * @param numThreads
+     */
+    public void sampleAndScoreBeginEndLockFree(List<Document> documentList, final int numIter, int numThreads) {
+        // set up thread samplers with fixed seeds
+        if (threadSamplers == null || threadSamplers.size() != numThreads) {
+            threadSamplers = new ArrayList<>(numThreads);
+            for (int thread = 0; thread < numThreads; thread++)
+                threadSamplers.add(new PerceptronSampler(this, 171789909L + 1000 * thread));
+        }
+
+        // distribute documents round-robin
+        List<List<Document>> shards = new ArrayList<>(numThreads);
+        for (int thread = 0; thread < numThreads; thread++) shards.add(new ArrayList<Document>());
+        for (int i = 0; i < documentList.size(); i++) shards.get(i % numThreads).add(documentList.get(i));
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        spanModel.beginLockFree();
+
+        try {
+            List<Future<?>> futures = new ArrayList<>(numThreads);
+            for (int thread = 0; thread < numThreads; thread++) {
+                final PerceptronSampler sampler = threadSamplers.get(thread);
+                final List<Document> shard = shards.get(thread);
+
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (Document document : shard) {
+                            sampler.removeBadSpans(document, true);
+                            sampler.sampleAndScoreBeginEnd(document, true, numIter);
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new Error(e);
+                }
+            }
+        } finally {
+            executor.shutdown();
+            spanModel.endLockFree();
+        }
+    }
 }
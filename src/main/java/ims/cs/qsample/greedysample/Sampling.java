@@ -35,7 +35,10 @@ public class Sampling {
 
 
     /**
-     * Sample an element proportionally to sigmoid-transformed scores
+     * Sample an element proportionally to sigmoid-transformed scores.
+     * This is the reference implementation of the draws from a TokenDistribution: a window draw with
+     * sampleForward/sampleBackward returns the same position as this method on the window's tokens in walking order
+     * (see TokenDistributionTest). The sampler itself uses the precomputed distributions.
      * @param items
      */
     public int sampleOne(List<HasScore> items, double temperature, double bias) {
@@ -70,4 +73,37 @@ public class Sampling {
         return resultPosition;
     }
 
+    /**
+     * Sample a position from a precomputed distribution
+     * @param distribution
+     * @return
+     */
+    public int sampleOne(TokenDistribution distribution) {
+        return distribution.sample(random.nextDouble());
+    }
+
+    /**
+     * Sample a position from a window of a precomputed distribution, in the same way as sampleOne with a list of
+     * the positions from left to right
+     * @param distribution
+     * @param from
+     * @param to
+     * @return
+     */
+    public int sampleForward(TokenDistribution distribution, int from, int to) {
+        return distribution.sampleForward(random.nextDouble(), from, to);
+    }
+
+    /**
+     * Sample a position from a window of a precomputed distribution, in the same way as sampleOne with a list of
+     * the positions from right to left
+     * @param distribution
+     * @param from
+     * @param to
+     * @return
+     */
+    public int sampleBackward(TokenDistribution distribution, int from, int to) {
+        return distribution.sampleBackward(random.nextDouble(), from, to);
+    }
+
 }
@@ -0,0 +1,155 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.qsample.greedysample;
+
+/**
+ * A distribution over the token positions of a document, proportional to non-negative weights, precomputed so that
+ * draws do not allocate or evaluate exp().
+ * Draws from all positions use an alias table (constant time); draws from a window of positions binary-search the
+ * cumulative weights (logarithmic time) and return the same position as a linear walk through the window would.
+ * Each draw consumes a single uniform random number.
+ */
+public class TokenDistribution {
+
+    // cumulative[i] is the total weight of the positions before i
+    final double[] cumulative;
+
+    // alias table: position i is kept with probability aliasProbability[i], otherwise alias[i] is returned
+    final double[] aliasProbability;
+    final int[] alias;
+
+    public TokenDistribution(double[] weights) {
+        int n = weights.length;
+
+        cumulative = new double[n + 1];
+        for (int i = 0; i < n; i++) cumulative[i + 1] = cumulative[i] + weights[i];
+
+        aliasProbability = new double[n];
+        alias = new int[n];
+        double total = cumulative[n];
+        if (n == 0 || total <= 0) return;
+
+        // Vose's method: pair each position with less than average weight with one with more
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int numSmall = 0;
+        int numLarge = 0;
+
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1) small[numSmall++] = i;
+            else large[numLarge++] = i;
+        }
+
+        while (numSmall > 0 && numLarge > 0) {
+            int less = small[--numSmall];
+            int more = large[--numLarge];
+
+            aliasProbability[less] = scaled[less];
+            alias[less] = more;
+
+            scaled[more] = (scaled[more] + scaled[less]) - 1;
+            if (scaled[more] < 1) small[numSmall++] = more;
+            else large[numLarge++] = more;
+        }
+
+        // the remaining positions have (up to rounding) exactly average weight
+        while (numLarge > 0) aliasProbability[large[--numLarge]] = 1;
+        while (numSmall > 0) aliasProbability[small[--numSmall]] = 1;
+    }
+
+    /**
+     * Sigmoid-transformed score, as used by Sampling.sampleOne
+     * @param score
+     * @param temperature
+     * @param doExp
+     * @return
+     */
+    public static double weight(double score, double temperature, boolean doExp) {
+        double value = score / temperature;
+        if (doExp) value = 1/(1+Math.exp(-value));
+        return value;
+    }
+
+    public int size() {
+        return alias.length;
+    }
+
+    /**
+     * Draw a position from all positions
+     * @param r uniform random number in [0, 1)
+     * @return
+     */
+    public int sample(double r) {
+        int n = alias.length;
+        if (cumulative[n] <= 0) return 0;
+
+        double u = r * n;
+        int column = Math.min((int) u, n - 1);
+        return u - column < aliasProbability[column] ? column : alias[column];
+    }
+
+    /**
+     * Draw a position from the window from .. to (inclusive), as a walk from left to right through the window
+     * @param r uniform random number in [0, 1)
+     * @param from
+     * @param to
+     * @return
+     */
+    public int sampleForward(double r, int from, int to) {
+        double windowWeight = cumulative[to + 1] - cumulative[from];
+        if (!(windowWeight > 0)) return from;
+        double target = cumulative[from] + r * windowWeight;
+
+        // first position whose cumulative weight exceeds the target
+        int low = from;
+        int high = to + 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulative[middle + 1] > target) high = middle;
+            else low = middle + 1;
+        }
+
+        return low <= to ? low : from;
+    }
+
+    /**
+     * Draw a position from the window from .. to (inclusive), as a walk from right to left through the window
+     * @param r uniform random number in [0, 1)
+     * @param from
+     * @param to
+     * @return
+     */
+    public int sampleBackward(double r, int from, int to) {
+        double windowWeight = cumulative[to + 1] - cumulative[from];
+        if (!(windowWeight > 0)) return to;
+        double target = cumulative[to + 1] - r * windowWeight;
+
+        // last position whose weight starts below the target
+        int low = from - 1;
+        int high = to;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (cumulative[middle] < target) low = middle;
+            else high = middle - 1;
+        }
+
+        return low >= from ? low : to;
+    }
+}
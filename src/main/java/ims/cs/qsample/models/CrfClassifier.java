@@ -287,7 +287,7 @@ public class CrfClassifier {
         System.out.println("Printing feature weights");
 
         try {
-            PrintWriter writer = new PrintWriter(new GZIPOutputStream(new FileOutputStream(NewStaticPrinter.fileName + ".crf-weights.txt.gz")));
+            PrintWriter writer = new PrintWriter(new GZIPOutputStream(new FileOutputStream(NewStaticPrinter.getFileName() + ".crf-weights.txt.gz")));
             crf.print(writer);
             writer.flush();
             writer.close();
@@ -17,14 +17,19 @@
 
 package ims.cs.qsample.models;
 
+import ims.cs.lingdata.Document;
 import ims.cs.qsample.features.FeatureSet;
 import ims.cs.qsample.perceptron.Perceptron;
+import ims.cs.qsample.perceptron.QuantizedWeights;
 import ims.cs.qsample.spans.Span;
 
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.PrintStream;
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A model for scoring a whole span (rather than just begin and end information)
@@ -36,14 +41,42 @@ public class HigherSpanModel implements Serializable {
 
     // We actually make separate models for begin, end, and span-level information.
     // This makes feature management easier, among other things.
+    // The three models keep their weights side by side in one store.
     Perceptron beginPerceptron;
     Perceptron endPerceptron;
     Perceptron higherOrderPerceptron;
 
+    // Begin and end scores of tokens are cached by their document (see TokenScores), as a token is the boundary of
+    // many candidate spans. The version changes when the weights change as a whole (e.g., when averaging); it is not
+    // touched by training updates, so that threads training without locks do not contend for it. Instead, an update
+    // invalidates the cached scores of the document of its span, and each pass over a document starts with
+    // beginDocument(), which invalidates the scores cached before updates on other documents.
+    // Versions are drawn from a global counter, so that a version also identifies the model.
+    static final AtomicLong versions = new AtomicLong();
+    private transient volatile long weightVersion = versions.incrementAndGet();
+
     public HigherSpanModel() {
-        this.beginPerceptron = new Perceptron();
-        this.endPerceptron = new Perceptron();
-        this.higherOrderPerceptron = new Perceptron();
+        Perceptron[] perceptrons = Perceptron.createShared(3);
+        this.beginPerceptron = perceptrons[0];
+        this.endPerceptron = perceptrons[1];
+        this.higherOrderPerceptron = perceptrons[2];
+    }
+
+    HigherSpanModel(Perceptron beginPerceptron, Perceptron endPerceptron, Perceptron higherOrderPerceptron) {
+        this.beginPerceptron = beginPerceptron;
+        this.endPerceptron = endPerceptron;
+        this.higherOrderPerceptron = higherOrderPerceptron;
+    }
+
+    /**
+     * Read-only copy of the model with quantized weights for deployment
+     * @param precision
+     * @return
+     */
+    public HigherSpanModel quantize(QuantizedWeights.Precision precision) {
+        Perceptron[] quantized = Perceptron.quantize(
+                new Perceptron[] {beginPerceptron, endPerceptron, higherOrderPerceptron}, precision);
+        return new HigherSpanModel(quantized[0], quantized[1], quantized[2]);
     }
 
     /**
@@ -54,19 +87,69 @@ public class HigherSpanModel implements Serializable {
      */
     public double score(Span span, boolean average) {
         // we handle the begin, end, and span features separately
-        FeatureSet beginFeatures = span.first().boundaryFeatureSet;
-        FeatureSet endFeatures = span.last().boundaryFeatureSet;
         FeatureSet spanFeatures = span.featureSet;
 
-        // ... then, we can compute three individual scores
+        // ... then, we can compute three individual scores; begin and end scores come from the token cache
+        TokenScores scores = TokenScores.of(span.document, weightVersion);
+        int averageIndex = average ? 1 : 0;
+
         double score = 0;
-        score += beginPerceptron.score(beginFeatures, average);
-        score += endPerceptron.score(endFeatures, average);
+        score += scores.begin[averageIndex].get(beginPerceptron, span.first(), average, scores.step);
+        score += scores.end[averageIndex].get(endPerceptron, span.last(), average, scores.step);
         score += higherOrderPerceptron.score(spanFeatures, average);
 
         return score;
     }
 
+    /**
+     * Start a pass over a document. Its cached scores are recomputed, as the weights may have been updated on other
+     * documents since they were cached.
+     * @param document
+     */
+    public void beginDocument(Document document) {
+        TokenScores.advance(document);
+    }
+
+    /**
+     * Invalidate all cached token scores after a change of the weights as a whole
+     */
+    void weightsChanged() {
+        weightVersion = versions.incrementAndGet();
+    }
+
+    /**
+     * Restore a model and give it a new weight version, as versions are not stored
+     * @param in
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        weightVersion = versions.incrementAndGet();
+    }
+
+    /**
+     * Score of a span, reusing the score stored in the span if it was computed by this model with the current weights
+     * and features, i.e., in the current step of the token score cache of its document. Stores the score in the span.
+     * @param span
+     * @param average use averaged perceptron?
+     * @return
+     */
+    public double scoreCached(Span span, boolean average) {
+        TokenScores scores = TokenScores.of(span.document, weightVersion);
+
+        if (span.scoreCache == scores && span.scoreStep == scores.step && span.scoreAverage == average
+                && span.scoreFeatureSet == span.featureSet)
+            return span.score;
+
+        span.score = score(span, average);
+        span.scoreCache = scores;
+        span.scoreStep = scores.step;
+        span.scoreAverage = average;
+        span.scoreFeatureSet = span.featureSet;
+        return span.score;
+    }
+
     /**
      * Train the model using a given span, updating with a specified learning rate
      * @param span
@@ -88,6 +171,37 @@ public class HigherSpanModel implements Serializable {
         beginPerceptron.update(leftFeatures, effectiveRate);
         endPerceptron.update(rightFeatures, effectiveRate);
         higherOrderPerceptron.update(spanFeatures, effectiveRate);
+        TokenScores.advance(span.document);
+    }
+
+
+    /**
+     * Allow several threads to train the model concurrently without locking (Hogwild-style)
+     */
+    public void beginLockFree() {
+        beginPerceptron.beginLockFree();
+        endPerceptron.beginLockFree();
+        higherOrderPerceptron.beginLockFree();
+    }
+
+    /**
+     * End concurrent training. Must be called after all training threads are done.
+     */
+    public void endLockFree() {
+        beginPerceptron.endLockFree();
+        endPerceptron.endLockFree();
+        higherOrderPerceptron.endLockFree();
+        weightsChanged();
+    }
+
+    /**
+     * Freeze the averaged weights of all three models for prediction
+     */
+    public void finalizeAverage() {
+        beginPerceptron.finalizeAverage();
+        endPerceptron.finalizeAverage();
+        higherOrderPerceptron.finalizeAverage();
+        weightsChanged();
     }
 
 
@@ -21,8 +21,13 @@ import ims.cs.lingdata.Document;
 import ims.cs.lingdata.Token;
 import ims.cs.qsample.evaluate.EvaluateClassifier;
 import ims.cs.qsample.features.BoundaryFeatures;
+import ims.cs.qsample.features.SpanFeatures;
+import ims.cs.qsample.perceptron.ParameterMixing;
 import ims.cs.qsample.perceptron.Perceptron;
+import ims.cs.qsample.perceptron.QuantizedWeights;
+import ims.cs.qsample.perceptron.TrainingMatrix;
 import ims.cs.util.NewStaticPrinter;
+import ims.cs.util.StaticConfig;
 
 import java.io.FileNotFoundException;
 import java.io.Serializable;
@@ -30,6 +35,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Bundle of three perceptrons required for boundary detection.
@@ -47,12 +57,56 @@ public class QuotationPerceptrons implements Serializable {
 
     Random shufRandom = new Random(123121);
 
+    // seed of the shuffling in the first jackknifing fold, the following folds use the next seeds
+    static final long JACKKNIFE_SEED = 123121;
+
     public QuotationPerceptrons(Perceptron beginPerceptron, Perceptron endPerceptron, Perceptron cuePerceptron) {
         this.beginPerceptron = beginPerceptron;
         this.endPerceptron = endPerceptron;
         this.cuePerceptron = cuePerceptron;
     }
 
+    /**
+     * Prune the cue, begin and end perceptrons: drop all features with an absolute averaged weight below the
+     * threshold and/or keep only the topK features with the largest ones.
+     * @param threshold 0 to disable
+     * @param topK 0 to disable
+     */
+    public void prune(double threshold, int topK) {
+        Perceptron[] perceptrons = {cuePerceptron, beginPerceptron, endPerceptron};
+        String[] names = {"cue", "begin", "end"};
+
+        for (int i = 0; i < perceptrons.length; i++) {
+            int numBefore = perceptrons[i].numFeatures();
+            if (threshold > 0) perceptrons[i].prune(threshold);
+            if (topK > 0) perceptrons[i].pruneTopK(topK);
+            System.out.println("Pruned " + names[i] + " perceptron from " + numBefore + " to " +
+                    perceptrons[i].numFeatures() + " features");
+        }
+
+        for (Perceptron perceptron : perceptrons) perceptron.compact();
+    }
+
+    /**
+     * Read-only copy of all perceptrons (including the span model, if any) with quantized weights for deployment
+     * @param precision
+     * @return
+     */
+    public QuotationPerceptrons quantize(QuantizedWeights.Precision precision) {
+        Perceptron[] quantized = Perceptron.quantize(new Perceptron[] {beginPerceptron, endPerceptron, cuePerceptron}, precision);
+        QuotationPerceptrons quantizedPerceptrons = new QuotationPerceptrons(quantized[0], quantized[1], quantized[2]);
+        if (associatedSpanModel != null) quantizedPerceptrons.associatedSpanModel = associatedSpanModel.quantize(precision);
+        return quantizedPerceptrons;
+    }
+
+    /**
+     * Prune the perceptrons as specified in the configuration, if at all
+     */
+    public void pruneIfConfigured() {
+        if (StaticConfig.current().pruneThreshold > 0 || StaticConfig.current().pruneTopK > 0)
+            prune(StaticConfig.current().pruneThreshold, StaticConfig.current().pruneTopK);
+    }
+
     /**
      * Extracts cue features for all tokens in all documents.
      * This has to happen in a separate step as we first have to predict cues using other features which we then re-use.
@@ -114,14 +168,108 @@ public class QuotationPerceptrons implements Serializable {
             }
         }
 
-        // compute new score
+        // compute new score, begin and end in one pass
+        Perceptron[] beginEnd = {beginPerceptron, endPerceptron};
+        double[] scores = new double[2];
         for (Token t : tokens) {
-            t.perceptronBeginScore = beginPerceptron.score(t.boundaryFeatureSet, true);
-            t.perceptronEndScore = endPerceptron.score(t.boundaryFeatureSet, true);
+            Perceptron.score(beginEnd, t.boundaryFeatureSet, true, scores);
+            t.perceptronBeginScore = scores[0];
+            t.perceptronEndScore = scores[1];
         }
     }
 
 
+    /**
+     * Train either the cue perceptron or the begin and end perceptrons on compiled training data.
+     * Tokens are visited document by document in a shuffled order, just as in scoreAndUpdateCuePerceptron() and
+     * scoreAndUpdatePerceptron(). After the last epoch, the averaged scores are stored in the tokens if requested.
+     * If more than one training thread is configured, training is done by parameter mixing instead.
+     * @param matrix
+     * @param nEpochs
+     * @param cue train the cue perceptron if true, begin and end perceptrons otherwise
+     * @param storeScores whether to store the scores in the tokens
+     */
+    void trainFromMatrix(TrainingMatrix matrix, int nEpochs, boolean cue, boolean storeScores) {
+        if (StaticConfig.current().numTrainingThreads > 1) {
+            Perceptron[] perceptrons;
+            byte[] labels;
+            if (cue) {
+                perceptrons = new Perceptron[] {cuePerceptron};
+                labels = new byte[] {TrainingMatrix.CUE};
+            } else {
+                perceptrons = new Perceptron[] {beginPerceptron, endPerceptron};
+                labels = new byte[] {TrainingMatrix.BEGIN, TrainingMatrix.END};
+            }
+
+            ParameterMixing.train(matrix, perceptrons, labels, nEpochs, StaticConfig.current().numTrainingThreads, shufRandom, 0.1);
+
+            // the threads do not score their tokens, so do it here once with the mixed model
+            if (storeScores) {
+                for (int row = 0; row < matrix.numRows(); row++) storeScore(matrix, row, cue);
+            }
+            return;
+        }
+
+        int[] permutation = matrix.newPermutationBuffer();
+        int[] ids = matrix.featureIds;
+
+        // begin and end are scored in one pass (updates of one do not change the score of the other)
+        Perceptron[] beginEnd = {beginPerceptron, endPerceptron};
+        double[] scores = new double[2];
+
+        for (int i = 0; i < nEpochs; i++) {
+            System.out.print(i+1 + " ");
+            boolean isLastEpoch = i == nEpochs - 1;
+
+            for (int document = 0; document < matrix.numDocuments(); document++) {
+                int numRows = matrix.shuffleDocument(document, permutation, shufRandom);
+
+                // perform training step
+                for (int k = 0; k < numRows; k++) {
+                    int row = permutation[k];
+                    int begin = matrix.rowBegin(row);
+                    int end = matrix.rowEnd(row);
+
+                    if (cue) {
+                        cuePerceptron.train(ids, begin, end, matrix.hasLabel(row, TrainingMatrix.CUE), 0.1);
+                    } else {
+                        Perceptron.score(beginEnd, ids, begin, end, false, scores);
+                        beginPerceptron.trainWithScore(ids, begin, end, scores[0], matrix.hasLabel(row, TrainingMatrix.BEGIN), 0.1);
+                        endPerceptron.trainWithScore(ids, begin, end, scores[1], matrix.hasLabel(row, TrainingMatrix.END), 0.1);
+                    }
+                }
+
+                // compute new scores, only the ones after the last epoch are kept
+                if (isLastEpoch && storeScores) {
+                    for (int k = 0; k < numRows; k++) storeScore(matrix, permutation[k], cue);
+                }
+            }
+        }
+        System.out.println();
+    }
+
+    /**
+     * Score a row of the training matrix with the averaged perceptron(s) and store the result in its token
+     * @param matrix
+     * @param row
+     * @param cue store the cue score if true, begin and end scores otherwise
+     */
+    void storeScore(TrainingMatrix matrix, int row, boolean cue) {
+        int[] ids = matrix.featureIds;
+        int begin = matrix.rowBegin(row);
+        int end = matrix.rowEnd(row);
+        Token token = matrix.getToken(row);
+
+        if (cue) {
+            token.perceptronCueScore = cuePerceptron.score(ids, begin, end, true);
+        } else {
+            double[] scores = new double[2];
+            Perceptron.score(new Perceptron[] {beginPerceptron, endPerceptron}, ids, begin, end, true, scores);
+            token.perceptronBeginScore = scores[0];
+            token.perceptronEndScore = scores[1];
+        }
+    }
+
     /**
      * Train cue perceptron for nEpochs
      * @param trainDocuments
@@ -129,23 +277,33 @@ public class QuotationPerceptrons implements Serializable {
      */
     public void trainCuePerceptron(List<Document> trainDocuments, int nEpochs) {
         System.out.println("Training cue perceptron ");
+        fitCuePerceptron(trainDocuments, nEpochs, true);
+        printCueWeights(nEpochs);
+    }
 
+    /**
+     * Train cue perceptron for nEpochs without any output
+     * @param trainDocuments
+     * @param nEpochs
+     * @param storeScores whether to store the scores after the last epoch in the tokens
+     */
+    void fitCuePerceptron(List<Document> trainDocuments, int nEpochs, boolean storeScores) {
         // shuffle documents before training
         List<Document> shuffledDocuments = new ArrayList<>(trainDocuments);
         Collections.shuffle(shuffledDocuments, new Random(123));
 
-        // train for n epochs
-        for (int i = 0; i < nEpochs; i++) {
-            System.out.print(i+1 + " ");
-            for (Document document : shuffledDocuments) {
-                scoreAndUpdateCuePerceptron(document, true);
-            }
-        }
-        System.out.println();
+        // flatten the training data once, then train for n epochs
+        TrainingMatrix matrix = TrainingMatrix.compile(shuffledDocuments);
+        trainFromMatrix(matrix, nEpochs, true, storeScores);
+    }
 
-        // print weights
+    /**
+     * Write the cue perceptron weights to the log directory
+     * @param nEpochs
+     */
+    void printCueWeights(int nEpochs) {
         try {
-            cuePerceptron.printWeights(NewStaticPrinter.fileName + ".weightsCue" + nEpochs);
+            cuePerceptron.printWeights(NewStaticPrinter.getFileName() + ".weightsCue" + nEpochs);
         } catch (FileNotFoundException e) {
             System.out.println("Could not print perceptron weights");
         }
@@ -210,40 +368,107 @@ public class QuotationPerceptrons implements Serializable {
     /**
      * Train a cue model by jackknifing. This is to prevent over-performance of the cue model on the training data.
      * We accomplish this by doing n-fold cross validation.
+     * The folds are trained concurrently, each with its own perceptron and shuffling seed, so the result does not
+     * depend on the number of threads. Scores and labels are written to the tokens afterwards, fold by fold.
      * @param trainDocuments
      * @param nFolds
      * @param nEpochs
      * @param marginCue
      */
-    public void jackknifeCue(List<Document> trainDocuments, int nFolds, int nEpochs, double marginCue) {
+    public void jackknifeCue(List<Document> trainDocuments, int nFolds, final int nEpochs, double marginCue) {
         // generate folds
         List<Interval> testOffsets = getCVTestOffsets(trainDocuments.size(), nFolds);
-        System.out.println("Jackknifing training cue ");
 
-        // for each fold, train a classifier and apply
-        for (int fold = 0; fold < nFolds; fold++) {
-            System.out.print(fold + ": ");
+        int numThreads = StaticConfig.current().numJackknifeThreads;
+        if (numThreads <= 0) numThreads = Runtime.getRuntime().availableProcessors();
+        numThreads = Math.min(numThreads, nFolds);
+        System.out.println("Jackknifing training cue (" + nFolds + " folds on " + numThreads + " threads)");
 
-            // split data
-            Interval testInterval = testOffsets.get(fold);
-            List<Document> trainDocsFold = getTrainData(trainDocuments, testInterval);
-            List<Document> testDocsFold = getTestData(trainDocuments, testInterval);
+        // for each fold, train a classifier and score its test documents
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<double[]>> futures = new ArrayList<>(nFolds);
+        List<List<Document>> testDocsFolds = new ArrayList<>(nFolds);
+        List<Perceptron> foldPerceptrons = new ArrayList<>(nFolds);
 
-            // train model
-            cuePerceptron = new Perceptron();
-            cuePerceptron.marginPositive = marginCue;
-            trainCuePerceptron(trainDocsFold, nEpochs);
+        try {
+            for (int fold = 0; fold < nFolds; fold++) {
+                // split data
+                Interval testInterval = testOffsets.get(fold);
+                final List<Document> trainDocsFold = getTrainData(trainDocuments, testInterval);
+                final List<Document> testDocsFold = getTestData(trainDocuments, testInterval);
+                testDocsFolds.add(testDocsFold);
+
+                // train model
+                Perceptron foldPerceptron = new Perceptron();
+                foldPerceptron.marginPositive = marginCue;
+                foldPerceptrons.add(foldPerceptron);
+                final QuotationPerceptrons foldModel = new QuotationPerceptrons(null, null, foldPerceptron);
+                foldModel.shufRandom = new Random(JACKKNIFE_SEED + fold);
+
+                futures.add(executor.submit(new Callable<double[]>() {
+                    @Override
+                    public double[] call() {
+                        foldModel.fitCuePerceptron(trainDocsFold, nEpochs, false);
+                        return foldModel.scoreCues(testDocsFold);
+                    }
+                }));
+            }
 
-            // apply model and evaluate
-            predictCues(testDocsFold);
-            cueScoreToLabel(testDocsFold);
+            // apply models and evaluate in fold order; test folds may overlap at their edges, later folds win
+            for (int fold = 0; fold < nFolds; fold++) {
+                double[] scores;
+                try {
+                    scores = futures.get(fold).get();
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new Error(e);
+                }
 
-            EvaluateClassifier.evaluateAndPrint(testDocsFold, null, null, null, " JK" + fold);
+                System.out.print(fold + ": ");
+                cuePerceptron = foldPerceptrons.get(fold);
+                List<Document> testDocsFold = testDocsFolds.get(fold);
+                setCueScores(testDocsFold, scores);
+                cueScoreToLabel(testDocsFold);
+
+                EvaluateClassifier.evaluateAndPrint(testDocsFold, null, null, null, " JK" + fold);
+            }
+        } finally {
+            executor.shutdown();
         }
 
+        printCueWeights(nEpochs);
         EvaluateClassifier.evaluateAndPrint(trainDocuments, null, null, null, "OVERALL");
     }
 
+    /**
+     * Score all tokens of the documents with the averaged cue perceptron, without changing the tokens
+     * @param documents
+     * @return scores in token order
+     */
+    double[] scoreCues(List<Document> documents) {
+        cuePerceptron.finalizeAverage();
+
+        int numTokens = 0;
+        for (Document document : documents) numTokens += document.tokenList.size();
+
+        double[] scores = new double[numTokens];
+        int i = 0;
+        for (Document document : documents)
+            for (Token token : document.tokenList) scores[i++] = cuePerceptron.score(token.boundaryFeatureSet, true);
+
+        return scores;
+    }
+
+    /**
+     * Store cue scores computed by scoreCues() in the tokens
+     * @param documents
+     * @param scores
+     */
+    void setCueScores(List<Document> documents, double[] scores) {
+        int i = 0;
+        for (Document document : documents)
+            for (Token token : document.tokenList) token.perceptronCueScore = scores[i++];
+    }
+
     /**
      * Trains the begin and end perceptron for n epochs
      * @param trainDocuments
@@ -256,19 +481,14 @@ public class QuotationPerceptrons implements Serializable {
         List<Document> shuffledDocuments = new ArrayList<>(trainDocuments);
         Collections.shuffle(shuffledDocuments, new Random(123));
 
-        // train perceptrons for n epochs
-        for (int i = 0; i < nEpochs; i++) {
-            System.out.print(i+1 + " ");
-            for (Document document : shuffledDocuments) {
-                scoreAndUpdatePerceptron(document, true);
-            }
-        }
-        System.out.println();
+        // flatten the training data once, then train perceptrons for n epochs
+        TrainingMatrix matrix = TrainingMatrix.compile(shuffledDocuments);
+        trainFromMatrix(matrix, nEpochs, false, true);
 
         // print weights
         try {
-            beginPerceptron.printWeights(NewStaticPrinter.fileName + ".weightsBegin" + nEpochs);
-            endPerceptron.printWeights(NewStaticPrinter.fileName + ".weightsEnd" + nEpochs);
+            beginPerceptron.printWeights(NewStaticPrinter.getFileName() + ".weightsBegin" + nEpochs);
+            endPerceptron.printWeights(NewStaticPrinter.getFileName() + ".weightsEnd" + nEpochs);
         } catch (FileNotFoundException e) {
             System.out.println("Could not print perceptron weights");
         }
@@ -280,6 +500,8 @@ public class QuotationPerceptrons implements Serializable {
      * @param documents
      */
     public void predictCues(List<Document> documents) {
+        cuePerceptron.finalizeAverage();
+
         for (Document document : documents) {
             scoreAndUpdateCuePerceptron(document, false);
         }
@@ -290,6 +512,9 @@ public class QuotationPerceptrons implements Serializable {
      * @param documents
      */
     public void predictBeginEnd(List<Document> documents) {
+        beginPerceptron.finalizeAverage();
+        endPerceptron.finalizeAverage();
+
         for (Document document : documents) {
             scoreAndUpdatePerceptron(document, false);
         }
@@ -301,6 +526,7 @@ public class QuotationPerceptrons implements Serializable {
      */
     public void cueScoreToLabel(List<Document> documents) {
         for (Document document: documents) {
+            SpanFeatures.invalidateCache(document);
             for (Token token : document.tokenList) {
                 if (token.perceptronCueScore > 0) {
                     token.isPredictedCue = true;
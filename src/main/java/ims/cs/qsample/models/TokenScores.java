@@ -0,0 +1,102 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.qsample.models;
+
+import ims.cs.lingdata.Document;
+import ims.cs.lingdata.Token;
+import ims.cs.qsample.perceptron.Perceptron;
+
+import java.util.Arrays;
+
+/**
+ * Cached begin and end scores of the tokens of a document under a span model (see HigherSpanModel), with and without
+ * averaging.
+ * A cache belongs to one weight version of one model and is replaced when the version changes. Updates from the spans
+ * of the document itself only advance the step of the cache, so that they do not touch any shared state; each score
+ * is stamped with the step it was computed in.
+ * The cache is kept by the document and dropped with it. A document is only processed by one thread at a time, so
+ * the cache needs no synchronization.
+ */
+public class TokenScores {
+
+    final long weightVersion;
+    final int tokenFeatureVersion;
+    final PartialScores[] begin = new PartialScores[2];
+    final PartialScores[] end = new PartialScores[2];
+
+    // advanced whenever the weights may have changed while the weight version stayed the same
+    long step = 0;
+
+    /**
+     * Cached scores of a perceptron on the tokens of a document, each stamped with the step of the cache
+     */
+    static class PartialScores {
+        final double[] scores;
+        final long[] steps;
+
+        PartialScores(int numTokens) {
+            scores = new double[numTokens];
+            steps = new long[numTokens];
+            Arrays.fill(steps, -1);
+        }
+
+        double get(Perceptron perceptron, Token token, boolean average, long step) {
+            int position = token.predPosition;
+            if (steps[position] != step) {
+                scores[position] = perceptron.score(token.boundaryFeatureSet, average);
+                steps[position] = step;
+            }
+            return scores[position];
+        }
+    }
+
+    TokenScores(Document document, long weightVersion) {
+        this.weightVersion = weightVersion;
+        tokenFeatureVersion = document.tokenFeatureVersion;
+        int numTokens = document.tokenList.size();
+        for (int i = 0; i < 2; i++) {
+            begin[i] = new PartialScores(numTokens);
+            end[i] = new PartialScores(numTokens);
+        }
+    }
+
+    /**
+     * Token score cache of a document for a weight version, created on first use and replaced if the version or the
+     * token features have changed since
+     * @param document
+     * @param weightVersion
+     * @return
+     */
+    static TokenScores of(Document document, long weightVersion) {
+        TokenScores scores = document.tokenScores;
+        if (scores == null || scores.weightVersion != weightVersion || scores.tokenFeatureVersion != document.tokenFeatureVersion) {
+            scores = new TokenScores(document, weightVersion);
+            document.tokenScores = scores;
+        }
+        return scores;
+    }
+
+    /**
+     * Invalidate the cached scores of a document, if there are any
+     * @param document
+     */
+    static void advance(Document document) {
+        TokenScores scores = document.tokenScores;
+        if (scores != null) scores.step++;
+    }
+}
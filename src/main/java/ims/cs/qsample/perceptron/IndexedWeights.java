@@ -0,0 +1,943 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.qsample.perceptron;
+
+import ims.cs.qsample.features.FeatureIndexMap;
+import ims.cs.qsample.features.FeatureIntSet;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Store a set of weights in primitive arrays indexed by the feature indices of FeatureIntSet.
+ * Row 0 holds the bias, feature index i is stored in row i+1.
+ * A store can have several columns, so that perceptrons that see the same features (e.g., begin and end) keep their
+ * weights side by side in one row and can be scored in a single pass. Each column has its own example counter.
+ * When serialized, the feature strings are written along with the weights, so models do not depend on the
+ * indices that happened to be assigned in the JVM that trained them.
+ *
+ * With feature hashing (see HashedFeatureIndexMap), feature indices are signed buckets: a negative index ~b adds
+ * -1 times the weight of bucket b. The arrays never grow beyond the number of buckets, and models store buckets
+ * instead of feature strings.
+ *
+ * Averaging is done lazily: each entry remembers the example counter at its last update, and the weight sum of an
+ * entry is only brought up to date when it changes. The counter of a column is advanced once per example by
+ * nextExample().
+ *
+ * Between beginLockFree() and endLockFree(), several threads may update the weights concurrently without locking
+ * (Hogwild-style). Concurrent updates to the same entry may occasionally get lost, which does not hurt training much.
+ * Averaging is then kept per thread and merged when lock-free training ends.
+ */
+public class IndexedWeights extends Weights {
+    private static final long serialVersionUID = -4213786522148693715L;
+
+    // name under which the bias is printed and serialized
+    public static final String BIAS = "BIAS";
+
+    static final int BIAS_ROW = 0;
+    static final int INITIAL_CAPACITY = 1 << 16;
+
+    // number of weights per row; the weight of row r in column c is stored at slot r * numColumns + c
+    final int numColumns;
+
+    // current weights (volatile, as the array may be replaced by a concurrent grow())
+    transient volatile double[] weightArray;
+
+    // sum of the weights of all examples up to the stamp of each slot, and the stamps themselves
+    transient double[] weightSumArray;
+    transient int[] stampArray;
+
+    // number of examples seen so far, per column
+    int[] exampleCounters;
+
+    // averaged weights as of the last call to finalizeAverage(), null if the weights have changed since
+    transient volatile double[] averagedArray;
+
+    // state for lock-free training, null outside of it
+    transient AtomicInteger[] sharedCounters;
+    transient int[] sharedCounterStarts;
+    transient ThreadLocal<ThreadAccumulator> threadAccumulator;
+    transient List<ThreadAccumulator> threadAccumulators;
+
+    /**
+     * Averaging state of a single thread during lock-free training.
+     * For every update of value v in the example with (relative) counter t, v*t is added to the slot of the update.
+     */
+    static class ThreadAccumulator {
+        double[] weightedUpdates = new double[INITIAL_CAPACITY];
+
+        // counter of the current example of each column relative to the start of lock-free training,
+        // -1 if none reserved yet
+        int[] counters;
+
+        ThreadAccumulator(int numColumns) {
+            counters = new int[numColumns];
+            Arrays.fill(counters, -1);
+        }
+
+        void add(int slot, double value) {
+            if (slot >= weightedUpdates.length) {
+                int newLength = weightedUpdates.length;
+                while (newLength <= slot) newLength *= 2;
+                weightedUpdates = Arrays.copyOf(weightedUpdates, newLength);
+            }
+            weightedUpdates[slot] += value;
+        }
+    }
+
+    public IndexedWeights() {
+        this(1);
+    }
+
+    /**
+     * Set up a store with the specified number of columns
+     * @param numColumns
+     */
+    public IndexedWeights(int numColumns) {
+        this(numColumns, initialRows());
+    }
+
+    /**
+     * Set up a store with the specified number of columns and rows
+     * @param numColumns
+     * @param numRows
+     */
+    IndexedWeights(int numColumns, int numRows) {
+        super(false);
+        this.numColumns = numColumns;
+        this.exampleCounters = new int[numColumns];
+        allocate(numRows);
+    }
+
+    public int getNumColumns() { return numColumns; }
+
+    /**
+     * Set up empty arrays for the specified number of rows
+     * @param numRows
+     */
+    void allocate(int numRows) {
+        weightArray = new double[numRows * numColumns];
+        weightSumArray = new double[numRows * numColumns];
+        stampArray = new int[numRows * numColumns];
+        averagedArray = null;
+    }
+
+    /**
+     * Row in which the weight of a feature index is stored
+     * @param featureIndex
+     * @return
+     */
+    static int row(int featureIndex) {
+        if (featureIndex < 0) return ~featureIndex + 1;   /* negatively signed bucket */
+        else return featureIndex + 1;
+    }
+
+    /**
+     * Sign with which a feature index contributes to the weight in its row
+     * @param featureIndex
+     * @return
+     */
+    static double sign(int featureIndex) {
+        if (featureIndex < 0) return -1;
+        else return 1;
+    }
+
+    /**
+     * Upper bound on the number of rows: one per bucket plus the bias if features are hashed, unbounded otherwise
+     * @return
+     */
+    static int maxRows() {
+        FeatureIndexMap featureIndexMap = FeatureIntSet.getFeatureIndexMap();
+        if (featureIndexMap.getHashBits() > 0) return row(featureIndexMap.size() - 1) + 1;
+        else return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Number of rows to allocate for a new store
+     * @return
+     */
+    static int initialRows() {
+        return Math.min(INITIAL_CAPACITY, maxRows());
+    }
+
+    /**
+     * Slot of a row and column in the arrays
+     * @param row
+     * @param column
+     * @return
+     */
+    int slot(int row, int column) {
+        return row * numColumns + column;
+    }
+
+    /**
+     * Grow the arrays so that the specified row fits
+     * @param row
+     */
+    void ensureCapacity(int row) {
+        if (row < capacity()) return;
+        grow(row);
+    }
+
+    /**
+     * Grow the arrays so that the specified row fits. Synchronized so that concurrent growing during lock-free
+     * training does not drop rows.
+     * @param row
+     */
+    synchronized void grow(int row) {
+        if (row < capacity()) return;
+
+        int newRows = Math.max(1, capacity());
+        while (newRows <= row) newRows *= 2;
+        newRows = Math.max(row + 1, Math.min(newRows, maxRows()));
+
+        weightArray = Arrays.copyOf(weightArray, newRows * numColumns);
+        weightSumArray = Arrays.copyOf(weightSumArray, newRows * numColumns);
+        stampArray = Arrays.copyOf(stampArray, newRows * numColumns);
+    }
+
+    /**
+     * Feature index of a feature string
+     * @param feature
+     * @return
+     */
+    static int indexOf(String feature) {
+        return FeatureIntSet.getFeatureIndexMap().getIndex(feature);
+    }
+
+    /**
+     * Most recent weight stored in a row and column
+     * @param row
+     * @param column
+     * @return
+     */
+    double getRow(int row, int column) {
+        int slot = slot(row, column);
+        double[] weights = weightArray;
+        if (slot < weights.length) return weights[slot];
+        else return 0;
+    }
+
+    /**
+     * Sum of the weights of a slot over all examples seen so far
+     * @param slot
+     * @param column
+     * @return
+     */
+    double slotSum(int slot, int column) {
+        return weightSumArray[slot] + (exampleCounters[column] - stampArray[slot]) * weightArray[slot];
+    }
+
+    /**
+     * Averaged weight of a slot, computed from the weight sums
+     * @param slot
+     * @param column
+     * @return
+     */
+    double computeSlotAvg(int slot, int column) {
+        if (!doAveraging || exampleCounters[column] == 0) return weightArray[slot];
+        return slotSum(slot, column) / exampleCounters[column];
+    }
+
+    /**
+     * Averaged weight stored in a row and column. Uses the finalized average if it is available.
+     * @param row
+     * @param column
+     * @return
+     */
+    double getRowAvg(int row, int column) {
+        int slot = slot(row, column);
+
+        double[] averaged = averagedArray;
+        if (averaged != null) {
+            if (slot < averaged.length) return averaged[slot];
+            else return 0;
+        }
+
+        if (slot >= weightArray.length) return 0;
+        return computeSlotAvg(slot, column);
+    }
+
+    /**
+     * Update the weight in a row and column by value
+     * @param row
+     * @param column
+     * @param value
+     */
+    void updateRow(int row, int column, double value) {
+        ensureCapacity(row);
+        dropAverage();
+        int slot = slot(row, column);
+
+        if (sharedCounters != null) {
+            updateSlotLockFree(slot, column, value);
+            return;
+        }
+
+        // bring the weight sum up to date before changing the weight
+        if (doAveraging) {
+            weightSumArray[slot] = slotSum(slot, column);
+            stampArray[slot] = exampleCounters[column];
+        }
+
+        weightArray[slot] += value;
+    }
+
+    /**
+     * Drop the finalized averages after a change of the weights. The field is only written if there is a snapshot to
+     * drop, so that updates during training (when there is none) only read it and do not invalidate the cache line
+     * of other training threads.
+     */
+    void dropAverage() {
+        if (averagedArray != null) averagedArray = null;
+    }
+
+    /**
+     * Advance the example counter of a column. To be called once after all updates for an example are done.
+     * @param column
+     */
+    public void nextExample(int column) {
+        if (sharedCounters != null) {
+            threadAccumulator.get().counters[column] = -1;
+            return;
+        }
+
+        exampleCounters[column]++;
+    }
+
+    /**
+     * Update a slot during lock-free training. The first update of an example reserves a counter for it.
+     * @param slot
+     * @param column
+     * @param value
+     */
+    void updateSlotLockFree(int slot, int column, double value) {
+        ThreadAccumulator accumulator = threadAccumulator.get();
+        if (accumulator.counters[column] < 0)
+            accumulator.counters[column] = sharedCounters[column].getAndIncrement() - sharedCounterStarts[column];
+
+        // racy, but benign: a concurrent update of the same slot may get lost
+        weightArray[slot] += value;
+
+        if (doAveraging) accumulator.add(slot, value * accumulator.counters[column]);
+    }
+
+    /**
+     * Start lock-free training. Until endLockFree() is called, updates from several threads may run concurrently.
+     * Scoring with averaged weights is not possible in this phase. Does nothing if lock-free training is already on,
+     * so perceptrons sharing this store can each call it.
+     */
+    public synchronized void beginLockFree() {
+        if (sharedCounters != null) return;
+
+        materialize();
+        dropAverage();
+
+        sharedCounterStarts = exampleCounters.clone();
+        threadAccumulators = Collections.synchronizedList(new ArrayList<ThreadAccumulator>());
+        threadAccumulator = new ThreadLocal<ThreadAccumulator>() {
+            @Override
+            protected ThreadAccumulator initialValue() {
+                ThreadAccumulator accumulator = new ThreadAccumulator(numColumns);
+                threadAccumulators.add(accumulator);
+                return accumulator;
+            }
+        };
+
+        AtomicInteger[] counters = new AtomicInteger[numColumns];
+        for (int column = 0; column < numColumns; column++) counters[column] = new AtomicInteger(exampleCounters[column]);
+        sharedCounters = counters;
+    }
+
+    /**
+     * End lock-free training and merge the averaging state of all threads.
+     * Must only be called when no other thread updates the weights anymore. Does nothing if lock-free training is off.
+     */
+    public synchronized void endLockFree() {
+        if (sharedCounters == null) return;
+
+        for (int column = 0; column < numColumns; column++) exampleCounters[column] = sharedCounters[column].get();
+        sharedCounters = null;
+
+        // the weight sum of a slot over the lock-free phase is (counter - start) times its final weight, minus
+        // the updates weighted by how long they had not been applied yet
+        if (doAveraging) {
+            for (int slot = 0; slot < weightArray.length; slot++) {
+                int column = slot % numColumns;
+                double sum = slotSum(slot, column);
+                for (ThreadAccumulator accumulator : threadAccumulators) {
+                    if (slot < accumulator.weightedUpdates.length) sum -= accumulator.weightedUpdates[slot];
+                }
+
+                weightSumArray[slot] = sum;
+                stampArray[slot] = exampleCounters[column];
+            }
+        }
+
+        threadAccumulator = null;
+        threadAccumulators = null;
+    }
+
+    /**
+     * Compute the averaged weights of all rows once, so that subsequent calls to getAvg are single array reads.
+     * The snapshot is dropped as soon as a weight is updated. Does nothing if the snapshot is still valid.
+     */
+    public void finalizeAverage() {
+        if (averagedArray != null) return;
+
+        double[] averaged = new double[weightArray.length];
+        for (int slot = 0; slot < averaged.length; slot++)
+            averaged[slot] = computeSlotAvg(slot, slot % numColumns);
+        averagedArray = averaged;
+    }
+
+    /**
+     * Bring the weight sums of all slots up to the current example counters
+     */
+    void materialize() {
+        if (!doAveraging) return;
+        for (int slot = 0; slot < weightArray.length; slot++) {
+            int column = slot % numColumns;
+            weightSumArray[slot] = slotSum(slot, column);
+            stampArray[slot] = exampleCounters[column];
+        }
+    }
+
+    /**
+     * Deep copy of the weights, e.g., for a training thread
+     * @return
+     */
+    public IndexedWeights copy() {
+        IndexedWeights copy = new IndexedWeights(numColumns);
+        copy.doAveraging = doAveraging;
+        copy.exampleCounters = exampleCounters.clone();
+        copy.weightArray = weightArray.clone();
+        copy.weightSumArray = weightSumArray.clone();
+        copy.stampArray = stampArray.clone();
+        return copy;
+    }
+
+    /**
+     * Parameter mixing: replace the weights of a column by a weighted combination of copies that were trained
+     * independently, starting from these weights. The current weights become the mixture of the copies' weights, while
+     * the weight sums for averaging collect the trajectories of all copies, so that the averaged weights are the
+     * average over all examples seen by any copy.
+     * @param parts copies made by copy() and trained since
+     * @param mixingWeights one coefficient per copy, should sum to 1
+     * @param column column to mix, other columns are not changed
+     */
+    public void mix(IndexedWeights[] parts, double[] mixingWeights, int column) {
+        materialize();
+
+        int numRows = capacity();
+        for (IndexedWeights part : parts) {
+            part.materialize();
+            numRows = Math.max(numRows, part.capacity());
+        }
+        ensureCapacity(numRows - 1);
+
+        int counter = exampleCounters[column];
+        int newCounter = counter;
+        for (IndexedWeights part : parts) newCounter += part.exampleCounters[column] - counter;
+
+        for (int row = 0; row < numRows; row++) {
+            int slot = slot(row, column);
+            double weight = 0;
+            double sum = weightSumArray[slot];
+
+            for (int k = 0; k < parts.length; k++) {
+                IndexedWeights part = parts[k];
+                // copies are at least as large as the original, rows they lack are untouched and zero
+                if (slot < part.weightArray.length) {
+                    weight += mixingWeights[k] * part.weightArray[slot];
+                    sum += part.weightSumArray[slot] - weightSumArray[slot];
+                }
+            }
+
+            weightArray[slot] = weight;
+            weightSumArray[slot] = sum;
+            stampArray[slot] = newCounter;
+        }
+
+        exampleCounters[column] = newCounter;
+        dropAverage();
+    }
+
+    /**
+     * Remove the features of a column whose absolute averaged weight is below a threshold. The bias is kept.
+     * @param column
+     * @param threshold
+     * @return number of features kept
+     */
+    public int prune(int column, double threshold) {
+        materialize();
+        dropAverage();
+
+        int numKept = 0;
+        for (int row = BIAS_ROW + 1; row < capacity(); row++) {
+            int slot = slot(row, column);
+            if (!isActive(slot)) continue;
+
+            if (Math.abs(computeSlotAvg(slot, column)) < threshold) removeSlot(slot);
+            else numKept++;
+        }
+
+        return numKept;
+    }
+
+    /**
+     * Keep only the k features of a column with the largest absolute averaged weights. The bias is kept.
+     * @param column
+     * @param k
+     * @return number of features kept
+     */
+    public int pruneTopK(int column, int k) {
+        materialize();
+        dropAverage();
+
+        // find the k-th largest magnitude
+        double[] magnitudes = new double[numFeatures(column)];
+        int numActive = 0;
+        for (int row = BIAS_ROW + 1; row < capacity(); row++) {
+            int slot = slot(row, column);
+            if (isActive(slot)) magnitudes[numActive++] = Math.abs(computeSlotAvg(slot, column));
+        }
+
+        if (numActive <= k) return numActive;
+
+        Arrays.sort(magnitudes);
+        double threshold = magnitudes[numActive - k];
+
+        // features at the threshold are kept in row order until k features are reached
+        int numAbove = 0;
+        for (int i = numActive - k; i < numActive; i++)
+            if (magnitudes[i] > threshold) numAbove++;
+        int numTies = k - numAbove;
+
+        for (int row = BIAS_ROW + 1; row < capacity(); row++) {
+            int slot = slot(row, column);
+            if (!isActive(slot)) continue;
+
+            double magnitude = Math.abs(computeSlotAvg(slot, column));
+            if (magnitude > threshold) continue;
+            if (magnitude == threshold && numTies > 0) numTies--;
+            else removeSlot(slot);
+        }
+
+        return k;
+    }
+
+    /**
+     * Reset a slot as if it had never been updated. Weight sums must be materialized.
+     * @param slot
+     */
+    void removeSlot(int slot) {
+        weightArray[slot] = 0;
+        weightSumArray[slot] = 0;
+    }
+
+    /**
+     * Number of features with a weight in a column, not counting the bias
+     * @param column
+     * @return
+     */
+    public int numFeatures(int column) {
+        int numFeatures = 0;
+        for (int row = BIAS_ROW + 1; row < capacity(); row++)
+            if (isActive(slot(row, column))) numFeatures++;
+        return numFeatures;
+    }
+
+    /**
+     * Shrink the arrays to the last row that holds a weight, e.g., after pruning
+     */
+    public synchronized void compact() {
+        int numRows = BIAS_ROW + 1;
+        for (int row = capacity() - 1; row > BIAS_ROW; row--) {
+            if (isActiveRow(row)) {
+                numRows = row + 1;
+                break;
+            }
+        }
+
+        weightArray = Arrays.copyOf(weightArray, numRows * numColumns);
+        weightSumArray = Arrays.copyOf(weightSumArray, numRows * numColumns);
+        stampArray = Arrays.copyOf(stampArray, numRows * numColumns);
+        if (averagedArray != null) averagedArray = Arrays.copyOf(averagedArray, numRows * numColumns);
+    }
+
+    /**
+     * Get the most recent weight of a feature index. Returns 0 if the feature is unknown.
+     * @param featureIndex
+     * @param column
+     * @return
+     */
+    public double get(int featureIndex, int column) {
+        return sign(featureIndex) * getRow(row(featureIndex), column);
+    }
+
+    /**
+     * Get the averaged weight of a feature index. Returns 0 if the feature is unknown.
+     * @param featureIndex
+     * @param column
+     * @return
+     */
+    public double getAvg(int featureIndex, int column) {
+        return sign(featureIndex) * getRowAvg(row(featureIndex), column);
+    }
+
+    /**
+     * Update the weight of a feature index by value
+     * @param featureIndex
+     * @param column
+     * @param value
+     */
+    public void update(int featureIndex, int column, double value) {
+        updateRow(row(featureIndex), column, sign(featureIndex) * value);
+    }
+
+    /**
+     * Get the most recent weight of a feature string (or the bias)
+     * @param feature
+     * @param column
+     * @return
+     */
+    public double get(String feature, int column) {
+        if (BIAS.equals(feature)) return getBias(column);
+
+        int featureIndex = indexOf(feature);
+        if (featureIndex == FeatureIndexMap.ABSENT) return 0;
+        else return get(featureIndex, column);
+    }
+
+    /**
+     * Get the averaged weight of a feature string (or the bias)
+     * @param feature
+     * @param column
+     * @return
+     */
+    public double getAvg(String feature, int column) {
+        if (BIAS.equals(feature)) return getBiasAvg(column);
+
+        int featureIndex = indexOf(feature);
+        if (featureIndex == FeatureIndexMap.ABSENT) return 0;
+        else return getAvg(featureIndex, column);
+    }
+
+    /**
+     * Update the weight of a feature string (or the bias) by value
+     * @param feature
+     * @param column
+     * @param value
+     */
+    public void update(String feature, int column, double value) {
+        if (BIAS.equals(feature)) {
+            updateBias(column, value);
+        } else {
+            // features unknown to a frozen dictionary are not learned
+            int featureIndex = indexOf(feature);
+            if (featureIndex != FeatureIndexMap.ABSENT) update(featureIndex, column, value);
+        }
+    }
+
+    public double getBias(int column) { return getRow(BIAS_ROW, column); }
+
+    public double getBiasAvg(int column) { return getRowAvg(BIAS_ROW, column); }
+
+    public void updateBias(int column, double value) { updateRow(BIAS_ROW, column, value); }
+
+    /**
+     * Score the feature indices ids[from] .. ids[to-1] in all columns at once. The bias is included.
+     * @param ids
+     * @param from
+     * @param to
+     * @param average use averaged weights?
+     * @param scores receives one score per column
+     */
+    public void scoreColumns(int[] ids, int from, int to, boolean average, double[] scores) {
+        initColumnScores(average, scores);
+        for (int i = from; i < to; i++) addColumnScores(row(ids[i]), sign(ids[i]), average, scores);
+    }
+
+    /**
+     * Score an int feature set in all columns at once. The bias is included.
+     * @param featureSet
+     * @param average use averaged weights?
+     * @param scores receives one score per column
+     */
+    public void scoreColumns(FeatureIntSet featureSet, boolean average, double[] scores) {
+        initColumnScores(average, scores);
+        int size = featureSet.size();
+        for (int i = 0; i < size; i++) {
+            int featureIndex = featureSet.indexAt(i);
+            addColumnScores(row(featureIndex), sign(featureIndex), average, scores);
+        }
+    }
+
+    /**
+     * Set the scores of all columns to their bias
+     * @param average
+     * @param scores
+     */
+    void initColumnScores(boolean average, double[] scores) {
+        for (int column = 0; column < numColumns; column++) {
+            if (average) scores[column] = getRowAvg(BIAS_ROW, column);
+            else scores[column] = getRow(BIAS_ROW, column);
+        }
+    }
+
+    /**
+     * Add the weights of all columns of a row to the scores
+     * @param row
+     * @param sign sign of the feature index
+     * @param average
+     * @param scores
+     */
+    void addColumnScores(int row, double sign, boolean average, double[] scores) {
+        int firstSlot = slot(row, 0);
+
+        double[] weights;
+        if (average) weights = averagedArray;
+        else weights = weightArray;
+
+        if (weights != null) {   /* plain weights or finalized averages: one read per column */
+            if (firstSlot >= weights.length) return;
+            for (int column = 0; column < numColumns; column++) scores[column] += sign * weights[firstSlot + column];
+        } else {                 /* averages that have not been finalized */
+            if (firstSlot >= weightArray.length) return;
+            for (int column = 0; column < numColumns; column++)
+                scores[column] += sign * computeSlotAvg(firstSlot + column, column);
+        }
+    }
+
+    @Override
+    public double get(String feature) {
+        return get(feature, 0);
+    }
+
+    @Override
+    public double getAvg(String feature) {
+        return getAvg(feature, 0);
+    }
+
+    @Override
+    public void update(String feature, double value) {
+        update(feature, 0, value);
+    }
+
+    @Override
+    public void resetWeights() {
+        Arrays.fill(exampleCounters, 0);
+        allocate(initialRows());
+    }
+
+    /**
+     * Name of the feature stored in a row (the name of the positive bucket if features are hashed)
+     * @param row
+     * @return
+     */
+    static String featureOfRow(int row) {
+        if (row == BIAS_ROW) return BIAS;
+        else return FeatureIntSet.getFeatureIndexMap().getFeature(row - 1);
+    }
+
+    /**
+     * Number of rows that can hold weights without growing the arrays
+     * @return
+     */
+    int capacity() {
+        return weightArray.length / numColumns;
+    }
+
+    /**
+     * Checks whether a slot has ever been touched by an update
+     * @param slot
+     * @return
+     */
+    boolean isActive(int slot) {
+        return weightArray[slot] != 0 || weightSumArray[slot] != 0;
+    }
+
+    /**
+     * Checks whether any column of a row has ever been touched by an update
+     * @param row
+     * @return
+     */
+    boolean isActiveRow(int row) {
+        for (int column = 0; column < numColumns; column++)
+            if (isActive(slot(row, column))) return true;
+        return false;
+    }
+
+    /**
+     * Write all non-zero weights of a column to a stream, prepend each line with the specified prefix
+     * @param out
+     * @param prefix
+     * @param column
+     */
+    public void printWeights(PrintStream out, String prefix, int column) {
+        for (int row = 0; row < capacity(); row++) {
+            int slot = slot(row, column);
+            if (row == BIAS_ROW || isActive(slot)) {
+                out.println(prefix + "-->" + featureOfRow(row) + "\t" + getRow(row, column));
+            }
+        }
+    }
+
+    /**
+     * Convert a string-keyed weight store (e.g., from a model written by an earlier version) into an indexed one.
+     * The old averaging coefficient becomes the example counter and the averaged weights are kept as they were.
+     * @param weights
+     * @return
+     */
+    public static IndexedWeights fromWeights(Weights weights) {
+        IndexedWeights indexedWeights = new IndexedWeights();
+        indexedWeights.doAveraging = weights.doAveraging;
+        int counter = weights.averagingCoefficient;
+        indexedWeights.exampleCounters[0] = counter;
+
+        for (Map.Entry<String, Double> entry : weights.weightMap.entrySet()) {
+            String feature = entry.getKey();
+            int row = BIAS_ROW;
+            double sign = 1;
+            if (!BIAS.equals(feature)) {
+                int featureIndex = indexOf(feature);
+                row = row(featureIndex);
+                sign = sign(featureIndex);
+            }
+
+            // add rather than set, as hashed features may share a row
+            indexedWeights.ensureCapacity(row);
+            indexedWeights.weightArray[row] += sign * entry.getValue();
+            indexedWeights.stampArray[row] = counter;
+
+            if (counter > 0) {
+                double average = weights.getAvg(feature);
+                indexedWeights.weightSumArray[row] += sign * average * counter;
+            }
+        }
+
+        return indexedWeights;
+    }
+
+    /**
+     * Serialize the weights together with the feature strings they belong to (or their rows if features are hashed).
+     * Weight sums are written up to date, so stamps need not be stored.
+     * @param out
+     * @throws IOException
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+
+        int hashBits = FeatureIntSet.getFeatureIndexMap().getHashBits();
+        out.writeInt(hashBits);
+
+        // go by the arrays of this class, subclasses write their own weights
+        int numRows = weightArray.length / numColumns;
+
+        int numActive = 0;
+        for (int row = 0; row < numRows; row++)
+            if (isActiveRow(row)) numActive++;
+
+        out.writeInt(numActive);
+        for (int row = 0; row < numRows; row++) {
+            if (isActiveRow(row)) {
+                writeRow(out, row, hashBits);
+                for (int column = 0; column < numColumns; column++) {
+                    int slot = slot(row, column);
+                    out.writeDouble(weightArray[slot]);
+                    out.writeDouble(slotSum(slot, column));
+                }
+            }
+        }
+    }
+
+    /**
+     * Read weights and map their feature strings to the indices of the current JVM.
+     * Models with hashed features can only be read with the same hashing configuration.
+     * @param in
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+
+        int hashBits = in.readInt();
+        allocate(initialRows());
+
+        int numActive = in.readInt();
+        for (int i = 0; i < numActive; i++) {
+            int row = readRow(in, hashBits);
+            ensureCapacity(row);
+            for (int column = 0; column < numColumns; column++) {
+                int slot = slot(row, column);
+                weightArray[slot] = in.readDouble();
+                weightSumArray[slot] = in.readDouble();
+                stampArray[slot] = exampleCounters[column];
+            }
+        }
+
+        // check only after all weights are read, an exception in the middle of the stream would be masked
+        checkHashBits(hashBits);
+    }
+
+    /**
+     * Write the key of a row: its feature string, or the row itself if features are hashed
+     * @param out
+     * @param row
+     * @param hashBits
+     * @throws IOException
+     */
+    static void writeRow(ObjectOutputStream out, int row, int hashBits) throws IOException {
+        if (hashBits > 0) out.writeInt(row);
+        else out.writeUTF(featureOfRow(row));
+    }
+
+    /**
+     * Read the key of a row written by writeRow() and map it to a row of the current JVM
+     * @param in
+     * @param hashBits
+     * @return
+     * @throws IOException
+     */
+    static int readRow(ObjectInputStream in, int hashBits) throws IOException {
+        if (hashBits > 0) return in.readInt();
+
+        String feature = in.readUTF();
+        if (BIAS.equals(feature)) return BIAS_ROW;
+        else return row(indexOf(feature));
+    }
+
+    /**
+     * Make sure that a model was written with the same hashing configuration as the current one
+     * @param hashBits
+     */
+    static void checkHashBits(int hashBits) {
+        if (hashBits != FeatureIntSet.getFeatureIndexMap().getHashBits())
+            throw new Error("Model was trained with featureHashBits = " + hashBits + ", but the current setting is " +
+                    FeatureIntSet.getFeatureIndexMap().getHashBits());
+    }
+}
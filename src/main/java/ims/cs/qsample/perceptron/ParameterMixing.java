@@ -0,0 +1,184 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.qsample.perceptron;
+
+import ims.cs.qsample.features.FeatureIntSet;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parallel perceptron training by iterative parameter mixing (McDonald, Hall and Mann, 2010).
+ * The documents of a training matrix are split into one shard per thread. In each epoch, every thread trains its own
+ * copy of the perceptrons on its shard, and the copies are then mixed back into the original perceptrons.
+ * The mixing coefficient of a copy is proportional to the number of updates it made in the epoch (uniform if no copy
+ * made any update).
+ */
+public class ParameterMixing {
+
+    /**
+     * Train perceptrons on a training matrix using the specified number of threads
+     * @param matrix training data
+     * @param perceptrons perceptrons to train
+     * @param labels label bit (see TrainingMatrix) that marks positive examples, one per perceptron
+     * @param nEpochs
+     * @param numThreads
+     * @param random used to draw seeds for the shuffling in each thread
+     * @param rate learning rate
+     */
+    public static void train(final TrainingMatrix matrix, Perceptron[] perceptrons, final byte[] labels, int nEpochs,
+                             int numThreads, Random random, final double rate) {
+        int numShards = Math.max(1, Math.min(numThreads, matrix.numDocuments()));
+
+        // make room for all features in advance, so that the copies never have to grow
+        int numFeatures = FeatureIntSet.getFeatureIndexMap().size();
+        for (Perceptron perceptron : perceptrons)
+            perceptron.indexedWeights().ensureCapacity(IndexedWeights.row(numFeatures - 1));
+
+        ExecutorService executor = Executors.newFixedThreadPool(numShards);
+
+        try {
+            for (int i = 0; i < nEpochs; i++) {
+                System.out.print(i+1 + " ");
+
+                // set up one copy of each perceptron per shard
+                List<Future<?>> futures = new ArrayList<>(numShards);
+                final Perceptron[][] copies = new Perceptron[numShards][];
+
+                for (int shard = 0; shard < numShards; shard++) {
+                    copies[shard] = copyPerceptrons(perceptrons);
+
+                    final int firstDocument = shard * matrix.numDocuments() / numShards;
+                    final int lastDocument = (shard + 1) * matrix.numDocuments() / numShards;
+                    final Perceptron[] shardPerceptrons = copies[shard];
+                    final Random shardRandom = new Random(random.nextLong());
+
+                    futures.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            trainShard(matrix, shardPerceptrons, labels, firstDocument, lastDocument, shardRandom, rate);
+                            return null;
+                        }
+                    }));
+                }
+
+                // wait for all shards
+                for (Future<?> future : futures) {
+                    try {
+                        future.get();
+                    } catch (InterruptedException | ExecutionException e) {
+                        throw new Error(e);
+                    }
+                }
+
+                // mix each perceptron from its copies
+                for (int p = 0; p < perceptrons.length; p++) {
+                    Perceptron[] parts = new Perceptron[numShards];
+                    for (int shard = 0; shard < numShards; shard++) parts[shard] = copies[shard][p];
+                    perceptrons[p].mix(parts, mixingWeights(parts));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        System.out.println();
+    }
+
+    /**
+     * Copy perceptrons. Perceptrons that share a weight store also share the copy of that store.
+     * @param perceptrons
+     * @return
+     */
+    static Perceptron[] copyPerceptrons(Perceptron[] perceptrons) {
+        Map<IndexedWeights, IndexedWeights> storeCopies = new IdentityHashMap<>();
+        Perceptron[] copies = new Perceptron[perceptrons.length];
+
+        for (int p = 0; p < perceptrons.length; p++) {
+            IndexedWeights store = perceptrons[p].indexedWeights();
+            IndexedWeights storeCopy = storeCopies.get(store);
+            if (storeCopy == null) {
+                storeCopy = store.copy();
+                storeCopies.put(store, storeCopy);
+            }
+            copies[p] = perceptrons[p].copyWithWeights(storeCopy);
+        }
+
+        return copies;
+    }
+
+    /**
+     * One epoch over the documents firstDocument .. lastDocument-1 of the matrix
+     * @param matrix
+     * @param perceptrons
+     * @param labels
+     * @param firstDocument
+     * @param lastDocument
+     * @param random
+     * @param rate
+     */
+    static void trainShard(TrainingMatrix matrix, Perceptron[] perceptrons, byte[] labels,
+                           int firstDocument, int lastDocument, Random random, double rate) {
+        int[] permutation = matrix.newPermutationBuffer();
+        int[] ids = matrix.featureIds;
+        double[] scores = new double[perceptrons.length];
+
+        for (int document = firstDocument; document < lastDocument; document++) {
+            int numRows = matrix.shuffleDocument(document, permutation, random);
+
+            for (int k = 0; k < numRows; k++) {
+                int row = permutation[k];
+                int begin = matrix.rowBegin(row);
+                int end = matrix.rowEnd(row);
+
+                // each perceptron only updates its own weights, so all can be scored up front
+                Perceptron.score(perceptrons, ids, begin, end, false, scores);
+                for (int p = 0; p < perceptrons.length; p++) {
+                    perceptrons[p].trainWithScore(ids, begin, end, scores[p], matrix.hasLabel(row, labels[p]), rate);
+                }
+            }
+        }
+    }
+
+    /**
+     * Mixing coefficients proportional to the number of updates of each copy
+     * @param parts
+     * @return
+     */
+    static double[] mixingWeights(Perceptron[] parts) {
+        double[] mixingWeights = new double[parts.length];
+
+        double total = 0;
+        for (Perceptron part : parts) total += part.numUpdates;
+
+        for (int k = 0; k < parts.length; k++) {
+            if (total > 0) mixingWeights[k] = parts[k].numUpdates / total;
+            else mixingWeights[k] = 1.0 / parts.length;
+        }
+
+        return mixingWeights;
+    }
+}
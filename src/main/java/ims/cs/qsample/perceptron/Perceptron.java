@@ -17,13 +17,18 @@
 
 package ims.cs.qsample.perceptron;
 
+import ims.cs.qsample.features.FeatureIndexMap;
+import ims.cs.qsample.features.FeatureIntSet;
 import ims.cs.qsample.features.FeatureSet;
 import ims.cs.qsample.spans.Span;
 
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.PrintStream;
 import java.io.Serializable;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 /**
@@ -39,7 +44,10 @@ public class Perceptron  implements Serializable {
     // .. default is perceptron
     public UpdateType updateType = UpdateType.PERCEPTRON;
 
-    public Weights weights = new Weights();
+    public Weights weights = new IndexedWeights();
+
+    // column of the weight store that belongs to this perceptron (stores may be shared, see IndexedWeights)
+    int column = 0;
 
     // parameters
     public double fixedBias = 0;       /* optional bias that can be manually adjusted */
@@ -51,7 +59,48 @@ public class Perceptron  implements Serializable {
 
 
     public Perceptron() {
-        weights.weightMap.put("BIAS", 0.0);
+    }
+
+    /**
+     * Set up a perceptron that keeps its weights in a column of a (possibly shared) store
+     * @param store
+     * @param column
+     */
+    public Perceptron(IndexedWeights store, int column) {
+        if (column < 0 || column >= store.getNumColumns()) throw new Error("Invalid column " + column);
+        this.weights = store;
+        this.column = column;
+    }
+
+    /**
+     * Set up perceptrons that share one weight store, one column each
+     * @param numPerceptrons
+     * @return
+     */
+    public static Perceptron[] createShared(int numPerceptrons) {
+        IndexedWeights store = new IndexedWeights(numPerceptrons);
+        Perceptron[] perceptrons = new Perceptron[numPerceptrons];
+        for (int column = 0; column < numPerceptrons; column++) perceptrons[column] = new Perceptron(store, column);
+        return perceptrons;
+    }
+
+    /**
+     * Returns the weight store
+     * @return
+     */
+    IndexedWeights indexedWeights() {
+        return (IndexedWeights) weights;
+    }
+
+    public int getColumn() { return column; }
+
+    /**
+     * Checks whether this perceptron keeps its weights in the same store as another one
+     * @param other
+     * @return
+     */
+    public boolean sharesWeightsWith(Perceptron other) {
+        return weights == other.weights;
     }
 
 
@@ -61,28 +110,130 @@ public class Perceptron  implements Serializable {
      * @return
      */
     public double score(FeatureSet featureSet, boolean average) {
-        double score = 0;
+        IndexedWeights indexedWeights = indexedWeights();
+        double score;
 
         // first, add bias
         if (average) {
-            score += weights.getAvg("BIAS");
-            score += fixedBias;
+            score = indexedWeights.getBiasAvg(column) + fixedBias;
         } else {
-            score += weights.get("BIAS");
+            score = indexedWeights.getBias(column);
         }
 
         // then, score all features in the data
-        for (String feature: featureSet) {
+        if (featureSet instanceof FeatureIntSet) {
+            FeatureIntSet featureIntSet = (FeatureIntSet) featureSet;
+            int size = featureIntSet.size();
             if (average) {
-                score += weights.getAvg(feature);
+                for (int i = 0; i < size; i++)
+                    score += indexedWeights.getAvg(featureIntSet.indexAt(i), column);
             } else {
-                score += weights.get(feature);
+                for (int i = 0; i < size; i++)
+                    score += indexedWeights.get(featureIntSet.indexAt(i), column);
+            }
+        } else {
+            for (String feature : featureSet) {
+                if (average) {
+                    score += indexedWeights.getAvg(feature, column);
+                } else {
+                    score += indexedWeights.get(feature, column);
+                }
             }
         }
 
         return score;
     }
 
+    /**
+     * Score the feature indices ids[from] .. ids[to-1]
+     * @param ids
+     * @param from
+     * @param to
+     * @param average
+     * @return
+     */
+    public double score(int[] ids, int from, int to, boolean average) {
+        IndexedWeights indexedWeights = indexedWeights();
+        double score;
+
+        if (average) {
+            score = indexedWeights.getBiasAvg(column) + fixedBias;
+            for (int i = from; i < to; i++) score += indexedWeights.getAvg(ids[i], column);
+        } else {
+            score = indexedWeights.getBias(column);
+            for (int i = from; i < to; i++) score += indexedWeights.get(ids[i], column);
+        }
+
+        return score;
+    }
+
+    /**
+     * Score a feature set with several perceptrons. If they all share one weight store, all scores are computed in
+     * a single pass over the features.
+     * @param perceptrons
+     * @param featureSet
+     * @param average
+     * @param scores receives one score per perceptron
+     */
+    public static void score(Perceptron[] perceptrons, FeatureSet featureSet, boolean average, double[] scores) {
+        IndexedWeights store = sharedStore(perceptrons);
+        if (store == null || !(featureSet instanceof FeatureIntSet)) {
+            for (int p = 0; p < perceptrons.length; p++) scores[p] = perceptrons[p].score(featureSet, average);
+            return;
+        }
+
+        double[] columnScores = new double[store.getNumColumns()];
+        store.scoreColumns((FeatureIntSet) featureSet, average, columnScores);
+        collectScores(perceptrons, columnScores, average, scores);
+    }
+
+    /**
+     * Score the feature indices ids[from] .. ids[to-1] with several perceptrons. If they all share one weight store,
+     * all scores are computed in a single pass over the features.
+     * @param perceptrons
+     * @param ids
+     * @param from
+     * @param to
+     * @param average
+     * @param scores receives one score per perceptron
+     */
+    public static void score(Perceptron[] perceptrons, int[] ids, int from, int to, boolean average, double[] scores) {
+        IndexedWeights store = sharedStore(perceptrons);
+        if (store == null) {
+            for (int p = 0; p < perceptrons.length; p++) scores[p] = perceptrons[p].score(ids, from, to, average);
+            return;
+        }
+
+        double[] columnScores = new double[store.getNumColumns()];
+        store.scoreColumns(ids, from, to, average, columnScores);
+        collectScores(perceptrons, columnScores, average, scores);
+    }
+
+    /**
+     * Returns the weight store shared by all perceptrons, or null if they do not share one
+     * @param perceptrons
+     * @return
+     */
+    static IndexedWeights sharedStore(Perceptron[] perceptrons) {
+        for (Perceptron perceptron : perceptrons)
+            if (!perceptron.sharesWeightsWith(perceptrons[0])) return null;
+        return perceptrons[0].indexedWeights();
+    }
+
+    /**
+     * Pick the scores of the perceptrons' columns and add their fixed biases where applicable
+     * @param perceptrons
+     * @param columnScores
+     * @param average
+     * @param scores
+     */
+    static void collectScores(Perceptron[] perceptrons, double[] columnScores, boolean average, double[] scores) {
+        for (int p = 0; p < perceptrons.length; p++) {
+            scores[p] = columnScores[perceptrons[p].column];
+            if (average) scores[p] += perceptrons[p].fixedBias;
+        }
+    }
+
     /**
      * Perform an update with a given training example
      * @param featureSet
@@ -132,6 +283,41 @@ public class Perceptron  implements Serializable {
         update(featureSet, step);
     }
 
+    /**
+     * Perform an update with a training example given as the feature indices ids[from] .. ids[to-1]
+     * @param ids
+     * @param from
+     * @param to
+     * @param isPositive is this example a positive one?
+     * @param rate
+     */
+    public void train(int[] ids, int from, int to, boolean isPositive, double rate) {
+        trainWithScore(ids, from, to, score(ids, from, to, false), isPositive, rate);
+    }
+
+    /**
+     * Perform an update with a training example whose current (non-averaged) score has already been computed,
+     * e.g., together with the scores of other perceptrons sharing the weight store
+     * @param ids
+     * @param from
+     * @param to
+     * @param predScore
+     * @param isPositive is this example a positive one?
+     * @param rate
+     */
+    public void trainWithScore(int[] ids, int from, int to, double predScore, boolean isPositive, double rate) {
+        if (updateType == UpdateType.PERCEPTRON) {
+            if (isPositive && predScore - marginPositive <= 0) {
+                update(ids, from, to, rate);
+            } else if (!isPositive && predScore + marginNegative > 0) {
+                update(ids, from, to, -rate);
+            }
+        } else if (updateType == UpdateType.LR) {
+            int trueProb = isPositive ? 1 : 0;
+            update(ids, from, to, rate * (trueProb - sigmoid(predScore)));
+        }
+    }
+
 
     /**
      * Update the weights for each feature by the given rate
@@ -139,26 +325,182 @@ public class Perceptron  implements Serializable {
      * @param rate
      */
     public void update(FeatureSet featureSet, double rate) {
+        IndexedWeights indexedWeights = indexedWeights();
+
         // bias
-        weights.update("BIAS", rate);
+        indexedWeights.updateBias(column, rate);
 
         // features
-        for (String feature : featureSet) {
-            weights.update(feature, rate);
+        if (featureSet instanceof FeatureIntSet) {
+            FeatureIntSet featureIntSet = (FeatureIntSet) featureSet;
+            int size = featureIntSet.size();
+            for (int i = 0; i < size; i++)
+                indexedWeights.update(featureIntSet.indexAt(i), column, rate);
+        } else {
+            for (String feature : featureSet)
+                indexedWeights.update(feature, column, rate);
         }
 
+        indexedWeights.nextExample(column);
+        numUpdates++;
+    }
+
+    /**
+     * Update the weights of the feature indices ids[from] .. ids[to-1] by the given rate
+     * @param ids
+     * @param from
+     * @param to
+     * @param rate
+     */
+    public void update(int[] ids, int from, int to, double rate) {
+        IndexedWeights indexedWeights = indexedWeights();
+
+        indexedWeights.updateBias(column, rate);
+        for (int i = from; i < to; i++) indexedWeights.update(ids[i], column, rate);
+        indexedWeights.nextExample(column);
+
         numUpdates++;
     }
 
+    /**
+     * Freeze the averaged weights into a single array for fast averaged scoring.
+     * Call this once training is done; any later update discards the snapshot again.
+     */
+    public void finalizeAverage() {
+        indexedWeights().finalizeAverage();
+    }
+
+    /**
+     * Allow concurrent lock-free updates from several threads until endLockFree() is called
+     */
+    public void beginLockFree() {
+        indexedWeights().beginLockFree();
+    }
+
+    /**
+     * End lock-free updating and merge the averaging state of all threads
+     */
+    public void endLockFree() {
+        indexedWeights().endLockFree();
+    }
+
+    /**
+     * Copy of this perceptron with the same parameters and a deep copy of the weights
+     * @return
+     */
+    public Perceptron copy() {
+        return copyWithWeights(indexedWeights().copy());
+    }
+
+    /**
+     * Copy of this perceptron with the same parameters, using the given store (e.g., a copy of this perceptron's
+     * store that is shared with copies of other perceptrons)
+     * @param store
+     * @return
+     */
+    Perceptron copyWithWeights(IndexedWeights store) {
+        Perceptron copy = new Perceptron(store, column);
+        copy.updateType = updateType;
+        copy.fixedBias = fixedBias;
+        copy.marginPositive = marginPositive;
+        copy.marginNegative = marginNegative;
+        return copy;
+    }
+
+    /**
+     * Read-only copies of perceptrons with quantized averaged weights for deployment (see QuantizedWeights).
+     * Perceptrons that share a weight store also share the quantized store.
+     * @param perceptrons
+     * @param precision
+     * @return
+     */
+    public static Perceptron[] quantize(Perceptron[] perceptrons, QuantizedWeights.Precision precision) {
+        Map<IndexedWeights, QuantizedWeights> quantizedStores = new IdentityHashMap<>();
+        Perceptron[] quantized = new Perceptron[perceptrons.length];
+
+        for (int p = 0; p < perceptrons.length; p++) {
+            IndexedWeights store = perceptrons[p].indexedWeights();
+            QuantizedWeights quantizedStore = quantizedStores.get(store);
+            if (quantizedStore == null) {
+                quantizedStore = new QuantizedWeights(store, precision);
+                quantizedStores.put(store, quantizedStore);
+            }
+            quantized[p] = perceptrons[p].copyWithWeights(quantizedStore);
+            quantized[p].numUpdates = perceptrons[p].numUpdates;
+        }
+
+        return quantized;
+    }
+
+    /**
+     * Replace the weights by a weighted combination of copies of this perceptron (see IndexedWeights.mix).
+     * Only the column of this perceptron is changed.
+     * @param parts copies made by copy() and trained since
+     * @param mixingWeights one coefficient per copy, should sum to 1
+     */
+    public void mix(Perceptron[] parts, double[] mixingWeights) {
+        IndexedWeights[] partWeights = new IndexedWeights[parts.length];
+        for (int k = 0; k < parts.length; k++) {
+            partWeights[k] = parts[k].indexedWeights();
+            numUpdates += parts[k].numUpdates;
+        }
+
+        indexedWeights().mix(partWeights, mixingWeights, column);
+    }
+
+    /**
+     * Remove all features whose absolute averaged weight is below the threshold
+     * @param threshold
+     * @return number of features kept
+     */
+    public int prune(double threshold) {
+        return indexedWeights().prune(column, threshold);
+    }
+
+    /**
+     * Keep only the k features with the largest absolute averaged weights
+     * @param k
+     * @return number of features kept
+     */
+    public int pruneTopK(int k) {
+        return indexedWeights().pruneTopK(column, k);
+    }
+
+    /**
+     * Number of features with a weight, not counting the bias
+     * @return
+     */
+    public int numFeatures() {
+        return indexedWeights().numFeatures(column);
+    }
+
+    /**
+     * Release the memory of weights that were pruned
+     */
+    public void compact() {
+        indexedWeights().compact();
+    }
+
     /**
      * Print the weights for the features of the span to debug
      * @param span
      * @param prefix
      */
     public void printInfo(Span span, String prefix) {
-        for (String feature: span.featureSet) {
-            double weight = weights.get(feature);
-            System.out.println(prefix + feature + "   " + weight);
+        if (span.featureSet instanceof FeatureIntSet) {
+            // go through the indices, as hashed features cannot be mapped back to their strings
+            FeatureIndexMap featureIndexMap = FeatureIntSet.getFeatureIndexMap();
+            FeatureIntSet featureIntSet = (FeatureIntSet) span.featureSet;
+            for (int i = 0; i < featureIntSet.size(); i++) {
+                int featureIndex = featureIntSet.indexAt(i);
+                double weight = indexedWeights().get(featureIndex, column);
+                System.out.println(prefix + featureIndexMap.getFeature(featureIndex) + "   " + weight);
+            }
+        } else {
+            for (String feature : span.featureSet) {
+                double weight = indexedWeights().get(feature, column);
+                System.out.println(prefix + feature + "   " + weight);
+            }
         }
     }
 
@@ -186,9 +528,7 @@ public class Perceptron  implements Serializable {
      * @param prefix
      */
     public void printWeights(PrintStream out, String prefix) {
-        for (Map.Entry entry : weights.weightMap.entrySet()) {
-            out.println(prefix + "-->" + entry.getKey() + "\t" + entry.getValue());
-        }
+        indexedWeights().printWeights(out, prefix, column);
     }
 
 
@@ -201,4 +541,16 @@ public class Perceptron  implements Serializable {
         return 1/(1+Math.exp(-x));
     }
 
+    /**
+     * Models written before the introduction of indexed weights store their weights in string maps.
+     * These are converted on load.
+     * @param in
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (!(weights instanceof IndexedWeights)) weights = IndexedWeights.fromWeights(weights);
+    }
+
 }
@@ -105,10 +105,11 @@ public abstract class PerceptronTrainer {
     public static QuotationPerceptrons trainAllPerceptronsAndApply(List<Document> trainDocs, List<Document> testDocs, List<Document> valDocs, List<Document> resDocs,
                                                                    double beginMargin, double endMargin, double cueMargin,
                                                                    boolean cueOnly, int numIterationsCue, int numIterationsBoundary) {
-        // set up perceptrons
-        Perceptron beginPerceptron = new Perceptron();
-        Perceptron endPerceptron = new Perceptron();
-        Perceptron cuePerceptron = new Perceptron();
+        // set up perceptrons, sharing one weight store
+        Perceptron[] shared = Perceptron.createShared(3);
+        Perceptron beginPerceptron = shared[0];
+        Perceptron endPerceptron = shared[1];
+        Perceptron cuePerceptron = shared[2];
         QuotationPerceptrons perceptrons = new QuotationPerceptrons(beginPerceptron, endPerceptron, cuePerceptron);
 
         // biasing
@@ -157,10 +158,11 @@ public abstract class PerceptronTrainer {
         // jackknife cue model
         perceptronsForTrain.jackknifeCue(trainDocs, numFoldJackknifing, numIterationsCue, cueMargin);
 
-        // set up perceptrons for testing
-        Perceptron beginPerceptronTest = new Perceptron();
-        Perceptron endPerceptronTest = new Perceptron();
-        Perceptron cuePerceptronTest = new Perceptron();
+        // set up perceptrons for testing, sharing one weight store
+        Perceptron[] shared = Perceptron.createShared(3);
+        Perceptron beginPerceptronTest = shared[0];
+        Perceptron endPerceptronTest = shared[1];
+        Perceptron cuePerceptronTest = shared[2];
         QuotationPerceptrons perceptronsForTest = new QuotationPerceptrons(beginPerceptronTest, endPerceptronTest, cuePerceptronTest);
 
         // biasing
@@ -0,0 +1,220 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.qsample.perceptron;
+
+import ims.cs.qsample.features.FeatureIntSet;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+/**
+ * Read-only weight store for deployment that only keeps the averaged weights, quantized to float32 or to int16 fixed
+ * point. In the int16 format, each column (i.e., each perceptron) has its own scale factor, so that its largest
+ * weight uses the full range. Scoring reads the quantized arrays directly; averaged and plain weights are the same.
+ * Any attempt to train the weights results in an error.
+ */
+public class QuantizedWeights extends IndexedWeights {
+    private static final long serialVersionUID = 6243190835523917452L;
+
+    public enum Precision {FLOAT32, INT16}
+
+    final Precision precision;
+
+    // factor by which the stored values of a column are multiplied, per column (1 for float32)
+    final double[] scales;
+
+    // quantized weights, in the same slot layout as IndexedWeights; only the array of the precision is used
+    transient float[] floatArray;
+    transient short[] shortArray;
+
+    /**
+     * Quantize the averaged weights of a store
+     * @param weights
+     * @param precision
+     */
+    public QuantizedWeights(IndexedWeights weights, Precision precision) {
+        super(weights.getNumColumns(), 0);
+        this.precision = precision;
+        this.scales = new double[numColumns];
+
+        int numSlots = weights.capacity() * numColumns;
+        double[] averaged = new double[numSlots];
+        for (int slot = 0; slot < numSlots; slot++) {
+            int column = slot % numColumns;
+            averaged[slot] = weights.getRowAvg(slot / numColumns, column);
+        }
+
+        allocateQuantized(weights.capacity());
+
+        if (precision == Precision.FLOAT32) {
+            Arrays.fill(scales, 1);
+            for (int slot = 0; slot < numSlots; slot++) floatArray[slot] = (float) averaged[slot];
+        } else {
+            // scale each column so that its largest magnitude maps to Short.MAX_VALUE
+            for (int slot = 0; slot < numSlots; slot++) {
+                int column = slot % numColumns;
+                scales[column] = Math.max(scales[column], Math.abs(averaged[slot]));
+            }
+            for (int column = 0; column < numColumns; column++) {
+                if (scales[column] == 0) scales[column] = 1;
+                else scales[column] /= Short.MAX_VALUE;
+            }
+
+            for (int slot = 0; slot < numSlots; slot++)
+                shortArray[slot] = (short) Math.round(averaged[slot] / scales[slot % numColumns]);
+        }
+    }
+
+    /**
+     * Set up empty quantized arrays for the specified number of rows
+     * @param numRows
+     */
+    void allocateQuantized(int numRows) {
+        if (precision == Precision.FLOAT32) floatArray = new float[numRows * numColumns];
+        else shortArray = new short[numRows * numColumns];
+    }
+
+    /**
+     * Grow the quantized arrays so that the specified row fits
+     * @param row
+     */
+    void ensureQuantizedCapacity(int row) {
+        if (row < capacity()) return;
+
+        int newRows = Math.max(1, capacity());
+        while (newRows <= row) newRows *= 2;
+
+        if (precision == Precision.FLOAT32) floatArray = Arrays.copyOf(floatArray, newRows * numColumns);
+        else shortArray = Arrays.copyOf(shortArray, newRows * numColumns);
+    }
+
+    public Precision getPrecision() { return precision; }
+
+    /**
+     * Weight stored in a slot
+     * @param slot
+     * @return
+     */
+    double value(int slot) {
+        if (precision == Precision.FLOAT32) return floatArray[slot];
+        else return shortArray[slot] * scales[slot % numColumns];
+    }
+
+    @Override
+    int capacity() {
+        if (precision == Precision.FLOAT32) return floatArray.length / numColumns;
+        else return shortArray.length / numColumns;
+    }
+
+    @Override
+    double getRow(int row, int column) {
+        if (row >= capacity()) return 0;
+        return value(slot(row, column));
+    }
+
+    @Override
+    double getRowAvg(int row, int column) {
+        return getRow(row, column);
+    }
+
+    @Override
+    void addColumnScores(int row, double sign, boolean average, double[] scores) {
+        if (row >= capacity()) return;
+        int firstSlot = slot(row, 0);
+
+        if (precision == Precision.FLOAT32) {
+            for (int column = 0; column < numColumns; column++) scores[column] += sign * floatArray[firstSlot + column];
+        } else {
+            for (int column = 0; column < numColumns; column++)
+                scores[column] += sign * shortArray[firstSlot + column] * scales[column];
+        }
+    }
+
+    @Override
+    boolean isActive(int slot) {
+        return value(slot) != 0;
+    }
+
+    @Override
+    void updateRow(int row, int column, double value) {
+        throw new Error("Quantized weights are read-only");
+    }
+
+    @Override
+    public void finalizeAverage() {
+        // the stored weights already are the averaged weights
+    }
+
+    /**
+     * Serialize the quantized weights of all rows that are non-zero in any column
+     * @param out
+     * @throws IOException
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+
+        int hashBits = FeatureIntSet.getFeatureIndexMap().getHashBits();
+        out.writeInt(hashBits);
+
+        int numActive = 0;
+        for (int row = 0; row < capacity(); row++)
+            if (isActiveRow(row)) numActive++;
+
+        out.writeInt(numActive);
+        for (int row = 0; row < capacity(); row++) {
+            if (isActiveRow(row)) {
+                writeRow(out, row, hashBits);
+                for (int column = 0; column < numColumns; column++) {
+                    int slot = slot(row, column);
+                    if (precision == Precision.FLOAT32) out.writeFloat(floatArray[slot]);
+                    else out.writeShort(shortArray[slot]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read quantized weights and map their feature strings to the indices of the current JVM
+     * @param in
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+
+        // the full-precision arrays are not needed
+        allocate(0);
+        allocateQuantized(initialRows());
+
+        int hashBits = in.readInt();
+        int numActive = in.readInt();
+        for (int i = 0; i < numActive; i++) {
+            int row = readRow(in, hashBits);
+            ensureQuantizedCapacity(row);
+            for (int column = 0; column < numColumns; column++) {
+                int slot = slot(row, column);
+                if (precision == Precision.FLOAT32) floatArray[slot] = in.readFloat();
+                else shortArray[slot] = in.readShort();
+            }
+        }
+
+        checkHashBits(hashBits);
+    }
+}
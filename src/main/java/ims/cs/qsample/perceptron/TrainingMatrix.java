@@ -0,0 +1,187 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.qsample.perceptron;
+
+import ims.cs.lingdata.Document;
+import ims.cs.lingdata.Token;
+import ims.cs.qsample.features.FeatureIndexMap;
+import ims.cs.qsample.features.FeatureIntSet;
+import ims.cs.qsample.features.FeatureSet;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Token-level training data in compressed sparse row format.
+ * The boundary features of all tokens are flattened into one array of feature indices; row r (i.e., token r) owns the
+ * indices featureIds[rowOffsets[r]] .. featureIds[rowOffsets[r+1]-1]. Gold labels are packed into one byte per row.
+ * Rows are grouped by document, so that tokens can be shuffled within their document as during regular training.
+ */
+public class TrainingMatrix {
+
+    // label bits
+    public static final byte CUE = 1;
+    public static final byte BEGIN = 2;
+    public static final byte END = 4;
+
+    public final int[] featureIds;
+    public final int[] rowOffsets;
+    final byte[] labels;
+
+    // rows of document d are documentOffsets[d] .. documentOffsets[d+1]-1
+    final int[] documentOffsets;
+
+    // tokens the rows were compiled from, to write back scores
+    final Token[] tokens;
+
+    int maxDocumentRows;
+
+    TrainingMatrix(int[] featureIds, int[] rowOffsets, byte[] labels, int[] documentOffsets, Token[] tokens) {
+        this.featureIds = featureIds;
+        this.rowOffsets = rowOffsets;
+        this.labels = labels;
+        this.documentOffsets = documentOffsets;
+        this.tokens = tokens;
+
+        for (int document = 0; document < numDocuments(); document++)
+            maxDocumentRows = Math.max(maxDocumentRows, documentOffsets[document + 1] - documentOffsets[document]);
+    }
+
+    /**
+     * Flatten the boundary feature sets and gold labels of all tokens in the documents (in the given order)
+     * @param documents
+     * @return
+     */
+    public static TrainingMatrix compile(List<Document> documents) {
+        FeatureIndexMap featureIndexMap = FeatureIntSet.getFeatureIndexMap();
+
+        // count rows and features first so that all arrays can be allocated exactly
+        int numRows = 0;
+        int numFeatures = 0;
+        for (Document document : documents) {
+            for (Token token : document.tokenList) {
+                numRows++;
+                numFeatures += token.boundaryFeatureSet.size();
+            }
+        }
+
+        int[] featureIds = new int[numFeatures];
+        int[] rowOffsets = new int[numRows + 1];
+        byte[] labels = new byte[numRows];
+        int[] documentOffsets = new int[documents.size() + 1];
+        Token[] tokens = new Token[numRows];
+
+        int row = 0;
+        int position = 0;
+        for (int document = 0; document < documents.size(); document++) {
+            documentOffsets[document] = row;
+
+            for (Token token : documents.get(document).tokenList) {
+                FeatureSet featureSet = token.boundaryFeatureSet;
+
+                // feature indices
+                rowOffsets[row] = position;
+                if (featureSet instanceof FeatureIntSet) {
+                    FeatureIntSet featureIntSet = (FeatureIntSet) featureSet;
+                    for (int i = 0; i < featureIntSet.size(); i++) featureIds[position++] = featureIntSet.indexAt(i);
+                } else {
+                    for (String feature : featureSet) {
+                        int index = featureIndexMap.getIndex(feature);
+                        // unknown to a frozen dictionary
+                        if (index != FeatureIndexMap.ABSENT) featureIds[position++] = index;
+                    }
+                }
+
+                // gold labels
+                byte label = 0;
+                if (token.isGoldCue()) label |= CUE;
+                if (token.startsGoldContentSpan()) label |= BEGIN;
+                if (token.endsGoldContentSpan()) label |= END;
+                labels[row] = label;
+
+                tokens[row] = token;
+                row++;
+            }
+        }
+
+        rowOffsets[numRows] = position;
+        if (position < numFeatures) featureIds = Arrays.copyOf(featureIds, position);
+        documentOffsets[documents.size()] = numRows;
+
+        return new TrainingMatrix(featureIds, rowOffsets, labels, documentOffsets, tokens);
+    }
+
+    public int numRows() { return labels.length; }
+
+    public int numDocuments() { return documentOffsets.length - 1; }
+
+    /**
+     * Size of the largest document in rows, i.e., the size a permutation buffer needs to have
+     * @return
+     */
+    public int maxDocumentRows() { return maxDocumentRows; }
+
+    public int rowBegin(int row) { return rowOffsets[row]; }
+
+    public int rowEnd(int row) { return rowOffsets[row + 1]; }
+
+    /**
+     * Checks whether a row carries a label
+     * @param row
+     * @param label one of CUE, BEGIN, END
+     * @return
+     */
+    public boolean hasLabel(int row, byte label) {
+        return (labels[row] & label) != 0;
+    }
+
+    public Token getToken(int row) { return tokens[row]; }
+
+    /**
+     * Write a random permutation of the rows of a document into the buffer.
+     * The permutation is drawn exactly like Collections.shuffle() would shuffle the document's token list.
+     * @param document
+     * @param permutation buffer of at least maxDocumentRows() entries
+     * @param random
+     * @return number of rows in the document
+     */
+    public int shuffleDocument(int document, int[] permutation, Random random) {
+        int begin = documentOffsets[document];
+        int size = documentOffsets[document + 1] - begin;
+
+        for (int i = 0; i < size; i++) permutation[i] = begin + i;
+
+        for (int i = size; i > 1; i--) {
+            int j = random.nextInt(i);
+            int tmp = permutation[i - 1];
+            permutation[i - 1] = permutation[j];
+            permutation[j] = tmp;
+        }
+
+        return size;
+    }
+
+    /**
+     * Allocate a buffer suitable for shuffleDocument()
+     * @return
+     */
+    public int[] newPermutationBuffer() {
+        return new int[maxDocumentRows];
+    }
+}
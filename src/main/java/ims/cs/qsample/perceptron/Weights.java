@@ -45,6 +45,17 @@ public class Weights implements Serializable {
         weightCacheMap = new HashMap<String, Double>(100000);
     }
 
+    /**
+     * Constructor for subclasses that keep their weights elsewhere and do not need the maps
+     * @param allocateMaps
+     */
+    protected Weights(boolean allocateMaps) {
+        if (allocateMaps) {
+            weightMap = new HashMap<String, Double>(100000);
+            weightCacheMap = new HashMap<String, Double>(100000);
+        }
+    }
+
     /**
      * Resets all weights to 0
      */
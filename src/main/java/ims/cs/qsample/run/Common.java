@@ -19,8 +19,10 @@ package ims.cs.qsample.run;
 
 import ims.cs.lingdata.Document;
 import ims.cs.parc.ProcessedCorpus;
+import ims.cs.qsample.features.FeatureIntSet;
 import ims.cs.qsample.features.SpanFeatures;
 import ims.cs.qsample.models.QuotationPerceptrons;
+import ims.cs.qsample.perceptron.QuantizedWeights;
 import ims.cs.qsample.spans.Span;
 import ims.cs.util.StaticConfig;
 
@@ -43,8 +45,8 @@ public abstract class Common {
      */
     public static void writePredictionsToFile(List<Document> trainDocs, List<Document> testDocs, List<Document> valDocs, List<Document> resDocs) {
         // if in text mode, write empty line after sentence ends and write cues
-        boolean writeNewLineAfterSentence = StaticConfig.cliMode == StaticConfig.CliMode.TEXT;
-        boolean writeCues = StaticConfig.cliMode == StaticConfig.CliMode.TEXT;
+        boolean writeNewLineAfterSentence = StaticConfig.current().cliMode == StaticConfig.CliMode.TEXT;
+        boolean writeCues = StaticConfig.current().cliMode == StaticConfig.CliMode.TEXT;
 
         // try to write predictions
         try {
@@ -68,8 +70,26 @@ public abstract class Common {
      */
     public static void serializeModels(QuotationPerceptrons perceptrons, String fileName) throws IOException {
         System.out.println("Writing perceptron model to " + fileName);
-        ObjectOutputStream outputStream = new ObjectOutputStream (new GZIPOutputStream(new FileOutputStream(fileName)));
-        outputStream.writeObject(perceptrons);
+        try (ObjectOutputStream outputStream = new ObjectOutputStream (new GZIPOutputStream(new FileOutputStream(fileName)))) {
+            outputStream.writeObject(perceptrons);
+        }
+    }
+
+    /**
+     * Saves trained perceptron models to fileRoot.models, pruned if so configured. If an export precision is
+     * configured, a quantized copy is saved to fileRoot.models-float32 or fileRoot.models-int16.
+     * @param perceptrons
+     * @param fileRoot
+     * @throws IOException
+     */
+    public static void saveModels(QuotationPerceptrons perceptrons, String fileRoot) throws IOException {
+        perceptrons.pruneIfConfigured();
+        serializeModels(perceptrons, fileRoot + ".models");
+
+        if (!StaticConfig.current().exportPrecision.isEmpty()) {
+            QuantizedWeights.Precision precision = QuantizedWeights.Precision.valueOf(StaticConfig.current().exportPrecision);
+            serializeModels(perceptrons.quantize(precision), fileRoot + ".models-" + precision.toString().toLowerCase());
+        }
     }
 
     /**
@@ -81,8 +101,18 @@ public abstract class Common {
      */
     public static QuotationPerceptrons deserializeModels(String fileName) throws IOException, ClassNotFoundException {
         System.out.println("Loading perceptron model from " + fileName);
-        ObjectInputStream inputStream = new ObjectInputStream(new GZIPInputStream(new FileInputStream(fileName)));
-        return (QuotationPerceptrons) inputStream.readObject();
+
+        // the features of the model are added to the map, even if it was frozen by loading another model
+        FeatureIntSet.thawFeatureIndexMap();
+
+        QuotationPerceptrons perceptrons;
+        try (ObjectInputStream inputStream = new ObjectInputStream(new GZIPInputStream(new FileInputStream(fileName)))) {
+            perceptrons = (QuotationPerceptrons) inputStream.readObject();
+        }
+
+        // from now on, only predictions are made, so features unknown to the model are dropped
+        FeatureIntSet.freezeFeatureIndexMap();
+        return perceptrons;
     }
 
     /**
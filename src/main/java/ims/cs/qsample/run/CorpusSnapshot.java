@@ -0,0 +1,184 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.qsample.run;
+
+import ims.cs.lingdata.Document;
+import ims.cs.lingdata.Sentence;
+import ims.cs.lingdata.Token;
+import ims.cs.qsample.features.FeatureIntSet;
+import ims.cs.qsample.features.FeatureSet;
+import ims.cs.qsample.spans.Span;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Processed documents that several experiments share, so that they can run concurrently on one preprocessed corpus.
+ * Each experiment takes its own copy of the documents (see copy()) and the documents themselves are left unmodified.
+ * A copy has its own tokens, sentences and spans, and thus its own perceptron scores, predicted cues, sampling
+ * statistics and predicted spans. Feature sets, parses and gold annotations are shared. Features about cues are added
+ * to the boundary features of tokens during prediction, so tokens are marked as sharing their boundary feature set
+ * and replace it by their own copy before adding to it (see BoundaryFeatures.additionalBoundaryFeaturesFromCue).
+ */
+public class CorpusSnapshot {
+
+    Set<Document> documents = Collections.newSetFromMap(new IdentityHashMap<Document, Boolean>());
+
+    /**
+     * Share all documents in the lists (null lists are skipped). Feature sets are sealed up front, as the copies read
+     * them concurrently.
+     * @param documentLists
+     */
+    @SafeVarargs
+    public CorpusSnapshot(List<Document>... documentLists) {
+        for (List<Document> documentList : documentLists)
+            if (documentList != null)
+                for (Document document : documentList) {
+                    documents.add(document);
+                    for (Token token : document.tokenList) {
+                        seal(token.featureSet);
+                        seal(token.boundaryFeatureSet);
+                        token.boundaryFeatureSetShared = true;
+                    }
+                    for (Span span : document.goldSpanSet) seal(span.featureSet);
+                }
+    }
+
+    /**
+     * Copies of shared documents for one experiment; the documents must be part of the snapshot
+     * @param documents
+     * @return the copies, or null if documents is null
+     */
+    public List<Document> copy(List<Document> documents) {
+        if (documents == null) return null;
+
+        List<Document> copies = new ArrayList<>();
+        for (Document document : documents) {
+            if (!this.documents.contains(document)) throw new Error("Document is not part of the snapshot: " + document.docId);
+            copies.add(copy(document));
+        }
+
+        return copies;
+    }
+
+    /**
+     * Copy of a document with its own tokens, sentences and spans
+     * @param document
+     * @return
+     */
+    static Document copy(Document document) {
+        Document documentCopy = new Document(document);
+        documentCopy.isCoreNlpProcessed = document.isCoreNlpProcessed;
+
+        Map<Token, Token> tokenMap = new IdentityHashMap<>();
+        documentCopy.tokenList = new ArrayList<>();
+        for (Token token : document.tokenList) {
+            Token tokenCopy = copy(token);
+            tokenMap.put(token, tokenCopy);
+            documentCopy.tokenList.add(tokenCopy);
+        }
+
+        for (Token tokenCopy : documentCopy.tokenList) {
+            tokenCopy.previousToken = copyOf(tokenCopy.previousToken, tokenMap);
+            tokenCopy.nextToken = copyOf(tokenCopy.nextToken, tokenMap);
+        }
+
+        if (document.sentenceList != null) {
+            documentCopy.sentenceList = new ArrayList<>();
+            for (Sentence sentence : document.sentenceList) {
+                List<Token> sentenceTokens = new ArrayList<>();
+                for (Token token : sentence.tokenList) sentenceTokens.add(copyOf(token, tokenMap));
+
+                Sentence sentenceCopy = new Sentence(sentence, documentCopy, sentenceTokens);
+                for (Token token : sentence.tokenList)
+                    if (tokenMap.containsKey(token)) tokenMap.get(token).sentence = sentenceCopy;
+                documentCopy.sentenceList.add(sentenceCopy);
+            }
+        }
+
+        for (Span span : document.predictedSpanSet) documentCopy.predictedSpanSet.add(copy(span, documentCopy));
+        for (Span span : document.goldSpanSet) documentCopy.goldSpanSet.add(copy(span, documentCopy));
+
+        return documentCopy;
+    }
+
+    /**
+     * Copy of a token with all of its fields. The feature sets are shared; the boundary feature set is copied when
+     * features are added to it.
+     * @param token
+     * @return
+     */
+    static Token copy(Token token) {
+        Token copy = new Token(token);
+        copy.goldNer = token.goldNer;
+        copy.originalPredText = token.originalPredText;
+        copy.predByteCount = token.predByteCount;
+        copy.isHeadVerb = token.isHeadVerb;
+        copy.tgn = token.tgn;
+        copy.boundaryFeatureSet = token.boundaryFeatureSet;
+        copy.boundaryFeatureSetShared = true;
+        copy.isPredictedCue = token.isPredictedCue;
+        copy.perceptronBeginScore = token.perceptronBeginScore;
+        copy.perceptronEndScore = token.perceptronEndScore;
+        copy.perceptronCueScore = token.perceptronCueScore;
+        copy.numTimesSampledBegin = token.numTimesSampledBegin;
+        copy.numTimesSampledEnd = token.numTimesSampledEnd;
+        copy.numTimesSampledCue = token.numTimesSampledCue;
+        if (token.contentBIOAnnotationPred != null) copy.contentBIOAnnotationPred = new HashMap<>(token.contentBIOAnnotationPred);
+        return copy;
+    }
+
+    /**
+     * Copy of a span for a copy of its document. The features are shared, as span features are replaced rather than
+     * modified when they are extracted again.
+     * @param span
+     * @param document
+     * @return
+     */
+    static Span copy(Span span, Document document) {
+        Span copy = new Span(document, span.begin.position, span.end.position, span.label);
+        copy.score = span.score;
+        copy.objective = span.objective;
+        copy.featureSet = span.featureSet;
+        return copy;
+    }
+
+    /**
+     * Seal a feature set if it is an int feature set
+     * @param featureSet
+     */
+    static void seal(FeatureSet featureSet) {
+        if (featureSet instanceof FeatureIntSet) ((FeatureIntSet) featureSet).seal();
+    }
+
+    /**
+     * The copy of a token, or the token itself if it has no copy (e.g., null)
+     * @param token
+     * @param tokenMap
+     * @return
+     */
+    static Token copyOf(Token token, Map<Token, Token> tokenMap) {
+        Token copy = tokenMap.get(token);
+        return copy == null ? token : copy;
+    }
+}
@@ -88,7 +88,7 @@ public class PlainTextCorpusReader {
         Arrays.sort(files);
 
         for (File file : files) {
-            if (StaticConfig.verbose) System.out.println(file);
+            if (StaticConfig.current().verbose) System.out.println(file);
             Document document = readDocument(file);
             documentList.add(document);
         }
@@ -21,6 +21,7 @@ package ims.cs.qsample.run;
 import ims.cs.lingdata.Document;
 import ims.cs.parc.PARCCorpus;
 import ims.cs.parc.ProcessedCorpus;
+import ims.cs.qsample.features.FeatureIntSet;
 import ims.cs.qsample.models.CrfClassifier;
 import ims.cs.qsample.models.QuotationPerceptrons;
 import ims.cs.util.MultiOutputStream;
@@ -70,15 +71,15 @@ public class QSample {
 
         // set options
         // (this will overwrite some options that may have been set differently in the config file)
-        StaticConfig.cliMode = StaticConfig.CliMode.TEXT;
-        StaticConfig.useGoldPreprocessing = false;   /* gold data not available for text mode */
+        StaticConfig.current().cliMode = StaticConfig.CliMode.TEXT;
+        StaticConfig.current().useGoldPreprocessing = false;   /* gold data not available for text mode */
 
         // set input directory
-        StaticConfig.inputDirectory = inputDirectoryName;
+        StaticConfig.current().inputDirectory = inputDirectoryName;
         System.out.println("Going to process all files in " + inputDirectoryName);
 
         // set output directory
-        StaticConfig.outputDirectory = outputDirectoryName;
+        StaticConfig.current().outputDirectory = outputDirectoryName;
         File directory = new File(String.valueOf(outputDirectoryName));
         if (!directory.exists()) directory.mkdir();
     }
@@ -109,7 +110,7 @@ public class QSample {
                 return false;
             }
 
-            StaticConfig.modelForTextFileMode = StaticConfig.Model.CRF;
+            StaticConfig.current().modelForTextFileMode = StaticConfig.Model.CRF;
             setTextFileMode(args[1], args[2]);
         } else if (args[0].equals("--sample")){   /* make predictions for text files with sampling model */
             if (args.length != 3) {
@@ -117,7 +118,7 @@ public class QSample {
                 return false;
             }
 
-            StaticConfig.modelForTextFileMode = StaticConfig.Model.SAMPLE;
+            StaticConfig.current().modelForTextFileMode = StaticConfig.Model.SAMPLE;
             setTextFileMode(args[1], args[2]);
         } else if (args[0].equals("--greedy")){   /* make predictions for text files with greedy model */
             if (args.length != 3) {
@@ -125,7 +126,7 @@ public class QSample {
                 return false;
             }
 
-            StaticConfig.modelForTextFileMode = StaticConfig.Model.GREEDY;
+            StaticConfig.current().modelForTextFileMode = StaticConfig.Model.GREEDY;
             setTextFileMode(args[1], args[2]);
         } else {   /* Unknown option */
             System.out.println("Unknown option: " + args[0] + "\n");
@@ -147,10 +148,13 @@ public class QSample {
         // if the argument parser returns false, we cannot proceed, so exit
         if (!parsed) return;
 
+        // the configuration decides whether features are hashed
+        FeatureIntSet.resetFeatureIndexMap();
+
 
         // set up logging
         NewStaticPrinter.isOn = false;
-        String logFileName = NewStaticPrinter.getLogFileName(Common.pathConcat(StaticConfig.outputDirectory, "qsample-"));
+        String logFileName = NewStaticPrinter.getLogFileName(Common.pathConcat(StaticConfig.current().outputDirectory, "qsample-"));
         MultiOutputStream.init(logFileName);
         NewStaticPrinter.init(logFileName);
 
@@ -160,48 +164,48 @@ public class QSample {
 
 
 
-        if (StaticConfig.cliMode == StaticConfig.CliMode.TEST ||
-                StaticConfig.cliMode == StaticConfig.CliMode.TEXT) {   /* we are in text mode or test mode now */
+        if (StaticConfig.current().cliMode == StaticConfig.CliMode.TEST ||
+                StaticConfig.current().cliMode == StaticConfig.CliMode.TEXT) {   /* we are in text mode or test mode now */
+            // load common model first, so that the documents are featurized with the frozen feature map
+            QuotationPerceptrons perceptrons = Common.deserializeModels(StaticConfig.current().perceptronModelFile);
+
             ProcessedCorpus pc;
 
-            if (StaticConfig.cliMode == StaticConfig.CliMode.TEST) {   /* run the 2016 experiment */
+            if (StaticConfig.current().cliMode == StaticConfig.CliMode.TEST) {   /* run the 2016 experiment */
                 System.out.println("Running test experiment from ACL 2016");
                 pc = new ProcessedCorpus(PARCCorpus.getInstance());
             } else {   /* make predictions on the data provided by the user */
-                System.out.println("Processing all documents in " + StaticConfig.inputDirectory);
-                pc = PlainTextCorpusReader.readDocuments(StaticConfig.inputDirectory);
+                System.out.println("Processing all documents in " + StaticConfig.current().inputDirectory);
+                pc = PlainTextCorpusReader.readDocuments(StaticConfig.current().inputDirectory);
             }
 
             List<Document> testDocs = pc.getTest();
 
-            // load common model
-            QuotationPerceptrons perceptrons = Common.deserializeModels(StaticConfig.perceptronModelFile);
-
-            if (StaticConfig.modelForTextFileMode == StaticConfig.Model.GREEDY) {   /* greedy model */
+            if (StaticConfig.current().modelForTextFileMode == StaticConfig.Model.GREEDY) {   /* greedy model */
                 System.out.println("\nUsing greedy model");
 
                 // run experiment
                 RunHeuristicTest.runHeuristicPipeline(null, testDocs, null, null,
-                        StaticConfig.beginMargin, StaticConfig.endMargin, StaticConfig.cueMargin, perceptrons);
-            } else if (StaticConfig.modelForTextFileMode == StaticConfig.Model.CRF) {   /* CRF model */
+                        StaticConfig.current().beginMargin, StaticConfig.current().endMargin, StaticConfig.current().cueMargin, perceptrons);
+            } else if (StaticConfig.current().modelForTextFileMode == StaticConfig.Model.CRF) {   /* CRF model */
                 System.out.println("\nUsing CRF model");
 
                 // load crf
                 CrfClassifier crf = new CrfClassifier();
-                crf.loadCrf(StaticConfig.crfModelFile);
+                crf.loadCrf(StaticConfig.current().crfModelFile);
 
                 // run experiment
                 RunCrf.runCrfPipeline(null, testDocs, null, null,
-                        StaticConfig.beginMargin, StaticConfig.endMargin, StaticConfig.cueMargin,
+                        StaticConfig.current().beginMargin, StaticConfig.current().endMargin, StaticConfig.current().cueMargin,
                         0, perceptrons, crf);
-            } else if (StaticConfig.modelForTextFileMode == StaticConfig.Model.SAMPLE) {   /* sampling model */
+            } else if (StaticConfig.current().modelForTextFileMode == StaticConfig.Model.SAMPLE) {   /* sampling model */
                 System.out.println("\nUsing SemiMarkov model");
 
                 // run experiment
                 RunPerceptronSampler.runPsPipeline(null, testDocs, null, null,
-                        StaticConfig.beginMargin, StaticConfig.endMargin, StaticConfig.cueMargin, perceptrons);
+                        StaticConfig.current().beginMargin, StaticConfig.current().endMargin, StaticConfig.current().cueMargin, perceptrons);
             }
-        } else if (StaticConfig.cliMode == StaticConfig.CliMode.TRAIN) {   /* we are in training mode now */
+        } else if (StaticConfig.current().cliMode == StaticConfig.CliMode.TRAIN) {   /* we are in training mode now */
             // load data
             ProcessedCorpus pc = new ProcessedCorpus(PARCCorpus.getInstance());
             List<Document> trainDocs = pc.getTrain();
@@ -209,24 +213,24 @@ public class QSample {
             List<Document> valDocs = pc.getDev();
             List<Document> resDocs = pc.getTrainSample(10);
 
-            if (StaticConfig.modelForTextFileMode == StaticConfig.Model.GREEDY) {   /* greedy model */
+            if (StaticConfig.current().modelForTextFileMode == StaticConfig.Model.GREEDY) {   /* greedy model */
                 // run experiment
                 RunHeuristicTest.runHeuristicPipeline(trainDocs, testDocs, valDocs, resDocs,
-                        StaticConfig.beginMargin, StaticConfig.endMargin, StaticConfig.cueMargin, null);
-            } else if (StaticConfig.modelForTextFileMode == StaticConfig.Model.CRF) {   /* CRF model */
+                        StaticConfig.current().beginMargin, StaticConfig.current().endMargin, StaticConfig.current().cueMargin, null);
+            } else if (StaticConfig.current().modelForTextFileMode == StaticConfig.Model.CRF) {   /* CRF model */
                 // run experiment
                 CrfClassifier crf = RunCrf.runCrfPipeline(trainDocs, testDocs, valDocs, resDocs,
-                        StaticConfig.beginMargin, StaticConfig.endMargin, StaticConfig.cueMargin, 500, null, null);
+                        StaticConfig.current().beginMargin, StaticConfig.current().endMargin, StaticConfig.current().cueMargin, 500, null, null);
 
                 // save model
                 crf.saveCrf(logFileName + ".crfmodel");
-            } else if (StaticConfig.modelForTextFileMode == StaticConfig.Model.SAMPLE) {   /* sampling model */
+            } else if (StaticConfig.current().modelForTextFileMode == StaticConfig.Model.SAMPLE) {   /* sampling model */
                 // run experiment
                 QuotationPerceptrons perceptrons = RunPerceptronSampler.runPsPipeline(trainDocs, testDocs, valDocs, resDocs,
-                        StaticConfig.beginMargin, StaticConfig.endMargin, StaticConfig.cueMargin, null);
+                        StaticConfig.current().beginMargin, StaticConfig.current().endMargin, StaticConfig.current().cueMargin, null);
 
                 // save model
-                Common.serializeModels(perceptrons, logFileName + ".models");
+                Common.saveModels(perceptrons, logFileName);
 
             }
         } else {    /* unknown mode? */
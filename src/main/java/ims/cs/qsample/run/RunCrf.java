@@ -107,7 +107,7 @@ public class RunCrf {
         List<Document> valDocs = pc.getDev();
         List<Document> resDocs = pc.getTrainSample(10);
 
-        return runCrfPipeline(trainDocs, testDocs, valDocs, resDocs, StaticConfig.beginMargin, StaticConfig.endMargin, StaticConfig.cueMargin, 500, null, null);
+        return runCrfPipeline(trainDocs, testDocs, valDocs, resDocs, StaticConfig.current().beginMargin, StaticConfig.current().endMargin, StaticConfig.current().cueMargin, 500, null, null);
     }
 
     /**
@@ -119,7 +119,7 @@ public class RunCrf {
      * @throws IOException
      */
     public static void main(String[] args) throws ClassNotFoundException, SAXException, ParserConfigurationException, IOException {
-        String logFileName = NewStaticPrinter.getLogFileName(Common.pathConcat(StaticConfig.outputDirectory, "crf-"));
+        String logFileName = NewStaticPrinter.getLogFileName(Common.pathConcat(StaticConfig.current().outputDirectory, "crf-"));
         NewStaticPrinter.init(logFileName);
         MultiOutputStream.init(logFileName);
 
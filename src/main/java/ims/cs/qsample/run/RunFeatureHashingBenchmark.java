@@ -0,0 +1,107 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.qsample.run;
+
+import ims.cs.lingdata.Document;
+import ims.cs.parc.PARCCorpus;
+import ims.cs.parc.ProcessedCorpus;
+import ims.cs.qsample.evaluate.EvaluateSpan;
+import ims.cs.qsample.features.FeatureIntSet;
+import ims.cs.qsample.greedysample.HeuristicSampler;
+import ims.cs.qsample.models.QuotationPerceptrons;
+import ims.cs.qsample.perceptron.PerceptronTrainer;
+import ims.cs.util.StaticConfig;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Compare the feature dictionary with feature hashing at several table sizes in terms of F1 and heap usage.
+ * Each setting extracts all features anew, trains the token-level perceptrons and evaluates the greedy model on the
+ * test data.
+ */
+public class RunFeatureHashingBenchmark {
+
+    static final int[] DEFAULT_HASH_BITS = {0, 14, 16, 18, 20, 22};
+
+    /**
+     * Heap in use after garbage collection, in MB
+     * @return
+     */
+    static double usedHeapMb() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return (runtime.totalMemory() - runtime.freeMemory()) / (1024.0 * 1024.0);
+    }
+
+    /**
+     * Extract features with the given number of hash bits, train and evaluate
+     * @param hashBits 0 to use the feature dictionary
+     * @return strict content F1 on the test data, heap usage in MB and the size of the feature index map
+     */
+    public static double[] trainAndEvaluate(int hashBits) throws IOException, ClassNotFoundException, SAXException, ParserConfigurationException {
+        StaticConfig.current().featureHashBits = hashBits;
+        FeatureIntSet.resetFeatureIndexMap();
+
+        ProcessedCorpus pc = new ProcessedCorpus(PARCCorpus.getInstance());
+        List<Document> trainDocs = pc.getTrain();
+        List<Document> testDocs = pc.getTest();
+
+        QuotationPerceptrons perceptrons = PerceptronTrainer.trainAllPerceptronsAndApply(trainDocs, testDocs, null, null,
+                StaticConfig.current().beginMargin, StaticConfig.current().endMargin, StaticConfig.current().cueMargin, false, 10, 10);
+
+        HeuristicSampler sampler = new HeuristicSampler();
+        sampler.sampleGreedy(testDocs, StaticConfig.current().maxCueDistanceHeuristic, StaticConfig.current().maxLengthHeuristic);
+        EvaluateSpan.ResultSet resultSet = EvaluateSpan.evaluateAndPrint(hashBits + "B ", "|", null, testDocs, null, null);
+
+        // measure while documents and models are still alive
+        double heap = usedHeapMb();
+        int mapSize = FeatureIntSet.getFeatureIndexMap().size();
+
+        return new double[] {resultSet.testResults.strictContent.f1, heap, mapSize};
+    }
+
+    /**
+     * Arguments: [configuration file] [hash bits ...] (0 stands for the feature dictionary)
+     * @param args
+     * @throws IOException
+     * @throws ClassNotFoundException
+     * @throws SAXException
+     * @throws ParserConfigurationException
+     */
+    public static void main(String[] args) throws IOException, ClassNotFoundException, SAXException, ParserConfigurationException {
+        if (args.length > 0) StaticConfig.loadConfig(args[0]);
+
+        int[] hashBits = DEFAULT_HASH_BITS;
+        if (args.length > 1) {
+            hashBits = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) hashBits[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        double[][] results = new double[hashBits.length][];
+        for (int i = 0; i < hashBits.length; i++) results[i] = trainAndEvaluate(hashBits[i]);
+
+        System.out.println("setting\tfeatures/buckets\tF1\theap (MB)");
+        for (int i = 0; i < hashBits.length; i++) {
+            String setting = hashBits[i] > 0 ? "hash " + hashBits[i] + " bits" : "dictionary";
+            System.out.println(setting + "\t" + (int) results[i][2] + "\t" + results[i][0] + "\t" + results[i][1]);
+        }
+    }
+}
@@ -121,7 +121,7 @@ public class RunHeuristicTest {
         List<Document> valDocs = pc.getDev();
         List<Document> resDocs = pc.getTrainSample(10);
 
-        runHeuristicPipeline(trainDocs, testDocs, valDocs, resDocs, StaticConfig.beginMargin, StaticConfig.endMargin, StaticConfig.cueMargin, null);
+        runHeuristicPipeline(trainDocs, testDocs, valDocs, resDocs, StaticConfig.current().beginMargin, StaticConfig.current().endMargin, StaticConfig.current().cueMargin, null);
     }
 
     /**
@@ -0,0 +1,103 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.qsample.run;
+
+import ims.cs.lingdata.Document;
+import ims.cs.parc.PARCCorpus;
+import ims.cs.parc.ProcessedCorpus;
+import ims.cs.qsample.evaluate.EvaluateSpan;
+import ims.cs.qsample.greedysample.HeuristicSampler;
+import ims.cs.qsample.greedysample.PerceptronSampler;
+import ims.cs.qsample.models.HigherSpanModel;
+import ims.cs.qsample.models.QuotationPerceptrons;
+import ims.cs.qsample.perceptron.PerceptronTrainer;
+import ims.cs.util.StaticConfig;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Compare sequential and lock-free multi-threaded training of the span model in terms of training time and F1.
+ * Both runs start from the same token-level perceptrons and the same heuristic initialization.
+ */
+public class RunLockFreeBenchmark {
+
+    /**
+     * Train a fresh span model with the given number of threads, then predict and evaluate on the test data
+     * @param perceptrons pre-trained token-level perceptrons
+     * @param trainDocs
+     * @param testDocs
+     * @param numThreads
+     * @return training time in seconds and strict content F1 on the test data
+     */
+    public static double[] trainAndEvaluate(QuotationPerceptrons perceptrons, List<Document> trainDocs, List<Document> testDocs, int numThreads) {
+        StaticConfig.current().numSamplingThreads = numThreads;
+        perceptrons.associatedSpanModel = new HigherSpanModel();
+
+        // same initialization for every run
+        HeuristicSampler heuristicSampler = new HeuristicSampler();
+        for (Document document : trainDocs) document.predictedSpanSet.clear();
+        heuristicSampler.sampleGreedy(trainDocs, StaticConfig.current().maxCueDistanceHeuristic, StaticConfig.current().maxLengthHeuristic);
+
+        // train
+        PerceptronSampler perceptronSampler = new PerceptronSampler(perceptrons);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < StaticConfig.current().outerIter; i++) {
+            perceptronSampler.sampleAndScoreBeginEnd(trainDocs, true, StaticConfig.current().innerIter);
+        }
+        double seconds = (System.currentTimeMillis() - start) / 1000.0;
+
+        // predict and evaluate
+        RunPerceptronSampler.predict(testDocs, perceptronSampler, heuristicSampler);
+        EvaluateSpan.ResultSet resultSet = EvaluateSpan.evaluateAndPrint(numThreads + "T ", "|", null, testDocs, null, null);
+
+        return new double[] {seconds, resultSet.testResults.strictContent.f1};
+    }
+
+    /**
+     * Arguments: [configuration file] [number of threads]
+     * @param args
+     * @throws IOException
+     * @throws ClassNotFoundException
+     * @throws SAXException
+     * @throws ParserConfigurationException
+     */
+    public static void main(String[] args) throws IOException, ClassNotFoundException, SAXException, ParserConfigurationException {
+        if (args.length > 0) StaticConfig.loadConfig(args[0]);
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 1) numThreads = Integer.parseInt(args[1]);
+
+        ProcessedCorpus pc = new ProcessedCorpus(PARCCorpus.getInstance());
+        List<Document> trainDocs = pc.getTrain();
+        List<Document> testDocs = pc.getTest();
+
+        // token-level models are shared by both runs
+        QuotationPerceptrons perceptrons = PerceptronTrainer.trainAllPerceptronsAndApply(trainDocs, testDocs, null, null,
+                StaticConfig.current().beginMargin, StaticConfig.current().endMargin, StaticConfig.current().cueMargin, false, 10, 10);
+        Common.addFeaturesToGoldSpans(trainDocs);
+
+        double[] sequential = trainAndEvaluate(perceptrons, trainDocs, testDocs, 1);
+        double[] lockFree = trainAndEvaluate(perceptrons, trainDocs, testDocs, numThreads);
+
+        System.out.println("Sequential: " + sequential[0] + "s, F1 " + sequential[1]);
+        System.out.println("Lock-free (" + numThreads + " threads): " + lockFree[0] + "s, F1 " + lockFree[1]);
+        System.out.println("Speedup: " + sequential[0] / lockFree[0] + ", F1 delta: " + (lockFree[1] - sequential[1]));
+    }
+}
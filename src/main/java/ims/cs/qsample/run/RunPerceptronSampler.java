@@ -50,8 +50,8 @@ public class RunPerceptronSampler {
      */
     public static void predict(List<Document> documents, PerceptronSampler perceptronSampler, HeuristicSampler heuristicSampler)  {
         for (Document document : documents) document.predictedSpanSet.clear();
-        if (documents != null) heuristicSampler.sampleGreedy(documents, StaticConfig.maxCueDistanceHeuristic, StaticConfig.maxLengthHeuristic);
-        perceptronSampler.sampleAndScoreBeginEnd(documents, false, StaticConfig.predictionIter);
+        if (documents != null) heuristicSampler.sampleGreedy(documents, StaticConfig.current().maxCueDistanceHeuristic, StaticConfig.current().maxLengthHeuristic);
+        perceptronSampler.sampleAndScoreBeginEnd(documents, false, StaticConfig.current().predictionIter);
     }
 
     /**
@@ -74,7 +74,7 @@ public class RunPerceptronSampler {
 
         // set up models, pre-train, predict
         if (quotationPerceptrons == null) {
-            if (StaticConfig.jackknifing) {
+            if (StaticConfig.current().jackknifing) {
                 quotationPerceptrons = PerceptronTrainer.trainAllPerceptronsAndApplyWithJackknifing(trainDocs, testDocs, valDocs, resDocs,
                         beginMargin, endMargin, cueMargin, false, 10, 10, 10);
             } else {
@@ -91,10 +91,10 @@ public class RunPerceptronSampler {
 
         // INITIALIZE W/ HEURISTICS
         HeuristicSampler heuristicSampler = new HeuristicSampler();
-        if (trainDocs != null) heuristicSampler.sampleGreedy(trainDocs, StaticConfig.maxCueDistanceHeuristic, StaticConfig.maxLengthHeuristic);
-        if (testDocs != null) heuristicSampler.sampleGreedy(testDocs, StaticConfig.maxCueDistanceHeuristic, StaticConfig.maxLengthHeuristic);
-        if (valDocs != null) heuristicSampler.sampleGreedy(valDocs, StaticConfig.maxCueDistanceHeuristic, StaticConfig.maxLengthHeuristic);
-        if (resDocs != null) heuristicSampler.sampleGreedy(resDocs, StaticConfig.maxCueDistanceHeuristic, StaticConfig.maxLengthHeuristic);
+        if (trainDocs != null) heuristicSampler.sampleGreedy(trainDocs, StaticConfig.current().maxCueDistanceHeuristic, StaticConfig.current().maxLengthHeuristic);
+        if (testDocs != null) heuristicSampler.sampleGreedy(testDocs, StaticConfig.current().maxCueDistanceHeuristic, StaticConfig.current().maxLengthHeuristic);
+        if (valDocs != null) heuristicSampler.sampleGreedy(valDocs, StaticConfig.current().maxCueDistanceHeuristic, StaticConfig.current().maxLengthHeuristic);
+        if (resDocs != null) heuristicSampler.sampleGreedy(resDocs, StaticConfig.current().maxCueDistanceHeuristic, StaticConfig.current().maxLengthHeuristic);
 
         // evaluate
         EvaluateSpan.evaluateAndPrint("INIT", "|", trainDocs, testDocs, valDocs, resDocs);
@@ -105,12 +105,13 @@ public class RunPerceptronSampler {
         // train if necessary
         if (doTraining) {
             if (trainDocs != null) Common.addFeaturesToGoldSpans(trainDocs);
+            long trainingStart = System.currentTimeMillis();
 
-            for (int i = 0; i < StaticConfig.outerIter; i++) {
-                perceptronSampler.sampleAndScoreBeginEnd(trainDocs, true, StaticConfig.innerIter);
+            for (int i = 0; i < StaticConfig.current().outerIter; i++) {
+                perceptronSampler.sampleAndScoreBeginEnd(trainDocs, true, StaticConfig.current().innerIter);
 
                 // predict periodically
-                if (i != 0 && i % StaticConfig.predictEvery == 0) {
+                if (i != 0 && i % StaticConfig.current().predictEvery == 0) {
                     if (testDocs != null) predict(testDocs, perceptronSampler, heuristicSampler);
                     if (valDocs != null) predict(valDocs, perceptronSampler, heuristicSampler);
                     if (resDocs != null) predict(resDocs, perceptronSampler, heuristicSampler);
@@ -119,6 +120,9 @@ public class RunPerceptronSampler {
                 // evaluate
                 EvaluateSpan.evaluateAndPrint("" + i + " ", "|", trainDocs, testDocs, valDocs, resDocs);
             }
+
+            System.out.println("Span model training took " + (System.currentTimeMillis() - trainingStart) / 1000.0 +
+                    "s using " + StaticConfig.current().numSamplingThreads + " thread(s)");
         }
 
         // predict on test
@@ -140,7 +144,7 @@ public class RunPerceptronSampler {
             // save feature weights
             System.out.println("Printing perceptron features");
             try {
-                quotationPerceptrons.associatedSpanModel.printWeights(NewStaticPrinter.fileName + ".weightsSpan" + StaticConfig.outerIter);
+                quotationPerceptrons.associatedSpanModel.printWeights(NewStaticPrinter.getFileName() + ".weightsSpan" + StaticConfig.current().outerIter);
             } catch (FileNotFoundException e) {
                 e.printStackTrace();
                 System.out.println("Failed to print perceptron features");
@@ -169,7 +173,7 @@ public class RunPerceptronSampler {
         NewStaticPrinter.isOn = true;
 
         return runPsPipeline(trainDocs, testDocs, valDocs, resDocs,
-                StaticConfig.beginMargin, StaticConfig.endMargin, StaticConfig.cueMargin, null);
+                StaticConfig.current().beginMargin, StaticConfig.current().endMargin, StaticConfig.current().cueMargin, null);
     }
 
     /**
@@ -181,13 +185,13 @@ public class RunPerceptronSampler {
      * @throws ParserConfigurationException
      */
     public static void main(String[] args) throws IOException, ClassNotFoundException, SAXException, ParserConfigurationException {
-        String logFileName = NewStaticPrinter.getLogFileName(Common.pathConcat(StaticConfig.outputDirectory, "perceptronsampler-"));
+        String logFileName = NewStaticPrinter.getLogFileName(Common.pathConcat(StaticConfig.current().outputDirectory, "perceptronsampler-"));
         MultiOutputStream.init(logFileName);
         NewStaticPrinter.init(logFileName);
 
         QuotationPerceptrons perceptrons = fullExperiment();
 
         // serialization
-        Common.serializeModels(perceptrons, logFileName + ".models");
+        Common.saveModels(perceptrons, logFileName);
     }
 }
@@ -0,0 +1,111 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.qsample.run;
+
+import ims.cs.lingdata.Document;
+import ims.cs.parc.PARCCorpus;
+import ims.cs.parc.ProcessedCorpus;
+import ims.cs.qsample.evaluate.EvaluateSpan;
+import ims.cs.qsample.greedysample.HeuristicSampler;
+import ims.cs.qsample.models.QuotationPerceptrons;
+import ims.cs.util.StaticConfig;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Compare a perceptron model before and after pruning in terms of model size, load time, scoring throughput and F1
+ * of the greedy model on the test data.
+ */
+public class RunPruningBenchmark {
+
+    static final int NUM_SCORING_ROUNDS = 10;
+
+    /**
+     * Load a model from file, then predict and evaluate on freshly processed test data
+     * @param modelFile
+     * @param label
+     * @return model size in bytes, load time in seconds, tokens scored per second and strict content F1
+     */
+    public static double[] evaluate(File modelFile, String label) throws IOException, ClassNotFoundException, SAXException, ParserConfigurationException {
+        // features about cues are added during prediction, so every run needs its own copy of the data
+        List<Document> testDocs = new ProcessedCorpus(PARCCorpus.getInstance()).getTest();
+
+        long loadStart = System.nanoTime();
+        QuotationPerceptrons perceptrons = Common.deserializeModels(modelFile.getPath());
+        double loadTime = (System.nanoTime() - loadStart) / 1e9;
+
+        perceptrons.predictionPipelineCue(null, testDocs, null, null);
+        perceptrons.predictionPipelineBoundary(null, testDocs, null, null);
+
+        // scoring throughput of all three perceptrons
+        int numTokens = 0;
+        for (Document document : testDocs) numTokens += document.tokenList.size();
+
+        long scoringStart = System.nanoTime();
+        for (int i = 0; i < NUM_SCORING_ROUNDS; i++) {
+            perceptrons.predictCues(testDocs);
+            perceptrons.predictBeginEnd(testDocs);
+        }
+        double throughput = (double) numTokens * NUM_SCORING_ROUNDS / ((System.nanoTime() - scoringStart) / 1e9);
+
+        HeuristicSampler sampler = new HeuristicSampler();
+        sampler.sampleGreedy(testDocs, StaticConfig.current().maxCueDistanceHeuristic, StaticConfig.current().maxLengthHeuristic);
+        EvaluateSpan.ResultSet resultSet = EvaluateSpan.evaluateAndPrint(label + " ", "|", null, testDocs, null, null);
+
+        return new double[] {modelFile.length(), loadTime, throughput, resultSet.testResults.strictContent.f1};
+    }
+
+    /**
+     * Arguments: [configuration file] [model file] [threshold] [top k]
+     * Threshold and top k default to the values of the configuration.
+     * @param args
+     * @throws IOException
+     * @throws ClassNotFoundException
+     * @throws SAXException
+     * @throws ParserConfigurationException
+     */
+    public static void main(String[] args) throws IOException, ClassNotFoundException, SAXException, ParserConfigurationException {
+        if (args.length > 0) StaticConfig.loadConfig(args[0]);
+        String modelFileName = args.length > 1 ? args[1] : StaticConfig.current().perceptronModelFile;
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : StaticConfig.current().pruneThreshold;
+        int topK = args.length > 3 ? Integer.parseInt(args[3]) : StaticConfig.current().pruneTopK;
+
+        // write both models with the current version, so that sizes are comparable
+        QuotationPerceptrons perceptrons = Common.deserializeModels(modelFileName);
+        File fullFile = File.createTempFile("qsample-full", ".models");
+        File prunedFile = File.createTempFile("qsample-pruned", ".models");
+        fullFile.deleteOnExit();
+        prunedFile.deleteOnExit();
+
+        Common.serializeModels(perceptrons, fullFile.getPath());
+        perceptrons.prune(threshold, topK);
+        Common.serializeModels(perceptrons, prunedFile.getPath());
+
+        double[] full = evaluate(fullFile, "FULL");
+        double[] pruned = evaluate(prunedFile, "PRUNED");
+
+        System.out.println("model\tsize (bytes)\tload time (s)\ttokens/s\tF1");
+        System.out.println("full\t" + (long) full[0] + "\t" + full[1] + "\t" + full[2] + "\t" + full[3]);
+        System.out.println("pruned\t" + (long) pruned[0] + "\t" + pruned[1] + "\t" + pruned[2] + "\t" + pruned[3]);
+        System.out.println("F1 delta: " + (pruned[3] - full[3]));
+    }
+}
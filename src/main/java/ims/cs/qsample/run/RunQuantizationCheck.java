@@ -0,0 +1,133 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.qsample.run;
+
+import ims.cs.lingdata.Document;
+import ims.cs.lingdata.Token;
+import ims.cs.parc.PARCCorpus;
+import ims.cs.parc.ProcessedCorpus;
+import ims.cs.qsample.models.QuotationPerceptrons;
+import ims.cs.qsample.perceptron.Perceptron;
+import ims.cs.qsample.perceptron.QuantizedWeights;
+import ims.cs.qsample.spans.Span;
+import ims.cs.util.StaticConfig;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Verify a quantized model against the full-precision model it was made from: report the maximum score drift and
+ * the rate at which the predictions (sign of the score) disagree, for each perceptron on the test tokens and for the
+ * span model on the gold spans of the test data.
+ */
+public class RunQuantizationCheck {
+
+    /**
+     * Drift and disagreement statistics of one model
+     */
+    static class Comparison {
+        String name;
+        double maxDrift = 0;
+        int numDisagreements = 0;
+        int numScores = 0;
+
+        Comparison(String name) { this.name = name; }
+
+        void add(double fullScore, double quantizedScore) {
+            maxDrift = Math.max(maxDrift, Math.abs(fullScore - quantizedScore));
+            if ((fullScore > 0) != (quantizedScore > 0)) numDisagreements++;
+            numScores++;
+        }
+
+        void print() {
+            double rate = numScores > 0 ? (double) numDisagreements / numScores : 0;
+            System.out.println(name + "\t" + maxDrift + "\t" + numDisagreements + "/" + numScores + " (" + rate + ")");
+        }
+    }
+
+    /**
+     * Compare the scores of a full-precision and a quantized perceptron on all tokens
+     * @param comparison
+     * @param full
+     * @param quantized
+     * @param documents
+     */
+    static void compareTokens(Comparison comparison, Perceptron full, Perceptron quantized, List<Document> documents) {
+        for (Document document : documents)
+            for (Token token : document.tokenList)
+                comparison.add(full.score(token.boundaryFeatureSet, true), quantized.score(token.boundaryFeatureSet, true));
+    }
+
+    /**
+     * Arguments: [configuration file] [model file] [precision (FLOAT32 or INT16)]
+     * @param args
+     * @throws IOException
+     * @throws ClassNotFoundException
+     * @throws SAXException
+     * @throws ParserConfigurationException
+     */
+    public static void main(String[] args) throws IOException, ClassNotFoundException, SAXException, ParserConfigurationException {
+        if (args.length > 0) StaticConfig.loadConfig(args[0]);
+        String modelFileName = args.length > 1 ? args[1] : StaticConfig.current().perceptronModelFile;
+        QuantizedWeights.Precision precision = QuantizedWeights.Precision.INT16;
+        if (args.length > 2) precision = QuantizedWeights.Precision.valueOf(args[2]);
+
+        QuotationPerceptrons full = Common.deserializeModels(modelFileName);
+        QuotationPerceptrons quantized = full.quantize(precision);
+
+        // model sizes on disk
+        File fullFile = File.createTempFile("qsample-full", ".models");
+        File quantizedFile = File.createTempFile("qsample-quantized", ".models");
+        fullFile.deleteOnExit();
+        quantizedFile.deleteOnExit();
+        Common.serializeModels(full, fullFile.getPath());
+        Common.serializeModels(quantized, quantizedFile.getPath());
+
+        // held-out data with all features, as predicted by the full-precision model
+        List<Document> testDocs = new ProcessedCorpus(PARCCorpus.getInstance()).getTest();
+        full.predictionPipelineCue(null, testDocs, null, null);
+        full.predictionPipelineBoundary(null, testDocs, null, null);
+        Common.addFeaturesToGoldSpans(testDocs);
+
+        Comparison cue = new Comparison("cue");
+        Comparison begin = new Comparison("begin");
+        Comparison end = new Comparison("end");
+        Comparison span = new Comparison("span");
+
+        compareTokens(cue, full.cuePerceptron, quantized.cuePerceptron, testDocs);
+        compareTokens(begin, full.beginPerceptron, quantized.beginPerceptron, testDocs);
+        compareTokens(end, full.endPerceptron, quantized.endPerceptron, testDocs);
+
+        if (full.associatedSpanModel != null) {
+            full.associatedSpanModel.finalizeAverage();
+            for (Document document : testDocs)
+                for (Span goldSpan : document.goldSpanSet)
+                    span.add(full.associatedSpanModel.score(goldSpan, true), quantized.associatedSpanModel.score(goldSpan, true));
+        }
+
+        System.out.println("Model size: " + fullFile.length() + " bytes (full), " + quantizedFile.length() + " bytes (" + precision + ")");
+        System.out.println("model\tmax drift\tdisagreements");
+        cue.print();
+        begin.print();
+        end.print();
+        if (full.associatedSpanModel != null) span.print();
+    }
+}
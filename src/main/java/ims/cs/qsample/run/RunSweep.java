@@ -0,0 +1,284 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.qsample.run;
+
+import ims.cs.lingdata.Document;
+import ims.cs.parc.PARCCorpus;
+import ims.cs.parc.ProcessedCorpus;
+import ims.cs.qsample.evaluate.EvaluateSpan;
+import ims.cs.util.MultiOutputStream;
+import ims.cs.util.NewStaticPrinter;
+import ims.cs.util.StaticConfig;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Hyperparameter sweep over one preprocessed corpus. The corpus is loaded and its features are extracted only once;
+ * each configuration then runs on its own copy of the documents in their freshly processed state (see
+ * CorpusSnapshot) and with its own settings (see StaticConfig.use), so that configurations can run concurrently.
+ *
+ * The sweep is specified in a properties file. The keys search (grid or random, default grid), numSamples (number of
+ * random configurations, default 10), seed (default 0) and numThreads (number of configurations to run at once,
+ * default 1) control the search; all other keys are configuration options with either a comma-separated list of
+ * values or, for random search only, a range low..high from which values are drawn uniformly. Example:
+ *
+ *   search = random
+ *   numSamples = 20
+ *   numThreads = 4
+ *   beginMargin = 0..50
+ *   samplerMarginPositive = 0..10
+ *   maxLengthSampling = 50,75,100
+ *
+ * Configurations share the features of the corpus and copy only the state that a run modifies, so that each running
+ * configuration mainly adds the memory of its models. The thread pools of the individual runs (numTrainingThreads,
+ * numSamplingThreads, numJackknifeThreads) can be set in the configuration file or the sweep like any other option.
+ * Options of preprocessing and feature extraction only affect features computed during the runs, as all
+ * configurations share the preprocessed corpus.
+ */
+public class RunSweep {
+
+    static final String RANGE_SEPARATOR = "..";
+
+    /**
+     * Expand a sweep specification into the list of configurations to run, each a map from option names to values
+     * @param spec
+     * @return
+     */
+    public static List<Map<String, String>> expand(Properties spec) {
+        String search = spec.getProperty("search", "grid");
+        int numSamples = Integer.parseInt(spec.getProperty("numSamples", "10"));
+        Random random = new Random(Long.parseLong(spec.getProperty("seed", "0")));
+
+        // options in a fixed order, so that configurations are reproducible
+        List<String> options = new ArrayList<>();
+        for (String name : spec.stringPropertyNames())
+            if (!name.equals("search") && !name.equals("numSamples") && !name.equals("seed") && !name.equals("numThreads"))
+                options.add(name);
+        Collections.sort(options);
+
+        // check option names early rather than after hours of training
+        for (String option : options) {
+            StaticConfig.getOptionType(option);
+            if (option.equals("featureHashBits"))
+                throw new Error("All configurations share the features of the corpus, so featureHashBits cannot be swept");
+        }
+
+        List<Map<String, String>> configurations = new ArrayList<>();
+
+        if (search.equals("grid")) {
+            configurations.add(new LinkedHashMap<String, String>());
+            for (String option : options) {
+                String values = spec.getProperty(option);
+                if (values.contains(RANGE_SEPARATOR)) throw new Error("Ranges are only supported in random search: " + option);
+
+                // cartesian product with the values of this option
+                List<Map<String, String>> extended = new ArrayList<>();
+                for (Map<String, String> configuration : configurations) {
+                    for (String value : values.split(",")) {
+                        Map<String, String> newConfiguration = new LinkedHashMap<>(configuration);
+                        newConfiguration.put(option, value.trim());
+                        extended.add(newConfiguration);
+                    }
+                }
+                configurations = extended;
+            }
+        } else if (search.equals("random")) {
+            for (int i = 0; i < numSamples; i++) {
+                Map<String, String> configuration = new LinkedHashMap<>();
+                for (String option : options) configuration.put(option, draw(option, spec.getProperty(option), random));
+                configurations.add(configuration);
+            }
+        } else {
+            throw new Error("Unknown search type: " + search);
+        }
+
+        return configurations;
+    }
+
+    /**
+     * Draw a random value for an option from a list or range of values
+     * @param option
+     * @param values
+     * @param random
+     * @return
+     */
+    static String draw(String option, String values, Random random) {
+        int rangeIndex = values.indexOf(RANGE_SEPARATOR);
+        if (rangeIndex < 0) {
+            String[] choices = values.split(",");
+            return choices[random.nextInt(choices.length)].trim();
+        }
+
+        String low = values.substring(0, rangeIndex).trim();
+        String high = values.substring(rangeIndex + RANGE_SEPARATOR.length()).trim();
+        Class<?> type = StaticConfig.getOptionType(option);
+
+        if (type == int.class) {
+            int lowInt = Integer.parseInt(low);
+            int highInt = Integer.parseInt(high);
+            return "" + (lowInt + random.nextInt(highInt - lowInt + 1));
+        } else if (type == double.class) {
+            double lowDouble = Double.parseDouble(low);
+            double highDouble = Double.parseDouble(high);
+            return "" + (lowDouble + random.nextDouble() * (highDouble - lowDouble));
+        } else {
+            throw new Error("Ranges are only supported for numeric options: " + option);
+        }
+    }
+
+    /**
+     * Train and predict with the model selected in the configuration
+     * @param trainDocs
+     * @param testDocs
+     * @param valDocs
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    static void runPipeline(List<Document> trainDocs, List<Document> testDocs, List<Document> valDocs) throws IOException, ClassNotFoundException {
+        if (StaticConfig.current().modelForTextFileMode == StaticConfig.Model.GREEDY) {
+            RunHeuristicTest.runHeuristicPipeline(trainDocs, testDocs, valDocs, null,
+                    StaticConfig.current().beginMargin, StaticConfig.current().endMargin, StaticConfig.current().cueMargin, null);
+        } else if (StaticConfig.current().modelForTextFileMode == StaticConfig.Model.CRF) {
+            RunCrf.runCrfPipeline(trainDocs, testDocs, valDocs, null,
+                    StaticConfig.current().beginMargin, StaticConfig.current().endMargin, StaticConfig.current().cueMargin, 500, null, null);
+        } else if (StaticConfig.current().modelForTextFileMode == StaticConfig.Model.SAMPLE) {
+            RunPerceptronSampler.runPsPipeline(trainDocs, testDocs, valDocs, null,
+                    StaticConfig.current().beginMargin, StaticConfig.current().endMargin, StaticConfig.current().cueMargin, null);
+        }
+    }
+
+    /**
+     * Run a configuration on its own copy of the corpus with its own settings, which are derived from the settings of
+     * the calling thread. The settings of the calling thread are not changed.
+     * @param index number of the configuration, for output
+     * @param configuration option values of the configuration
+     * @param snapshot the shared preprocessed documents
+     * @param trainDocs
+     * @param testDocs
+     * @param valDocs
+     * @param logFileName root of the output file names of the sweep
+     * @return evaluation results of the configuration
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    static EvaluateSpan.ResultSet runConfiguration(int index, Map<String, String> configuration, CorpusSnapshot snapshot,
+                                                   List<Document> trainDocs, List<Document> testDocs, List<Document> valDocs,
+                                                   String logFileName) throws IOException, ClassNotFoundException {
+        StaticConfig previousConfig = StaticConfig.current();
+        StaticConfig.use(previousConfig.copy());
+
+        try {
+            for (Map.Entry<String, String> entry : configuration.entrySet()) StaticConfig.setOption(entry.getKey(), entry.getValue());
+
+            // each configuration writes its predictions and weights to its own files
+            NewStaticPrinter.init(logFileName + "-config" + index);
+
+            List<Document> configTrainDocs = snapshot.copy(trainDocs);
+            List<Document> configTestDocs = snapshot.copy(testDocs);
+            List<Document> configValDocs = snapshot.copy(valDocs);
+
+            runPipeline(configTrainDocs, configTestDocs, configValDocs);
+            return EvaluateSpan.evaluateAndPrint("CONFIG" + index + " ", "|", null, configTestDocs, configValDocs, null);
+        } finally {
+            StaticConfig.use(previousConfig);
+        }
+    }
+
+    /**
+     * Arguments: [configuration file] [sweep specification file]
+     * @param args
+     * @throws IOException
+     * @throws ClassNotFoundException
+     * @throws SAXException
+     * @throws ParserConfigurationException
+     */
+    public static void main(String[] args) throws IOException, ClassNotFoundException, SAXException, ParserConfigurationException {
+        if (args.length < 2) throw new Error("Arguments: [configuration file] [sweep specification file]");
+        StaticConfig.loadConfig(args[0]);
+
+        Properties spec = new Properties();
+        try (FileInputStream in = new FileInputStream(args[1])) {
+            spec.load(in);
+        }
+        final List<Map<String, String>> configurations = expand(spec);
+        int numThreads = Integer.parseInt(spec.getProperty("numThreads", "1"));
+        System.out.println("Running " + configurations.size() + " configuration(s) on " + numThreads + " thread(s)");
+
+        final String logFileName = NewStaticPrinter.getLogFileName(Common.pathConcat(StaticConfig.current().outputDirectory, "sweep-"));
+        NewStaticPrinter.isOn = false;
+        MultiOutputStream.init(logFileName);
+
+        // process the corpus once; it stays in this state, as each configuration works on a copy
+        ProcessedCorpus pc = new ProcessedCorpus(PARCCorpus.getInstance());
+        final List<Document> trainDocs = pc.getTrain();
+        final List<Document> testDocs = pc.getTest();
+        final List<Document> valDocs = pc.getDev();
+        final CorpusSnapshot snapshot = new CorpusSnapshot(trainDocs, testDocs, valDocs);
+
+        // threads of the pool start with the settings of the configuration file
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<EvaluateSpan.ResultSet>> futures = new ArrayList<>();
+        List<EvaluateSpan.ResultSet> results = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < configurations.size(); i++) {
+                final int index = i;
+                System.out.println("CONFIG" + index + " " + configurations.get(index));
+
+                futures.add(executor.submit(new Callable<EvaluateSpan.ResultSet>() {
+                    @Override
+                    public EvaluateSpan.ResultSet call() throws IOException, ClassNotFoundException {
+                        return runConfiguration(index, configurations.get(index), snapshot, trainDocs, testDocs, valDocs, logFileName);
+                    }
+                }));
+            }
+
+            for (Future<EvaluateSpan.ResultSet> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new Error(e);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // one table per configuration
+        for (int i = 0; i < configurations.size(); i++) {
+            System.out.println("CONFIG" + i + " " + configurations.get(i));
+            EvaluateSpan.ResultSet resultSet = results.get(i);
+            EvaluateSpan.printResults("CONFIG" + i + " ", "|", null, resultSet.testResults, resultSet.valResults, null);
+        }
+    }
+}
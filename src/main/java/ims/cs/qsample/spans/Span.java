@@ -23,6 +23,7 @@ import ims.cs.lingdata.Token;
 import ims.cs.parc.PARCAttribution;
 import ims.cs.qsample.features.FeatureSet;
 import ims.cs.qsample.greedysample.HasScore;
+import ims.cs.qsample.models.TokenScores;
 
 import java.util.*;
 
@@ -44,6 +45,12 @@ public class Span implements HasScore {
     public String label;
     public FeatureSet featureSet;
 
+    // token score cache and step, features and settings the score was computed with (see HigherSpanModel.scoreCached)
+    public TokenScores scoreCache;
+    public long scoreStep;
+    public boolean scoreAverage;
+    public FeatureSet scoreFeatureSet;
+
 
     /**
      * Create a span wrt a sentence. beginInSentence and endInSentence are positions within this sentence.
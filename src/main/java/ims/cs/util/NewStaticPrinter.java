@@ -35,9 +35,23 @@ public class NewStaticPrinter {
     // printer may be turned off
     public static boolean isOn = true;
 
-    public static String fileRoot;
-    public static String fileName;
-    static PrintWriter writer;
+    /**
+     * Log file and the root of the names of other output files
+     */
+    static class Target {
+        String fileRoot;
+        String fileName;
+        PrintWriter writer;
+    }
+
+    // threads write to the target of the thread that started them unless they call init() themselves, so that
+    // several runs in one process can log to separate files
+    static final InheritableThreadLocal<Target> target = new InheritableThreadLocal<Target>() {
+        @Override
+        protected Target initialValue() {
+            return new Target();
+        }
+    };
 
     /**
      * Pass function to do nothing.
@@ -50,9 +64,27 @@ public class NewStaticPrinter {
      * @throws FileNotFoundException
      */
     public static void init(String logFileName) throws FileNotFoundException {
-        fileRoot = logFileName;
-        fileName = logFileName + ".debug";
-        if (isOn) writer = new PrintWriter(fileName);
+        Target newTarget = new Target();
+        newTarget.fileRoot = logFileName;
+        newTarget.fileName = logFileName + ".debug";
+        if (isOn) newTarget.writer = new PrintWriter(newTarget.fileName);
+        target.set(newTarget);
+    }
+
+    /**
+     * Root of the names of output files of the current thread, as set by init()
+     * @return
+     */
+    public static String getFileRoot() {
+        return target.get().fileRoot;
+    }
+
+    /**
+     * Name of the log file of the current thread, which is also used as the root of the names of weight files
+     * @return
+     */
+    public static String getFileName() {
+        return target.get().fileName;
     }
 
 
@@ -74,6 +106,7 @@ public class NewStaticPrinter {
      */
     public static void println(String s) {
         if (isOn) {
+            PrintWriter writer = target.get().writer;
             writer.write(s);
             writer.write("\n");
         }
@@ -85,7 +118,7 @@ public class NewStaticPrinter {
      */
     public static void print(String s) {
         if (isOn) {
-            writer.write(s);
+            target.get().writer.write(s);
         }
     }
 
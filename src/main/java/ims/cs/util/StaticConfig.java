@@ -21,117 +21,183 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 /**
- * A static configuration class
+ * A static configuration class.
+ * Options are read from the settings of the current thread (see current()). All threads share one set of settings
+ * unless a thread installs its own with use(), e.g., to run several configurations in one process. Threads inherit
+ * the settings of the thread that starts them, so that the thread pools of a run see the settings of the run.
  * Created by scheibcn on 5/30/16.
  */
-public abstract class StaticConfig {
+public class StaticConfig implements Cloneable {
     public enum Model {CRF, GREEDY, SAMPLE}
     public enum CliMode {TRAIN, TEST, TEXT}
 
+    // settings of threads that have not installed their own
+    static final StaticConfig defaults = new StaticConfig();
+
+    static final InheritableThreadLocal<StaticConfig> settings = new InheritableThreadLocal<StaticConfig>() {
+        @Override
+        protected StaticConfig initialValue() {
+            return defaults;
+        }
+    };
+
     // FEATURES
     // - syntactic
-    public static boolean dependencyFeatures = true;
-    public static boolean dependencyParentRel = true;
-    public static boolean dependencyParentRelHead = true;
-    public static boolean dependencyChildRel = true;
-    public static boolean dependencyChildRelHead = true;
-
-    public static boolean constituentFeatures = true;
-    public static boolean constituentLevel = true;
-    public static boolean constituentLeftmost = true;
-    public static boolean constituentGoverning = true;
-    public static boolean constituentAncestorL = true;
-    public static boolean constituentParent = true;
-    public static boolean constituentBinning = false;
-    public static boolean constituentBinningStacked = false;
-
-    public static boolean dependencyCueDependent = true;
-    public static boolean sentenceHasCue = false;
+    public boolean dependencyFeatures = true;
+    public boolean dependencyParentRel = true;
+    public boolean dependencyParentRelHead = true;
+    public boolean dependencyChildRel = true;
+    public boolean dependencyChildRelHead = true;
+
+    public boolean constituentFeatures = true;
+    public boolean constituentLevel = true;
+    public boolean constituentLeftmost = true;
+    public boolean constituentGoverning = true;
+    public boolean constituentAncestorL = true;
+    public boolean constituentParent = true;
+    public boolean constituentBinning = false;
+    public boolean constituentBinningStacked = false;
+
+    public boolean dependencyCueDependent = true;
+    public boolean sentenceHasCue = false;
 
     // - lexical
-    public static boolean lexicalToken = false;
-    public static boolean lexicalLemma = false;
-    public static boolean lexicalPos = false;
-    public static boolean lexicalBigram = false;
-    public static int lexicalWindowSize = 5;
+    public boolean lexicalToken = false;
+    public boolean lexicalLemma = false;
+    public boolean lexicalPos = false;
+    public boolean lexicalBigram = false;
+    public int lexicalWindowSize = 5;
+
+    public boolean sentenceHasQuote = true;
+    public boolean sentenceHasNe = true;
+    public boolean sentenceHasPronoun = true;
+    public boolean sentenceLength = true;
+    public boolean sentenceLengthBinning = false;
+    public boolean sentenceLengthBinningStacked = false;
 
-    public static boolean sentenceHasQuote = true;
-    public static boolean sentenceHasNe = true;
-    public static boolean sentenceHasPronoun = true;
-    public static boolean sentenceLength = true;
-    public static boolean sentenceLengthBinning = false;
-    public static boolean sentenceLengthBinningStacked = false;
+    public boolean documentQuotationFeature = true;
+    public boolean documentOffsetConjunction = true;
 
-    public static boolean documentQuotationFeature = true;
-    public static boolean documentOffsetConjunction = true;
+    // - representation
+    public int featureHashBits = 0;  // > 0: hash features into 2^featureHashBits weights instead of keeping a dictionary
 
 
     // PREPROCESSING
-    public static boolean useGoldPreprocessing = true;
-    public static boolean useBioeTags = true;
-    public static String quotationTypes = "DIM";
-    public static boolean flattenQuotes = true;
+    public boolean useGoldPreprocessing = true;
+    public boolean useBioeTags = true;
+    public String quotationTypes = "DIM";
+    public boolean flattenQuotes = true;
 
 
     // HYPERPARAMETERS
     // - sampling iteration
-    public static int outerIter = 30;  // best 30
-    public static int innerIter = 50;  // best 50
-    public static int predictionIter = 1000;  // best 1000
-    public static int predictEvery = 10;  // best 10
-    public static int maxNumTrials = 10;  // best 10
+    public int outerIter = 30;  // best 30
+    public int innerIter = 50;  // best 50
+    public int predictionIter = 1000;  // best 1000
+    public int predictEvery = 10;  // best 10
+    public int maxNumTrials = 10;  // best 10
 
     // - span length
-    public static int maxCueDistanceHeuristic = 30;  // best 30
-    public static int maxLengthHeuristic = 50;  // best 50
+    public int maxCueDistanceHeuristic = 30;  // best 30
+    public int maxLengthHeuristic = 50;  // best 50
 
-    public static int maxCueDistanceSampling = 30;  // best 30
-    public static int maxLengthSampling = 75;  // best 75
+    public int maxCueDistanceSampling = 30;  // best 30
+    public int maxLengthSampling = 75;  // best 75
 
 
     // - margins
-    public static double beginMargin = 25;  // best 25
-    public static double endMargin = 25;    // best 25
-    public static double cueMargin = 25;    // best 25
+    public double beginMargin = 25;  // best 25
+    public double endMargin = 25;    // best 25
+    public double cueMargin = 25;    // best 25
 
-    public static int samplerMarginPositive = 15;  // best 15
-    public static int samplerMarginNegative = 1;   // best 1
+    public int samplerMarginPositive = 15;  // best 15
+    public int samplerMarginNegative = 1;   // best 1
 
 
     // -  temperature
-    public static double beginTemperature = 10;  // best 10
-    public static double endTemperature = 10;    // best 10
-    public static double cueTemperature = 10;    // best 10
+    public double beginTemperature = 10;  // best 10
+    public double endTemperature = 10;    // best 10
+    public double cueTemperature = 10;    // best 10
 
 
     // - training options
-    public static boolean jackknifing = false;  // best false
+    public boolean jackknifing = false;  // best false
+    public int numTrainingThreads = 1;   // > 1 trains perceptrons by parameter mixing on this many threads
+    public int numSamplingThreads = 1;   // > 1 trains the span model lock-free on this many threads
+    public int numJackknifeThreads = 0;  // threads for training the jackknifing folds, 0 for one per processor
+    public int numProcessingThreads = 1; // > 1 loads and featurizes documents on this many threads
+    public int spanFeatureCacheSize = 1000; // span feature sets cached per document for the sampler, 0 to disable
+    public double pruneThreshold = 0;    // > 0 drops token-level features with smaller absolute averaged weight before saving
+    public int pruneTopK = 0;            // > 0 keeps only this many features per token-level perceptron before saving
+    public String exportPrecision = "";  // FLOAT32 or INT16: also save a quantized copy of the model for deployment
 
 
     // PATHS
     // - input data location
-    public static String parcRoot = "/mount/corpora11/d7/Users/scheibcn/quotations/Data/PARC3_complete";
-    public static String pdtbWsjRawDirectory = "/mount/corpora11/d7/Users/scheibcn/quotations/Data/PTB/treebank2/raw/wsj/";
-    public static String bbnPath = "/mount/corpora11/d7/Users/scheibcn/quotations/Data/BBN/bbn-pcet/data/WSJtypes-subtypes-fixed/";
+    public String parcRoot = "/mount/corpora11/d7/Users/scheibcn/quotations/Data/PARC3_complete";
+    public String pdtbWsjRawDirectory = "/mount/corpora11/d7/Users/scheibcn/quotations/Data/PTB/treebank2/raw/wsj/";
+    public String bbnPath = "/mount/corpora11/d7/Users/scheibcn/quotations/Data/BBN/bbn-pcet/data/WSJtypes-subtypes-fixed/";
 
     // - output locations
-    public static String coreNlpOutputDirectory = "/mount/corpora11/d7/Users/scheibcn/quotations/Data/WSJ_corenlp";
-    public static String outputDirectory = "/home/users1/scheibcn/quotations/results/txt/joint-first-run";
+    public String coreNlpOutputDirectory = "/mount/corpora11/d7/Users/scheibcn/quotations/Data/WSJ_corenlp";
+    public String outputDirectory = "/home/users1/scheibcn/quotations/results/txt/joint-first-run";
 
     // BEHAVIOR / COMMAND LINE OPTIONS
-    public static boolean verbose = true;
-    public static CliMode cliMode = CliMode.TEST;
-    public static String inputDirectory = "";
-    public static Model modelForTextFileMode = Model.SAMPLE;
-    public static boolean cacheParses = true;
-    public static boolean oneFilePerInput = false;
+    public boolean verbose = true;
+    public CliMode cliMode = CliMode.TEST;
+    public String inputDirectory = "";
+    public Model modelForTextFileMode = Model.SAMPLE;
+    public boolean cacheParses = true;
+    public boolean oneFilePerInput = false;
+
+    public String crfModelFile = "resources/PARC/models/acl2016.goldtok.crfmodel";
+    public String perceptronModelFile = "resources/PARC/models/acl2016.goldtok.models";
+
+
+    /**
+     * Settings of the current thread
+     * @return
+     */
+    public static StaticConfig current() {
+        return settings.get();
+    }
+
+    /**
+     * Install settings for the current thread and for the threads it starts from now on
+     * @param config
+     */
+    public static void use(StaticConfig config) {
+        settings.set(config);
+    }
 
-    public static String crfModelFile = "resources/PARC/models/acl2016.goldtok.crfmodel";
-    public static String perceptronModelFile = "resources/PARC/models/acl2016.goldtok.models";
+    /**
+     * Independent copy of these settings
+     * @return
+     */
+    public StaticConfig copy() {
+        try {
+            return (StaticConfig) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new Error(e);
+        }
+    }
 
+    /**
+     * Fields of all options
+     * @return
+     */
+    static List<Field> optionFields() {
+        List<Field> fields = new ArrayList<>();
+        for (Field f : StaticConfig.class.getDeclaredFields())
+            if (!Modifier.isStatic(f.getModifiers())) fields.add(f);
+        return fields;
+    }
 
     /**
      * Load configuration from file
@@ -144,35 +210,93 @@ public abstract class StaticConfig {
         properties.load(new FileInputStream(fileName));
 
         // some reflection hacking to load the properties
-        Field[] fields = StaticConfig.class.getDeclaredFields();
-        for(Field f: fields) {
-            f.setAccessible(true);
-            String name = f.getName();
-            Object value = properties.get(name);
+        for(Field f: optionFields()) {
+            Object value = properties.get(f.getName());
 
-            try {
-                if (f.getType() == double.class) {
-                    f.set(null, Double.parseDouble((String) value));
-                } else if (f.getType() == boolean.class) {
-                    f.set(null, Boolean.parseBoolean((String) value));
-                } else if (f.getType() == int.class) {
-                    f.set(null, Integer.parseInt((String) value));
-                } else if (f.getType() == CliMode.class) {
-                    f.set(null, CliMode.valueOf((String) value));
-                } else if (f.getType() == String.class) {
-                    f.set(null, value);
-                } else if (f.getType() == Model.class) {
-                    f.set(null, Model.valueOf((String) value));
-                } else {
-                    System.out.println(f.getName() + " = " + value + " " + f.getType());
-                }
-            } catch (IllegalAccessException e) {
-                e.printStackTrace();
-            }
+            // keep the default for options that are not in the file (e.g., in configurations from older versions)
+            if (value == null) continue;
 
+            setField(f, (String) value);
+        }
+
+    }
+
+    /**
+     * Set a single option from its string representation, as it would appear in a configuration file
+     * @param name
+     * @param value
+     */
+    public static void setOption(String name, String value) {
+        setField(getField(name), value);
+    }
+
+    /**
+     * String representation of the current value of an option
+     * @param name
+     * @return
+     */
+    public static String getOption(String name) {
+        Field f = getField(name);
+        try {
+            f.setAccessible(true);
+            return String.valueOf(f.get(current()));
+        } catch (IllegalAccessException e) {
+            throw new Error(e);
+        } finally {
             f.setAccessible(false);
         }
+    }
+
+    /**
+     * Type of an option
+     * @param name
+     * @return
+     */
+    public static Class<?> getOptionType(String name) {
+        return getField(name).getType();
+    }
+
+    /**
+     * Look up the field of an option
+     * @param name
+     * @return
+     */
+    static Field getField(String name) {
+        for (Field f : optionFields())
+            if (f.getName().equals(name)) return f;
+        throw new Error("Unknown configuration option: " + name);
+    }
+
+    /**
+     * Parse a value according to the type of the field and assign it in the settings of the current thread
+     * @param f
+     * @param value
+     */
+    static void setField(Field f, String value) {
+        StaticConfig config = current();
+        f.setAccessible(true);
+
+        try {
+            if (f.getType() == double.class) {
+                f.set(config, Double.parseDouble(value));
+            } else if (f.getType() == boolean.class) {
+                f.set(config, Boolean.parseBoolean(value));
+            } else if (f.getType() == int.class) {
+                f.set(config, Integer.parseInt(value));
+            } else if (f.getType() == CliMode.class) {
+                f.set(config, CliMode.valueOf(value));
+            } else if (f.getType() == String.class) {
+                f.set(config, value);
+            } else if (f.getType() == Model.class) {
+                f.set(config, Model.valueOf(value));
+            } else {
+                System.out.println(f.getName() + " = " + value + " " + f.getType());
+            }
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+        }
 
+        f.setAccessible(false);
     }
 
     /**
@@ -184,11 +308,10 @@ public abstract class StaticConfig {
         Properties properties = new Properties();
 
         // use reflection to iterate over all fields
-        Field[] fields = StaticConfig.class.getDeclaredFields();
-        for(Field f: fields) {
+        for(Field f: optionFields()) {
             f.setAccessible(true);
             try {
-                properties.put(f.getName(), f.get(null).toString());
+                properties.put(f.getName(), f.get(current()).toString());
             } catch (IllegalAccessException e) {
                 e.printStackTrace();
             }
@@ -0,0 +1,74 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.lingdata;
+
+import edu.stanford.nlp.trees.Constituent;
+import edu.stanford.nlp.trees.Tree;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the constituent index with a scan over Tree.constituents(), as the features did before the index existed
+ */
+public class ConstituentIndexTest {
+
+    static final String[] TREES = {
+            "(ROOT (S (NP (DT The) (NN minister)) (VP (VBD said) (SBAR (IN that) (S (NP (DT the) (NN plan)) " +
+                    "(VP (MD would) (VP (VB fail)))))) (. .)))",
+            "(ROOT (S (`` ``) (S (NP (PRP We)) (VP (VBP are) (ADJP (JJ ready)))) (, ,) ('' '') (NP (PRP he)) " +
+                    "(VP (VBD said)) (. .)))",
+            "(ROOT (NP (NN Yes)))"
+    };
+
+    static boolean scanStarting(Tree tree, int position) {
+        for (Constituent c : tree.constituents())
+            if (c.end() - c.start() > 1 && c.start() == position) return true;
+        return false;
+    }
+
+    static boolean scanEnding(Tree tree, int position) {
+        for (Constituent c : tree.constituents())
+            if (c.end() - c.start() > 1 && c.end() == position) return true;
+        return false;
+    }
+
+    static boolean scanMatches(Tree tree, int start, int end) {
+        for (Constituent c : tree.constituents())
+            if (c.end() - c.start() > 1 && c.start() == start && c.end() == end) return true;
+        return false;
+    }
+
+    @Test
+    public void indexMatchesConstituentScan() {
+        for (String treeString : TREES) {
+            Tree tree = Tree.valueOf(treeString);
+            ConstituentIndex index = new ConstituentIndex(tree);
+            int numTokens = tree.yield().size();
+
+            for (int position = -1; position <= numTokens; position++) {
+                assertEquals(scanStarting(tree, position), index.hasStartingConstituent(position));
+                assertEquals(scanEnding(tree, position), index.hasEndingConstituent(position));
+            }
+
+            for (int start = 0; start < numTokens; start++)
+                for (int end = start; end < numTokens; end++)
+                    assertEquals(scanMatches(tree, start, end), index.matchesConstituent(start, end));
+        }
+    }
+}
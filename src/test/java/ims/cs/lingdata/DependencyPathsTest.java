@@ -0,0 +1,186 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.lingdata;
+
+import edu.stanford.nlp.ling.IndexedWord;
+import edu.stanford.nlp.semgraph.SemanticGraphEdge;
+import edu.stanford.nlp.trees.GrammaticalRelation;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Compares the breadth-first dependency paths with a brute-force search: path lengths with Floyd-Warshall on random
+ * graphs, and path relations with a walk up the governors on random trees (where shortest paths are unique).
+ */
+public class DependencyPathsTest {
+
+    static final String[] RELATIONS = {"nsubj", "dobj", "ccomp", "amod", "advmod"};
+    static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    static IndexedWord word(int index) {
+        return new IndexedWord(null, 0, index + 1);
+    }
+
+    static SemanticGraphEdge edge(int governor, int dependent, String relation) {
+        return new SemanticGraphEdge(word(governor), word(dependent), GrammaticalRelation.valueOf(relation), 1.0, false);
+    }
+
+    /**
+     * All-pairs shortest path lengths of a simple graph, INFINITY if there is no path
+     * @param numNodes
+     * @param adjacent
+     * @return
+     */
+    static int[][] floydWarshall(int numNodes, boolean[][] adjacent) {
+        int[][] distance = new int[numNodes][numNodes];
+        for (int i = 0; i < numNodes; i++)
+            for (int j = 0; j < numNodes; j++)
+                distance[i][j] = i == j ? 0 : (adjacent[i][j] ? 1 : INFINITY);
+
+        for (int k = 0; k < numNodes; k++)
+            for (int i = 0; i < numNodes; i++)
+                for (int j = 0; j < numNodes; j++)
+                    if (distance[i][k] + distance[k][j] < distance[i][j]) distance[i][j] = distance[i][k] + distance[k][j];
+
+        return distance;
+    }
+
+    static void assertLength(int expected, DependencyPaths.Path path) {
+        if (expected == INFINITY) {
+            assertNull(path);
+        } else {
+            assertNotNull(path);
+            assertEquals(expected, path.length());
+        }
+    }
+
+    @Test
+    public void pathLengthsMatchFloydWarshall() {
+        Random random = new Random(18);
+
+        for (int graph = 0; graph < 200; graph++) {
+            int numNodes = 2 + random.nextInt(9);
+            boolean[][] adjacent = new boolean[numNodes][numNodes];
+            Set<Integer> inGraph = new HashSet<>();
+            List<SemanticGraphEdge> edges = new ArrayList<>();
+
+            // random edges, including repeated edges and loops, which are ignored by the paths
+            int numEdges = random.nextInt(2 * numNodes);
+            for (int i = 0; i < numEdges; i++) {
+                int governor = random.nextInt(numNodes);
+                int dependent = random.nextInt(numNodes);
+                edges.add(edge(governor, dependent, RELATIONS[random.nextInt(RELATIONS.length)]));
+                inGraph.add(governor);
+                inGraph.add(dependent);
+                if (governor != dependent) adjacent[governor][dependent] = true;
+            }
+
+            DependencyPaths paths = new DependencyPaths(edges);
+            int[][] distance = floydWarshall(numNodes, adjacent);
+
+            for (int source = 0; source < numNodes; source++) {
+                assertEquals(inGraph.contains(source), paths.contains(word(source)));
+
+                for (int target = 0; target < numNodes; target++) {
+                    assertEquals(adjacent[source][target], paths.hasEdge(word(source), word(target)));
+
+                    int expected = distance[source][target];
+                    if (source == target || !inGraph.contains(source) || !inGraph.contains(target)) expected = INFINITY;
+
+                    assertLength(expected, paths.pathFrom(word(source), word(target)));
+                    assertLength(expected, paths.pathTo(word(source), word(target)));
+                    assertLength(expected, paths.path(word(source), word(target)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void pathRelationsMatchTreeWalk() {
+        Random random = new Random(19);
+
+        for (int tree = 0; tree < 200; tree++) {
+            int numNodes = 2 + random.nextInt(12);
+            int[] governor = new int[numNodes];
+            String[] relation = new String[numNodes];
+            List<SemanticGraphEdge> edges = new ArrayList<>();
+
+            governor[0] = -1;
+            for (int node = 1; node < numNodes; node++) {
+                governor[node] = random.nextInt(node);
+                relation[node] = RELATIONS[random.nextInt(RELATIONS.length)];
+                edges.add(edge(governor[node], node, relation[node]));
+            }
+
+            DependencyPaths paths = new DependencyPaths(edges);
+
+            for (int source = 0; source < numNodes; source++) {
+                for (int target = 0; target < numNodes; target++) {
+                    // walk up from the target; there is a path iff the source is a proper ancestor
+                    int length = 0;
+                    Set<String> relations = new HashSet<>();
+                    int current = target;
+                    while (current != source && current != -1) {
+                        relations.add(relation[current]);
+                        current = governor[current];
+                        length++;
+                    }
+                    boolean reachable = current == source && source != target;
+
+                    DependencyPaths.Path from = paths.pathFrom(word(source), word(target));
+                    DependencyPaths.Path to = paths.pathTo(word(source), word(target));
+                    if (!reachable) {
+                        assertNull(from);
+                        assertNull(to);
+                        continue;
+                    }
+
+                    assertEquals(length, from.length());
+                    assertEquals(length, to.length());
+                    for (String name : RELATIONS) {
+                        assertEquals(relations.contains(name), from.containsRelation(name));
+                        assertEquals(relations.contains(name), to.containsRelation(name));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void wordsWithoutDependenciesHaveNoPaths() {
+        List<SemanticGraphEdge> edges = new ArrayList<>();
+        edges.add(edge(0, 1, "nsubj"));
+        DependencyPaths paths = new DependencyPaths(edges);
+
+        assertFalse(paths.contains(word(2)));
+        assertFalse(paths.contains(null));
+        assertNull(paths.pathFrom(word(0), word(2)));
+        assertNull(paths.pathTo(word(2), word(0)));
+        assertFalse(paths.hasEdge(word(1), word(0)));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ims.cs.qsample.features;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that features of templates resolve to the same indices as their feature strings in every kind of feature
+ * index map, and that only a growing dictionary keeps their values
+ */
+public class FeatureTemplateTest {
+
+    static final FeatureTemplate WORDS = FeatureTemplate.binary("TEST-WORDS=", "_", FeatureTemplate.Kind.STRING, FeatureTemplate.Kind.STRING);
+    static final FeatureTemplate WORD_AT = FeatureTemplate.binary("TEST-WORD=", "@", FeatureTemplate.Kind.STRING, FeatureTemplate.Kind.INT);
+    static final FeatureTemplate NUMBER = FeatureTemplate.unary("TEST-NUMBER=", FeatureTemplate.Kind.INT);
+
+    static final int[] NUMBERS = {0, 7, 10, 101, -3, Integer.MAX_VALUE, Integer.MIN_VALUE};
+
+    @Test
+    public void dictionaryIndicesMatchNames() {
+        FeatureIndexMap featureIndexMap = new FeatureIndexMap();
+
+        int index = featureIndexMap.getIndex(WORDS, "a", 0, "b", 0);
+        assertEquals(featureIndexMap.getIndex("TEST-WORDS=a_b"), index);
+        assertEquals(index, featureIndexMap.getIndex(WORDS, "a", 0, "b", 0));
+        assertEquals("TEST-WORDS=a_b", featureIndexMap.getFeature(index));
+
+        for (int number : NUMBERS) {
+            int numberIndex = featureIndexMap.getIndex(NUMBER, null, number, null, 0);
+            assertEquals("TEST-NUMBER=" + number, featureIndexMap.getFeature(numberIndex));
+            assertEquals(featureIndexMap.getIndex("TEST-WORD=x@" + number), featureIndexMap.getIndex(WORD_AT, "x", 0, null, number));
+        }
+    }
+
+    @Test
+    public void frozenDictionaryFindsKnownFeaturesOnly() {
+        FeatureIndexMap featureIndexMap = new FeatureIndexMap();
+        featureIndexMap.getIndex("TEST-WORDS=a_b");
+        for (int number : NUMBERS) featureIndexMap.getIndex("TEST-WORD=x@" + number);
+
+        FeatureIndexMap frozen = featureIndexMap.freeze();
+        int size = frozen.size();
+
+        assertEquals(featureIndexMap.getIndex("TEST-WORDS=a_b"), frozen.getIndex(WORDS, "a", 0, "b", 0));
+        for (int number : NUMBERS)
+            assertEquals(featureIndexMap.getIndex("TEST-WORD=x@" + number), frozen.getIndex(WORD_AT, "x", 0, null, number));
+
+        // prefixes and extensions of known features are unknown
+        assertEquals(FeatureIndexMap.ABSENT, frozen.getIndex(WORDS, "a", 0, "bc", 0));
+        assertEquals(FeatureIndexMap.ABSENT, frozen.getIndex(WORDS, "a", 0, "", 0));
+        assertEquals(FeatureIndexMap.ABSENT, frozen.getIndex(WORD_AT, "x", 0, null, 1));
+        assertEquals(FeatureIndexMap.ABSENT, frozen.getIndex(WORD_AT, "x", 0, null, 70));
+        assertEquals(size, frozen.size());
+    }
+
+    @Test
+    public void hashedBucketsMatchNames() {
+        HashedFeatureIndexMap featureIndexMap = new HashedFeatureIndexMap(10);
+
+        assertEquals(featureIndexMap.getIndex("TEST-WORDS=a_b"), featureIndexMap.getIndex(WORDS, "a", 0, "b", 0));
+        for (int number : NUMBERS)
+            assertEquals(featureIndexMap.getIndex("TEST-WORD=x@" + number), featureIndexMap.getIndex(WORD_AT, "x", 0, null, number));
+
+        int conjunction = featureIndexMap.getIndex(WORDS, "BE-CONJUNCTION", 0, "b", 0);
+        assertTrue(featureIndexMap.isConjunction(conjunction));
+        assertEquals(featureIndexMap.getIndex("TEST-WORDS=BE-CONJUNCTION_b"), conjunction);
+    }
+
+    @Test
+    public void stringSetsGetNames() {
+        FeatureStringSet fs = new FeatureStringSet();
+        WORD_AT.add(fs, "x", -3);
+        NUMBER.add(fs, 12);
+
+        assertTrue(fs.contains("TEST-WORD=x@-3"));
+        assertTrue(fs.contains("TEST-NUMBER=12"));
+        assertFalse(fs.contains("TEST-NUMBER=1"));
+    }
+}
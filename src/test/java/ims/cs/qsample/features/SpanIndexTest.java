@@ -0,0 +1,165 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.qsample.features;
+
+import ims.cs.corenlp.Helper;
+import ims.cs.lingdata.Document;
+import ims.cs.lingdata.Sentence;
+import ims.cs.lingdata.Token;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the prefix sums and cue pointers of SpanIndex with per-span loops over the tokens, as the span features
+ * computed them before the index existed
+ */
+public class SpanIndexTest {
+
+    static final String[][] WORDS = {{"``", "``"}, {"''", "''"}, {"he", "PRP"}, {"It", "PRP"}, {"said", "VBD"},
+            {"is", "VBZ"}, {"plan", "NN"}, {"Minister", "NNP"}, {",", ","}, {"the", "DT"}, {"'", "''"}};
+
+    /**
+     * Random document of several sentences with random cues and cue dependents
+     * @param random
+     * @return
+     */
+    static Document randomDocument(Random random) {
+        Document document = new Document();
+        document.isCoreNlpProcessed = true;
+        document.tokenList = new ArrayList<>();
+        document.sentenceList = new ArrayList<>();
+
+        int numSentences = 1 + random.nextInt(5);
+        for (int s = 0; s < numSentences; s++) {
+            Sentence sentence = new Sentence();
+            sentence.document = document;
+            sentence.tokenList = new ArrayList<>();
+            document.sentenceList.add(sentence);
+
+            int numTokens = 1 + random.nextInt(8);
+            for (int i = 0; i < numTokens; i++) {
+                String[] word = WORDS[random.nextInt(WORDS.length)];
+                Token token = new Token();
+                token.predText = word[0];
+                token.predPosTag = word[1];
+                token.isPredictedCue = random.nextInt(6) == 0;
+                token.boundaryFeatureSet = new FeatureStringSet();
+                if (random.nextInt(3) == 0) token.boundaryFeatureSet.add("BOUND:CUE:IS-CUE-DEP");
+
+                token.sentence = sentence;
+                token.predSentencePosition = i;
+                token.predPosition = document.tokenList.size();
+                sentence.tokenList.add(token);
+                document.tokenList.add(token);
+            }
+        }
+
+        return document;
+    }
+
+    /**
+     * Closest cue left of a token in its sentence, by walking through the sentence
+     * @param token
+     * @return
+     */
+    static int walkCueLeft(Token token) {
+        for (int i = token.predSentencePosition - 1; i >= 0; i--) {
+            Token prevToken = token.sentence.tokenList.get(i);
+            if (prevToken.isPredictedCue) return prevToken.predPosition;
+        }
+        return SpanIndex.NO_CUE;
+    }
+
+    /**
+     * Closest cue right of a token in its sentence, by walking through the sentence
+     * @param token
+     * @return
+     */
+    static int walkCueRight(Token token) {
+        for (int i = token.predSentencePosition + 1; i < token.sentence.tokenList.size(); i++) {
+            Token nextToken = token.sentence.tokenList.get(i);
+            if (nextToken.isPredictedCue) return nextToken.predPosition;
+        }
+        return SpanIndex.NO_CUE;
+    }
+
+    @Test
+    public void countsMatchSpanLoops() {
+        Random random = new Random(22);
+
+        for (int d = 0; d < 100; d++) {
+            Document document = randomDocument(random);
+            SpanIndex index = new SpanIndex(document);
+            int numTokens = document.tokenList.size();
+
+            for (int begin = 0; begin < numTokens; begin++) {
+                for (int end = begin; end < numTokens; end++) {
+                    int numCues = 0, numQuotes = 0, numLowerCase = 0, numPronouns = 0, numVerbs = 0, numCueDep = 0;
+                    int numSentences = 0;
+                    Sentence sentence = null;
+
+                    for (int i = begin; i <= end; i++) {
+                        Token token = document.tokenList.get(i);
+                        if (token.isPredictedCue) numCues++;
+                        if (Helper.isQuote(token)) numQuotes++;
+                        if (token.predTextIsLower()) numLowerCase++;
+                        if (token.predPosTag.startsWith("PR")) numPronouns++;
+                        if (token.predPosTag.startsWith("V")) numVerbs++;
+                        if (token.boundaryFeatureSet.contains("BOUND:CUE:IS-CUE-DEP")) numCueDep++;
+                        if (token.sentence != sentence) {
+                            numSentences++;
+                            sentence = token.sentence;
+                        }
+                    }
+
+                    assertEquals(numCues, index.numCues(begin, end));
+                    assertEquals(numQuotes, index.numQuotes(begin, end));
+                    assertEquals(numLowerCase, index.numLowerCase(begin, end));
+                    assertEquals(numPronouns, index.numPronouns(begin, end));
+                    assertEquals(numVerbs, index.numVerbs(begin, end));
+                    assertEquals(numCueDep, index.numCueDependents(begin, end));
+                    assertEquals(numSentences, index.numSentences(begin, end));
+                }
+
+                // empty ranges, e.g., the inner tokens of spans of length 1 or 2
+                assertEquals(0, index.numLowerCase(begin + 1, begin));
+                assertEquals(0, index.numPronouns(begin + 1, begin));
+                assertEquals(0, index.numSentences(begin + 1, begin));
+            }
+        }
+    }
+
+    @Test
+    public void cuePointersMatchSentenceWalks() {
+        Random random = new Random(23);
+
+        for (int d = 0; d < 100; d++) {
+            Document document = randomDocument(random);
+            SpanIndex index = new SpanIndex(document);
+
+            for (Token token : document.tokenList) {
+                assertEquals(walkCueLeft(token), index.prevCue(token.predPosition));
+                assertEquals(walkCueRight(token), index.nextCue(token.predPosition));
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.qsample.greedysample;
+
+import ims.cs.qsample.spans.SpanEnd;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares draws from a TokenDistribution with the linear walk of Sampling.sampleOne over a list of scored tokens
+ */
+public class TokenDistributionTest {
+
+    static final double TEMPERATURE = 2.0;
+
+    static double[] randomScores(Random random, int numTokens) {
+        double[] scores = new double[numTokens];
+        for (int i = 0; i < numTokens; i++) scores[i] = 10 * random.nextGaussian();
+        return scores;
+    }
+
+    static TokenDistribution distribution(double[] scores, boolean doExp) {
+        double[] weights = new double[scores.length];
+        for (int i = 0; i < scores.length; i++) weights[i] = TokenDistribution.weight(scores[i], TEMPERATURE, doExp);
+        return new TokenDistribution(weights);
+    }
+
+    /**
+     * Scored tokens of a window, in walking order
+     * @param scores
+     * @param from
+     * @param to
+     * @param forward
+     * @return
+     */
+    static List<HasScore> window(double[] scores, int from, int to, boolean forward) {
+        List<HasScore> items = new ArrayList<>();
+        if (forward) for (int position = from; position <= to; position++) items.add(new SpanEnd(position, scores[position]));
+        else for (int position = to; position >= from; position--) items.add(new SpanEnd(position, scores[position]));
+        return items;
+    }
+
+    /**
+     * Both samplers draw from generators with the same seed, so every draw must return the same position
+     * @param doExp
+     */
+    void checkWindows(boolean doExp) {
+        Random random = new Random(25);
+        Sampling reference = new Sampling(new Random(2501));
+        Sampling sampling = new Sampling(new Random(2501));
+        reference.doExp = doExp;
+        sampling.doExp = doExp;
+
+        for (int document = 0; document < 200; document++) {
+            int numTokens = 1 + random.nextInt(60);
+            double[] scores = randomScores(random, numTokens);
+            if (!doExp) for (int i = 0; i < numTokens; i++) scores[i] = Math.abs(scores[i]);
+            TokenDistribution distribution = distribution(scores, doExp);
+
+            for (int draw = 0; draw < 50; draw++) {
+                int from = random.nextInt(numTokens);
+                int to = from + random.nextInt(numTokens - from);
+                boolean forward = random.nextBoolean();
+
+                List<HasScore> items = window(scores, from, to, forward);
+                int expected = ((SpanEnd) items.get(reference.sampleOne(items, TEMPERATURE, 0))).position;
+
+                int actual;
+                if (forward) actual = sampling.sampleForward(distribution, from, to);
+                else actual = sampling.sampleBackward(distribution, from, to);
+
+                assertEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void windowDrawsMatchLinearWalk() {
+        checkWindows(true);
+    }
+
+    @Test
+    public void windowDrawsMatchLinearWalkWithoutExp() {
+        checkWindows(false);
+    }
+
+    /**
+     * The alias table consumes one uniform number per draw. Running it over a fine grid of numbers gives the
+     * probability of each position up to the grid resolution, which must be its share of the total weight.
+     */
+    @Test
+    public void aliasDrawsFollowWeights() {
+        Random random = new Random(26);
+        int gridSize = 1000000;
+
+        for (int document = 0; document < 20; document++) {
+            int numTokens = 1 + random.nextInt(30);
+            double[] scores = randomScores(random, numTokens);
+            TokenDistribution distribution = distribution(scores, true);
+
+            double total = 0;
+            for (double score : scores) total += TokenDistribution.weight(score, TEMPERATURE, true);
+
+            int[] counts = new int[numTokens];
+            for (int k = 0; k < gridSize; k++) counts[distribution.sample((k + 0.5) / gridSize)]++;
+
+            for (int position = 0; position < numTokens; position++) {
+                double expected = TokenDistribution.weight(scores[position], TEMPERATURE, true) / total;
+                assertEquals(expected, counts[position] / (double) gridSize, 2.0 * numTokens / gridSize);
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ims.cs.qsample.perceptron;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Compares the lazy, timestamped averaging of IndexedWeights with eager averaging, which adds all weights to their
+ * sums after every example.
+ */
+public class IndexedWeightsTest {
+
+    static final double EPSILON = 1e-9;
+    static final int NUM_COLUMNS = 3;
+    static final int NUM_FEATURES = 40;
+
+    /**
+     * Eager reference: weight sums are brought up to date for all rows after every example
+     */
+    static class EagerWeights {
+        final double[][] weights = new double[NUM_FEATURES + 1][NUM_COLUMNS];
+        final double[][] sums = new double[NUM_FEATURES + 1][NUM_COLUMNS];
+        final int[] counters = new int[NUM_COLUMNS];
+
+        void update(int row, int column, double value) {
+            weights[row][column] += value;
+        }
+
+        void nextExample(int column) {
+            for (int row = 0; row <= NUM_FEATURES; row++) sums[row][column] += weights[row][column];
+            counters[column]++;
+        }
+
+        double getAvg(int row, int column) {
+            if (counters[column] == 0) return weights[row][column];
+            return sums[row][column] / counters[column];
+        }
+    }
+
+    /**
+     * Apply the same random examples to both stores
+     * @param lazy
+     * @param eager
+     * @param random
+     * @param numExamples
+     */
+    static void train(IndexedWeights lazy, EagerWeights eager, Random random, int numExamples) {
+        for (int example = 0; example < numExamples; example++) {
+            int column = random.nextInt(NUM_COLUMNS);
+            double rate = random.nextBoolean() ? 0.1 : -0.1;
+
+            lazy.updateBias(column, rate);
+            eager.update(IndexedWeights.BIAS_ROW, column, rate);
+
+            int numFeatures = random.nextInt(5);
+            for (int i = 0; i < numFeatures; i++) {
+                int featureIndex = random.nextInt(NUM_FEATURES);
+                lazy.update(featureIndex, column, rate);
+                eager.update(IndexedWeights.row(featureIndex), column, rate);
+            }
+
+            lazy.nextExample(column);
+            eager.nextExample(column);
+        }
+    }
+
+    static void assertSameAverages(IndexedWeights lazy, EagerWeights eager) {
+        for (int column = 0; column < NUM_COLUMNS; column++) {
+            assertEquals(eager.getAvg(IndexedWeights.BIAS_ROW, column), lazy.getBiasAvg(column), EPSILON);
+            for (int featureIndex = 0; featureIndex < NUM_FEATURES; featureIndex++) {
+                int row = IndexedWeights.row(featureIndex);
+                assertEquals(eager.weights[row][column], lazy.get(featureIndex, column), EPSILON);
+                assertEquals(eager.getAvg(row, column), lazy.getAvg(featureIndex, column), EPSILON);
+            }
+        }
+    }
+
+    @Test
+    public void lazyAveragesMatchEagerAverages() {
+        Random random = new Random(42);
+        IndexedWeights lazy = new IndexedWeights(NUM_COLUMNS);
+        EagerWeights eager = new EagerWeights();
+
+        for (int round = 0; round < 10; round++) {
+            train(lazy, eager, random, 50);
+            assertSameAverages(lazy, eager);
+        }
+    }
+
+    @Test
+    public void finalizedAveragesMatchAndAreDroppedOnUpdate() {
+        Random random = new Random(7);
+        IndexedWeights lazy = new IndexedWeights(NUM_COLUMNS);
+        EagerWeights eager = new EagerWeights();
+
+        train(lazy, eager, random, 200);
+        lazy.finalizeAverage();
+        assertNotNull(lazy.averagedArray);
+        assertSameAverages(lazy, eager);
+
+        // training on invalidates the snapshot, and the averages follow the new updates
+        train(lazy, eager, random, 1);
+        assertNull(lazy.averagedArray);
+        assertSameAverages(lazy, eager);
+
+        lazy.finalizeAverage();
+        assertSameAverages(lazy, eager);
+    }
+
+    @Test
+    public void columnScoresMatchSingleWeights() {
+        Random random = new Random(3);
+        IndexedWeights lazy = new IndexedWeights(NUM_COLUMNS);
+        train(lazy, new EagerWeights(), random, 300);
+
+        int[] ids = {0, 5, 17, 39, 5};
+        for (boolean average : new boolean[] {false, true}) {
+            double[] scores = new double[NUM_COLUMNS];
+            lazy.scoreColumns(ids, 0, ids.length, average, scores);
+
+            for (int column = 0; column < NUM_COLUMNS; column++) {
+                double expected = average ? lazy.getBiasAvg(column) : lazy.getBias(column);
+                for (int id : ids) expected += average ? lazy.getAvg(id, column) : lazy.get(id, column);
+                assertEquals(expected, scores[column], EPSILON);
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ims.cs.qsample.run;
+
+import ims.cs.lingdata.Document;
+import ims.cs.lingdata.Sentence;
+import ims.cs.lingdata.Token;
+import ims.cs.qsample.features.BoundaryFeatures;
+import ims.cs.qsample.features.FeatureSet;
+import ims.cs.qsample.features.FeatureStringSet;
+import ims.cs.qsample.spans.Span;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that copies of documents taken from a snapshot are independent of the documents and of each other, so that
+ * configurations of a sweep can run on them concurrently, and that they share features until they add their own
+ */
+public class CorpusSnapshotTest {
+
+    /**
+     * Document of two sentences with features, one predicted cue and one gold span
+     * @return
+     */
+    static Document document() {
+        Document document = new Document();
+        document.tokenList = new ArrayList<>();
+        document.sentenceList = new ArrayList<>();
+        document.predictedSpanSet = new HashSet<>();
+        document.goldSpanSet = new HashSet<>();
+
+        for (int s = 0; s < 2; s++) {
+            Sentence sentence = new Sentence(document);
+            sentence.tokenList = new ArrayList<>();
+            document.sentenceList.add(sentence);
+
+            for (int i = 0; i < 3; i++) {
+                Token token = new Token();
+                token.predText = "w" + document.tokenList.size();
+                token.predPosition = document.tokenList.size();
+                token.featureSet = new FeatureStringSet();
+                token.featureSet.add("TOK=" + token.predText);
+                token.boundaryFeatureSet = new FeatureStringSet();
+                token.isPredictedCue = token.predPosition == 1;
+                token.perceptronCueScore = token.predPosition;
+                token.sentence = sentence;
+
+                if (!document.tokenList.isEmpty()) {
+                    Token previousToken = document.tokenList.get(document.tokenList.size() - 1);
+                    token.previousToken = previousToken;
+                    previousToken.nextToken = token;
+                }
+
+                sentence.tokenList.add(token);
+                document.tokenList.add(token);
+            }
+        }
+
+        Span goldSpan = new Span(document, 2, 4, "content");
+        goldSpan.featureSet = new FeatureStringSet();
+        goldSpan.featureSet.add("SPAN");
+        document.goldSpanSet.add(goldSpan);
+
+        return document;
+    }
+
+    @Test
+    public void copiesAreLinkedToThemselves() {
+        Document document = document();
+        Document copy = new CorpusSnapshot(Arrays.asList(document)).copy(Arrays.asList(document)).get(0);
+
+        assertEquals(document.tokenList.size(), copy.tokenList.size());
+        for (int i = 0; i < copy.tokenList.size(); i++) {
+            Token token = copy.tokenList.get(i);
+            assertNotSame(document.tokenList.get(i), token);
+            assertEquals(document.tokenList.get(i).predText, token.predText);
+            assertSame(copy, token.sentence.document);
+            assertTrue(token.sentence.tokenList.contains(token));
+            assertSame(i == 0 ? null : copy.tokenList.get(i - 1), token.previousToken);
+            assertSame(i == copy.tokenList.size() - 1 ? null : copy.tokenList.get(i + 1), token.nextToken);
+        }
+
+        assertEquals(document.sentenceList.size(), copy.sentenceList.size());
+        assertEquals(1, copy.goldSpanSet.size());
+        Span goldSpan = copy.goldSpanSet.iterator().next();
+        assertSame(copy, goldSpan.document);
+        assertEquals(2, goldSpan.first().predPosition);
+        assertSame(copy.tokenList.get(2), goldSpan.first());
+        assertTrue(goldSpan.featureSet.contains("SPAN"));
+    }
+
+    @Test
+    public void copiesAreIndependent() {
+        Document document = document();
+        List<Document> documents = Arrays.asList(document);
+        CorpusSnapshot snapshot = new CorpusSnapshot(documents);
+
+        Document first = snapshot.copy(documents).get(0);
+        Document second = snapshot.copy(documents).get(0);
+
+        // changes as made by training and prediction
+        BoundaryFeatures.unshareBoundaryFeatures(first);
+        Token token = first.tokenList.get(4);
+        token.isPredictedCue = true;
+        token.perceptronCueScore = 100;
+        token.boundaryFeatureSet.add("CUE-FEATURE");
+        token.numTimesSampledCue++;
+        first.predictedSpanSet.add(new Span(first, 3, 5, "content"));
+
+        for (Document unchanged : Arrays.asList(document, second)) {
+            Token unchangedToken = unchanged.tokenList.get(4);
+            assertFalse(unchangedToken.isPredictedCue);
+            assertEquals(4, unchangedToken.perceptronCueScore, 0);
+            assertFalse(unchangedToken.boundaryFeatureSet.contains("CUE-FEATURE"));
+            assertEquals(0, unchangedToken.numTimesSampledCue);
+            assertTrue(unchanged.predictedSpanSet.isEmpty());
+        }
+
+        assertTrue(second.tokenList.get(1).isPredictedCue);
+    }
+
+    @Test
+    public void featuresAreSharedUntilCueFeaturesAreAdded() {
+        Document document = document();
+        List<Document> documents = Arrays.asList(document);
+        CorpusSnapshot snapshot = new CorpusSnapshot(documents);
+
+        Document first = snapshot.copy(documents).get(0);
+        Document second = snapshot.copy(documents).get(0);
+
+        for (int i = 0; i < document.tokenList.size(); i++) {
+            assertSame(document.tokenList.get(i).featureSet, first.tokenList.get(i).featureSet);
+            assertSame(document.tokenList.get(i).boundaryFeatureSet, first.tokenList.get(i).boundaryFeatureSet);
+            assertSame(document.tokenList.get(i).boundaryFeatureSet, second.tokenList.get(i).boundaryFeatureSet);
+        }
+        assertSame(document.goldSpanSet.iterator().next().featureSet, first.goldSpanSet.iterator().next().featureSet);
+
+        BoundaryFeatures.unshareBoundaryFeatures(first);
+        for (int i = 0; i < document.tokenList.size(); i++) {
+            Token token = first.tokenList.get(i);
+            assertNotSame(document.tokenList.get(i).boundaryFeatureSet, token.boundaryFeatureSet);
+            assertFalse(token.boundaryFeatureSetShared);
+            assertSame(document.tokenList.get(i).featureSet, token.featureSet);
+            assertSame(document.tokenList.get(i).boundaryFeatureSet, second.tokenList.get(i).boundaryFeatureSet);
+        }
+
+        // a set of its own is not copied again
+        FeatureSet own = first.tokenList.get(0).boundaryFeatureSet;
+        BoundaryFeatures.unshareBoundaryFeatures(first);
+        assertSame(own, first.tokenList.get(0).boundaryFeatureSet);
+    }
+}
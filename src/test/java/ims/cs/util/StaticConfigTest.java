@@ -0,0 +1,81 @@
+/*
+ * This file is part of QSample.
+ * QSample is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * QSample is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QSample.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ims.cs.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that settings installed by a thread are seen by the threads it starts, but not by other threads
+ */
+public class StaticConfigTest {
+
+    /**
+     * Value of an option as seen by a new thread started by the calling thread
+     * @param name
+     * @return
+     * @throws InterruptedException
+     */
+    static String optionInNewThread(final String name) throws InterruptedException {
+        final String[] value = new String[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                value[0] = StaticConfig.getOption(name);
+            }
+        };
+        thread.start();
+        thread.join();
+        return value[0];
+    }
+
+    @Test
+    public void settingsAreIsolatedPerThread() throws InterruptedException {
+        final StaticConfig defaults = StaticConfig.current();
+        final String defaultMargin = StaticConfig.getOption("beginMargin");
+        final String[] seen = new String[2];
+
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                StaticConfig.use(defaults.copy());
+                StaticConfig.setOption("beginMargin", "3.5");
+                try {
+                    seen[0] = StaticConfig.getOption("beginMargin");
+                    seen[1] = optionInNewThread("beginMargin");
+                } catch (InterruptedException e) {
+                    throw new Error(e);
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+
+        assertEquals("3.5", seen[0]);
+        assertEquals("3.5", seen[1]);
+        assertEquals(defaultMargin, StaticConfig.getOption("beginMargin"));
+        assertEquals(defaultMargin, optionInNewThread("beginMargin"));
+        assertSame(defaults, StaticConfig.current());
+    }
+
+    @Test(expected = Error.class)
+    public void unknownOptionsAreRejected() {
+        StaticConfig.getOption("defaults");
+    }
+}